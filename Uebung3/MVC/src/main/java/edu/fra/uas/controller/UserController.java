@@ -5,15 +5,20 @@ import java.util.List;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import edu.fra.uas.model.User;
+import edu.fra.uas.repository.DuplicateEmailException;
 import edu.fra.uas.service.UserService;
 
 @Controller
@@ -89,15 +94,22 @@ public class UserController {
                          Model model) {
         log.debug("updated() is called");
         User user = userService.getUserById(userId);
-        user.setFirstName(firstName);
-        user.setLastName(lastName);
-        user.setEmail(email);
-        user.setPassword(password);
-        userService.updateUser(user);
-        model.addAttribute("user", user);
+        // a copy, the stored user stays unchanged if the update is rejected
+        User changed = new User(user.getId(), user.getRole(), firstName, lastName, email, password);
+        userService.updateUser(changed);
+        model.addAttribute("user", changed);
         return "updated.html";
     }
 
+    // the repository finds a duplicate email address while it stores the user
+    @ExceptionHandler(DuplicateEmailException.class)
+    public ResponseEntity<ProblemDetail> duplicateEmail(DuplicateEmailException e) {
+        log.debug("duplicateEmail() is called");
+        ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+        pd.setTitle("Duplicate Email");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(pd);
+    }
+
     // http://127.0.0.1/delete/3
     @RequestMapping(value = {"/delete/{id}"}, method = RequestMethod.GET)
     public String delete(@PathVariable("id") Long id, Model model) {
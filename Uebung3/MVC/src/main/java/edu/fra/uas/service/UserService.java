@@ -1,7 +1,11 @@
 package edu.fra.uas.service;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import edu.fra.uas.model.User;
@@ -17,12 +21,18 @@ public class UserService {
 
     @Autowired
     private UserRepository userRepository;
-    
-    private long nextUserId = 1;
+
+    // the journal only has to be replayed from the last snapshot on
+    @Scheduled(initialDelayString = "${users.journal.snapshot-interval:300000}",
+               fixedDelayString = "${users.journal.snapshot-interval:300000}")
+    public void snapshot() throws IOException {
+        log.debug("snapshot");
+        userRepository.snapshot();
+    }
 
     public User createUser(User user) {
         log.debug("createUser: " + user);
-        user.setId(nextUserId++);
+        user.setId(userRepository.nextId());
         userRepository.put(user.getId(), user);
         return user;
     }
@@ -37,6 +47,16 @@ public class UserService {
         return userRepository.get(id);
     }
 
+    public User getUserByEmail(String email) {
+        log.debug("getUserByEmail: " + email);
+        return userRepository.findByEmail(email);
+    }
+
+    public List<User> getUsersByRole(String role) {
+        log.debug("getUsersByRole: " + role);
+        return userRepository.findByRole(role);
+    }
+
     public User updateUser(User user) {
         log.debug("updateUser: " + user);
         userRepository.put(user.getId(), user);
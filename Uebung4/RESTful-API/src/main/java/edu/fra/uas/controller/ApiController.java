@@ -2,8 +2,11 @@ package edu.fra.uas.controller;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,11 +28,16 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import edu.fra.uas.model.User;
 import edu.fra.uas.model.UserDTO;
+import edu.fra.uas.repository.Version;
 import edu.fra.uas.service.UserService;
-import edu.fra.uas.util.Partition;
 
 @RestController
 @RequestMapping("/api")
@@ -41,56 +49,147 @@ public class ApiController {
     private UserService userService;
 
     private static final int MAX_USERS = 2;
+    private static final int MAX_LIMIT = 1000;
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserLinks userLinks;
 
+    /**
+     * Lists the users. Without parameters all users are returned, or the first page if
+     * there are more than {@value #MAX_USERS}. {@code page} selects a page of that size,
+     * {@code after} and {@code limit} a page of up to {@code limit} users with an id
+     * greater than {@code after}; its {@code next} link continues after the last one.
+     * Such a page is read directly from the users sorted by id, independent of how many
+     * users come before it. All variants carry the version of all users as ETag.
+     */
     @GetMapping(value = "/users", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<CollectionModel<UserDTO>> list(@RequestParam(required = false) Integer page) {
+    public ResponseEntity<CollectionModel<UserDTO>> list(@RequestParam(required = false) Integer page,
+                                                         @RequestParam(required = false) Long after,
+                                                         @RequestParam(required = false) Integer limit,
+                                                         WebRequest request) {
         log.debug("list() is called");
-        List<UserDTO> users = userService.getAllUsersDTO();       
-        if (users.isEmpty()) {
+        Version version = userService.getUsersVersion();
+        // answers If-None-Match and If-Modified-Since with 304, before the users are read
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
+        if (after != null || limit != null) {
+            return listAfter(after == null ? 0 : after, limit == null ? MAX_USERS : Math.max(1, Math.min(limit, MAX_LIMIT)));
+        }
+        int count = userService.countUsers();
+        if (count == 0) {
             return ResponseEntity.noContent().build();
-        } else if (users.size() > MAX_USERS && page == null) {
-            int lastPage = (users.size() / MAX_USERS) + 1;
-            Link first = linkTo(methodOn(ApiController.class).list(1)).withRel(IanaLinkRelations.FIRST);
-            Link next = linkTo(methodOn(ApiController.class).list(2)).withRel(IanaLinkRelations.NEXT);
-            Link last = linkTo(methodOn(ApiController.class).list(lastPage)).withRel(IanaLinkRelations.LAST);
-            CollectionModel<UserDTO> result = CollectionModel.of(users.subList(0, MAX_USERS)).add(first, next, last);
-            for (UserDTO user : result) {
-                Link selfLink = linkTo(ApiController.class).slash("/users/" + user.getId()).withSelfRel();
-                user.add(selfLink);
-            }
+        } else if (count > MAX_USERS && page == null) {
+            int lastPage = (count + MAX_USERS - 1) / MAX_USERS;
+            Link first = linkTo(methodOn(ApiController.class).list(1, null, null, null)).withRel(IanaLinkRelations.FIRST);
+            Link next = linkTo(methodOn(ApiController.class).list(2, null, null, null)).withRel(IanaLinkRelations.NEXT);
+            Link last = linkTo(methodOn(ApiController.class).list(lastPage, null, null, null)).withRel(IanaLinkRelations.LAST);
+            CollectionModel<UserDTO> result = CollectionModel.of(userService.getUsersDTOPage(0, MAX_USERS)).add(first, next, last);
+            addSelfLinks(result);
             return new ResponseEntity<>(result, HttpStatus.PARTIAL_CONTENT);
         } else if (page != null) {
-            Partition<UserDTO> partition = Partition.ofSize(users, MAX_USERS);
-            CollectionModel<UserDTO> result = null;
-            Link link = linkTo(methodOn(ApiController.class).list(page)).withSelfRel();
-            try{
-                result = CollectionModel.of(partition.get(page - 1)).add(link);
-                for (UserDTO user : result) {
-                    Link selfLink = linkTo(ApiController.class).slash("/users/" + user.getId()).withSelfRel();
-                    user.add(selfLink);
-                }
-            } catch (IndexOutOfBoundsException e) {
+            List<UserDTO> users = page < 1 ? List.of() : userService.getUsersDTOPage(page - 1, MAX_USERS);
+            if (users.isEmpty()) {
                 return ResponseEntity.notFound().build();
             }
+            Link link = linkTo(methodOn(ApiController.class).list(page, null, null, null)).withSelfRel();
+            CollectionModel<UserDTO> result = CollectionModel.of(users).add(link);
+            addSelfLinks(result);
             return new ResponseEntity<>(result, HttpStatus.OK);
         } else {
-            Link link = linkTo(methodOn(ApiController.class).list(null)).withSelfRel();
-            CollectionModel<UserDTO> result = CollectionModel.of(users).add(link);
-            for (UserDTO user : result) {
-                Link selfLink = linkTo(ApiController.class).slash("/users/" + user.getId()).withSelfRel();
-                user.add(selfLink);
+            Link link = linkTo(methodOn(ApiController.class).list(null, null, null, null)).withSelfRel();
+            CollectionModel<UserDTO> result = CollectionModel.of(userService.getAllUsersDTO()).add(link);
+            addSelfLinks(result);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        }
+    }
+
+    private ResponseEntity<CollectionModel<UserDTO>> listAfter(long after, int limit) {
+        // one more than requested tells whether there is a next page
+        List<UserDTO> users = userService.getUsersDTOAfter(after, limit + 1);
+        if (users.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+        Link link = linkTo(methodOn(ApiController.class).list(null, after, limit, null)).withSelfRel();
+        CollectionModel<UserDTO> result;
+        if (users.size() > limit) {
+            users = users.subList(0, limit);
+            long last = users.get(limit - 1).getId();
+            Link next = linkTo(methodOn(ApiController.class).list(null, last, limit, null)).withRel(IanaLinkRelations.NEXT);
+            result = CollectionModel.of(users).add(link, next);
+        } else {
+            result = CollectionModel.of(users).add(link);
+        }
+        addSelfLinks(result);
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    // the base URI is resolved once per request, not once per user
+    private void addSelfLinks(CollectionModel<UserDTO> users) {
+        UserLinks.Template links = userLinks.forCurrentRequest();
+        for (UserDTO user : users) {
+            user.add(links.self(user.getId()));
+        }
+    }
+
+    /**
+     * {@code GET /api/users?stream} streams all users with an id greater than {@code after}
+     * as newline delimited JSON, ordered by id. Each user is written as soon as it is read,
+     * so the memory needed does not grow with the number of users; users changed while
+     * streaming may or may not be included.
+     */
+    @GetMapping(value = "/users",
+                params = "stream",
+                produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream(@RequestParam(required = false) Long after) {
+        log.debug("stream() is called");
+        long from = after == null ? 0 : after;
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+                 Stream<UserDTO> users = userService.streamUsersDTOAfter(from)) {
+                // the container closes the response
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                users.forEach(user -> write(generator, user));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
-            return new ResponseEntity<>(CollectionModel.of(users), HttpStatus.OK);
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+    }
+
+    private static void write(JsonGenerator generator, UserDTO user) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("id", user.getId());
+            generator.writeStringField("firstName", user.getFirstName());
+            generator.writeStringField("lastName", user.getLastName());
+            generator.writeStringField("email", user.getEmail());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
     @GetMapping(value = "/users/{id}", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> find(@PathVariable("id") Long userId) {
+    public ResponseEntity<?> find(@PathVariable("id") Long userId, WebRequest request) {
         log.debug("find() is called");
+        Version version = userService.getUserVersion(userId);
+        if (version == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
         User user = userService.getUserById(userId);
         if (user == null) {            
             return ResponseEntity.notFound().build();
@@ -144,12 +243,16 @@ public class ApiController {
                 , consumes = MediaType.APPLICATION_JSON_VALUE
                 , produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> update(@RequestBody User newUser, @PathVariable("id") Long userId) {
+    public ResponseEntity<?> update(@RequestBody User newUser, @PathVariable("id") Long userId, WebRequest request) {
         log.debug("update() is called");
+        Version version = userService.getUserVersion(userId);
         User user = userService.getUserById(userId);
-        if (user == null) {
+        if (version == null || user == null) {
             return new ResponseEntity<User>(HttpStatus.NOT_FOUND);
         }
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
         String detail = null;
         if (newUser == null) {
             detail = "User must not be null";            
@@ -180,23 +283,34 @@ public class ApiController {
             pd.setTitle("JSON Object Error");
             return ResponseEntity.unprocessableEntity().body(pd);
         }
-        user.setRole(newUser.getRole());
-        user.setFirstName(newUser.getFirstName());
-        user.setLastName(newUser.getLastName());
-        user.setEmail(newUser.getEmail());
-        user.setPassword(newUser.getPassword());
-        user = userService.updateUser(user);
+        // a copy, the stored user stays unchanged if the update is rejected
+        User changed = new User(user.getId(), newUser.getRole(), newUser.getFirstName(), newUser.getLastName(), newUser.getEmail(), newUser.getPassword());
+        userService.updateUser(changed, Preconditions.expected(request, version));
         HttpHeaders headers = new HttpHeaders();
-        headers.setLocation(URI.create("/restful/users/" + user.getId()));
+        headers.setLocation(URI.create("/restful/users/" + userId));
+        // the version first, if the user changes again the tag is older and an If-Match fails
+        version = userService.getUserVersion(userId);
+        user = userService.getUserById(userId);
+        if (version == null || user == null) {
+            return ResponseEntity.notFound().build();
+        }
+        headers.setETag(version.etag());
         return new ResponseEntity<User>(user, headers,  HttpStatus.OK);
     }
 
     @DeleteMapping(value = "/users/{id}",
                    produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> delete(@PathVariable("id") Long userId) {
+    public ResponseEntity<?> delete(@PathVariable("id") Long userId, WebRequest request) {
         log.debug("delete() is called");
-        User user = userService.deleteUser(userId);
+        Version version = userService.getUserVersion(userId);
+        if (version == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
+        User user = userService.deleteUser(userId, Preconditions.expected(request, version));
         if (user == null) {
             return ResponseEntity.notFound().build();
         }
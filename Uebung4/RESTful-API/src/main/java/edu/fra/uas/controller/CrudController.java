@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -12,8 +13,11 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
 import edu.fra.uas.model.User;
+import edu.fra.uas.repository.Version;
 import edu.fra.uas.service.UserService;
 
 @RestController
@@ -26,8 +30,13 @@ public class CrudController {
     private UserService userService;
 
     @GetMapping("/users")
-    public List<User> list() {
+    public List<User> list(WebRequest request) {
         log.debug("list() is called");
+        Version version = userService.getUsersVersion();
+        // answers If-None-Match and If-Modified-Since with 304, before the users are read
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
         Iterable<User> userIter = userService.getAllUsers();
         List<User> users = new ArrayList<>();
         for (User user : userIter) {
@@ -37,8 +46,12 @@ public class CrudController {
     }
 
     @GetMapping("/users/{id}")
-    public User find(@PathVariable("id") Long userId) {
+    public User find(@PathVariable("id") Long userId, WebRequest request) {
         log.debug("find() is called");
+        Version version = userService.getUserVersion(userId);
+        if (version == null || request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
         User user = userService.getUserById(userId);
         return user;
     }
@@ -50,21 +63,27 @@ public class CrudController {
     }
 
     @PutMapping("/users/{id}")
-    public User update(User newUser, @PathVariable("id") Long userId) {
+    public User update(User newUser, @PathVariable("id") Long userId, WebRequest request) {
         log.debug("update() is called");
-        User user = userService.getUserById(userId);
-        user.setRole(newUser.getRole());
-        user.setFirstName(newUser.getFirstName());
-        user.setLastName(newUser.getLastName());
-        user.setEmail(newUser.getEmail());
-        user.setPassword(newUser.getPassword());
-        return userService.updateUser(user);
+        Version version = userService.getUserVersion(userId);
+        if (version == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
+        User user = new User(userId, newUser.getRole(), newUser.getFirstName(), newUser.getLastName(), newUser.getEmail(), newUser.getPassword());
+        return userService.updateUser(user, Preconditions.expected(request, version));
     }
 
     @DeleteMapping("/users/{id}")
-    public void delete(@PathVariable("id") Long userId) {
+    public void delete(@PathVariable("id") Long userId, WebRequest request) {
         log.debug("delete() is called");
-        userService.deleteUser(userId);
+        Version version = userService.getUserVersion(userId);
+        if (version == null || request.checkNotModified(version.etag(), version.modified())) {
+            return;
+        }
+        userService.deleteUser(userId, Preconditions.expected(request, version));
     }
 
 }
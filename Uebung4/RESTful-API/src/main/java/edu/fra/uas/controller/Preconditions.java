@@ -0,0 +1,28 @@
+package edu.fra.uas.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.WebRequest;
+
+import edu.fra.uas.repository.Version;
+
+/**
+ * Conditional PUT and DELETE on a user. {@code WebRequest.checkNotModified} answers a
+ * failed If-Match or If-Unmodified-Since with 412; a user changed between that check and
+ * the change itself is rejected by the repository with a
+ * {@link edu.fra.uas.repository.VersionConflictException}, see {@link UserExceptionHandler}.
+ */
+final class Preconditions {
+
+    private Preconditions() {
+    }
+
+    /**
+     * Returns the version the change is made on, {@code null} for an unconditional request.
+     */
+    static Version expected(WebRequest request, Version version) {
+        boolean conditional = request.getHeader(HttpHeaders.IF_MATCH) != null
+                || request.getHeader(HttpHeaders.IF_UNMODIFIED_SINCE) != null;
+        return conditional ? version : null;
+    }
+
+}
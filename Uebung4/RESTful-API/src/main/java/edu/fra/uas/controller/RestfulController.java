@@ -20,8 +20,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.fra.uas.model.User;
+import edu.fra.uas.repository.Version;
 import edu.fra.uas.service.UserService;
 
 @RestController
@@ -36,8 +38,13 @@ public class RestfulController {
     @GetMapping(value = "/users", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<List<User>> list() {
+    public ResponseEntity<List<User>> list(WebRequest request) {
         log.debug("list() is called");
+        Version version = userService.getUsersVersion();
+        // answers If-None-Match and If-Modified-Since with 304, before the users are read
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
         Iterable<User> userIter = userService.getAllUsers();
         List<User> users = new ArrayList<>();
         for (User user : userIter) {
@@ -52,8 +59,15 @@ public class RestfulController {
     @GetMapping(value = "/users/{id}", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> find(@PathVariable("id") Long userId) {
+    public ResponseEntity<?> find(@PathVariable("id") Long userId, WebRequest request) {
         log.debug("find() is called");
+        Version version = userService.getUserVersion(userId);
+        if (version == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
         User user = userService.getUserById(userId);
         if (user == null) {            
             return ResponseEntity.notFound().build();
@@ -107,12 +121,16 @@ public class RestfulController {
                 , consumes = MediaType.APPLICATION_JSON_VALUE
                 , produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> update(@RequestBody User newUser, @PathVariable("id") Long userId) {
+    public ResponseEntity<?> update(@RequestBody User newUser, @PathVariable("id") Long userId, WebRequest request) {
         log.debug("update() is called");
+        Version version = userService.getUserVersion(userId);
         User user = userService.getUserById(userId);
-        if (user == null) {
+        if (version == null || user == null) {
             return new ResponseEntity<User>(HttpStatus.NOT_FOUND);
         }
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
         String detail = null;
         if (newUser == null) {
             detail = "User must not be null";            
@@ -143,23 +161,34 @@ public class RestfulController {
             pd.setTitle("JSON Object Error");
             return ResponseEntity.unprocessableEntity().body(pd);
         }
-        user.setRole(newUser.getRole());
-        user.setFirstName(newUser.getFirstName());
-        user.setLastName(newUser.getLastName());
-        user.setEmail(newUser.getEmail());
-        user.setPassword(newUser.getPassword());
-        user = userService.updateUser(user);
+        // a copy, the stored user stays unchanged if the update is rejected
+        User changed = new User(user.getId(), newUser.getRole(), newUser.getFirstName(), newUser.getLastName(), newUser.getEmail(), newUser.getPassword());
+        userService.updateUser(changed, Preconditions.expected(request, version));
         HttpHeaders headers = new HttpHeaders();
-        headers.setLocation(URI.create("/restful/users/" + user.getId()));
+        headers.setLocation(URI.create("/restful/users/" + userId));
+        // the version first, if the user changes again the tag is older and an If-Match fails
+        version = userService.getUserVersion(userId);
+        user = userService.getUserById(userId);
+        if (version == null || user == null) {
+            return ResponseEntity.notFound().build();
+        }
+        headers.setETag(version.etag());
         return new ResponseEntity<User>(user, headers,  HttpStatus.OK);
     }
 
     @DeleteMapping(value = "/users/{id}",
                    produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> delete(@PathVariable("id") Long userId) {
+    public ResponseEntity<?> delete(@PathVariable("id") Long userId, WebRequest request) {
         log.debug("delete() is called");
-        User user = userService.deleteUser(userId);
+        Version version = userService.getUserVersion(userId);
+        if (version == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(version.etag(), version.modified())) {
+            return null;
+        }
+        User user = userService.deleteUser(userId, Preconditions.expected(request, version));
         if (user == null) {
             return ResponseEntity.notFound().build();
         }
@@ -0,0 +1,45 @@
+package edu.fra.uas.controller;
+
+import java.net.URI;
+
+import org.slf4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import edu.fra.uas.repository.DuplicateEmailException;
+import edu.fra.uas.repository.VersionConflictException;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Answers the errors of the {@link edu.fra.uas.repository.UserRepository} in the same way
+ * for all controllers of the users. The repository checks the email address and the
+ * expected version while it stores the user, so a duplicate or a concurrent change is
+ * only found there and never by an earlier lookup.
+ */
+@RestControllerAdvice
+public class UserExceptionHandler {
+
+    private final Logger log = org.slf4j.LoggerFactory.getLogger(UserExceptionHandler.class);
+
+    @ExceptionHandler(DuplicateEmailException.class)
+    public ResponseEntity<ProblemDetail> duplicateEmail(DuplicateEmailException e, HttpServletRequest request) {
+        log.debug("duplicateEmail: " + e.getMessage());
+        ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+        pd.setInstance(URI.create(request.getRequestURI()));
+        pd.setTitle("Duplicate Email");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(pd);
+    }
+
+    @ExceptionHandler(VersionConflictException.class)
+    public ResponseEntity<ProblemDetail> versionConflict(VersionConflictException e, HttpServletRequest request) {
+        log.debug("versionConflict: " + e.getMessage());
+        ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+        pd.setInstance(URI.create(request.getRequestURI()));
+        pd.setTitle("Precondition Failed");
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(pd);
+    }
+
+}
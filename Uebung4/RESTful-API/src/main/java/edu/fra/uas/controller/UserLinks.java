@@ -0,0 +1,83 @@
+package edu.fra.uas.controller;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.*;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.hateoas.Link;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Self links of the users listed by the {@link ApiController}.
+ * <p>
+ * Building every link with {@code linkTo} resolves the controller mapping and the
+ * request URI and encodes the result again for each user. Here the path of a single
+ * user below the controller is resolved once from the mapping of
+ * {@link ApiController#find}; a request then resolves its base URI once, and the link
+ * of each user is that base followed by its id. The links are the same as those built
+ * with {@code linkTo(ApiController.class).slash("/users/" + id)}.
+ */
+@Component
+public class UserLinks {
+
+    private final Class<?> controller;
+    // path of a user below the controller up to the id, e.g. "/users/"
+    private final String path;
+
+    public UserLinks() {
+        this(ApiController.class, "find");
+    }
+
+    UserLinks(Class<?> controller, String method) {
+        this.controller = controller;
+        this.path = resolve(controller, method);
+    }
+
+    /**
+     * Returns the links of the users for the current request.
+     */
+    public Template forCurrentRequest() {
+        return new Template(linkTo(controller).withSelfRel().getHref() + path);
+    }
+
+    /**
+     * Self links of the users under the base URI of one request.
+     */
+    public static final class Template {
+
+        private final String prefix;
+
+        private Template(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Link self(long id) {
+            return Link.of(prefix + id);
+        }
+
+    }
+
+    // "/users/{id}" -> "/users/"
+    private static String resolve(Class<?> controller, String name) {
+        Method method = Arrays.stream(controller.getMethods())
+                .filter(m -> m.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(controller.getSimpleName() + "." + name + " not found"));
+        RequestMapping mapping = AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+        if (mapping == null || mapping.path().length == 0 || !Arrays.asList(mapping.method()).contains(RequestMethod.GET)) {
+            throw new IllegalStateException(controller.getSimpleName() + "." + name + " is not mapped to GET");
+        }
+        String template = mapping.path()[0];
+        int variable = template.indexOf('{');
+        if (variable < 0 || template.indexOf('}') != template.length() - 1) {
+            throw new IllegalStateException("mapping " + template + " does not end with the id");
+        }
+        String path = template.substring(0, variable);
+        return path.startsWith("/") ? path : "/" + path;
+    }
+
+}
@@ -1,16 +1,19 @@
 package edu.fra.uas.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import edu.fra.uas.model.User;
 import edu.fra.uas.model.UserDTO;
 import edu.fra.uas.repository.UserRepository;
+import edu.fra.uas.repository.Version;
 
 /**
  * This class represents the service for the user.
@@ -22,11 +25,17 @@ public class UserService {
 
     @Autowired
     private UserRepository userRepository;
-    
-    private long nextUserId = 1;
+
+    // the journal only has to be replayed from the last snapshot on
+    @Scheduled(initialDelayString = "${users.journal.snapshot-interval:300000}",
+               fixedDelayString = "${users.journal.snapshot-interval:300000}")
+    public void snapshot() throws IOException {
+        log.debug("snapshot");
+        userRepository.snapshot();
+    }
 
     public User createUser(User user) {
-        user.setId(nextUserId++);
+        user.setId(userRepository.nextId());
         log.debug("createUser: " + user);
         userRepository.put(user.getId(), user);
         return userRepository.get(user.getId());
@@ -42,31 +51,109 @@ public class UserService {
         return userRepository.get(id);
     }
 
+    public User getUserByEmail(String email) {
+        log.debug("getUserByEmail: " + email);
+        return userRepository.findByEmail(email);
+    }
+
+    public List<User> getUsersByRole(String role) {
+        log.debug("getUsersByRole: " + role);
+        return userRepository.findByRole(role);
+    }
+
+    /**
+     * Returns the version of the user, {@code null} if it does not exist. It is read
+     * before the user, so the user read afterwards is never older than the version.
+     */
+    public Version getUserVersion(long id) {
+        return userRepository.version(id);
+    }
+
+    /**
+     * Returns the version of all users, it changes with every create, update and delete.
+     */
+    public Version getUsersVersion() {
+        return userRepository.version();
+    }
+
     public User updateUser(User user) {
+        return updateUser(user, null);
+    }
+
+    /**
+     * Updates the user if it still has the expected version, or unconditionally if expected is {@code null}.
+     *
+     * @throws edu.fra.uas.repository.VersionConflictException if the user has been changed in the meantime
+     */
+    public User updateUser(User user, Version expected) {
         log.debug("updateUser: " + user);
-        userRepository.put(user.getId(), user);
+        userRepository.put(user.getId(), user, expected);
         return userRepository.get(user.getId());
     }
 
     public User deleteUser(long id) {
+        return deleteUser(id, null);
+    }
+
+    /**
+     * Deletes the user if it still has the expected version, or unconditionally if expected is {@code null}.
+     *
+     * @throws edu.fra.uas.repository.VersionConflictException if the user has been changed in the meantime
+     */
+    public User deleteUser(long id, Version expected) {
         log.debug("deleteUser: " + id);
-        return userRepository.remove(id);
+        return userRepository.remove(id, expected);
     }
 
     public List<UserDTO> getAllUsersDTO() {
         log.debug("getAllUsersDTO");
-        Iterable<User> userIter = this.getAllUsers();
-        List<User> usersOrigList = new ArrayList<>();        
-        for (User user : userIter) {
-            usersOrigList.add(user);
+        List<UserDTO> users = new ArrayList<>(userRepository.size());
+        for (User user : userRepository.values()) {
+            users.add(toDTO(user));
         }
-        List<UserDTO> usersTargetList = new ArrayList<>();
-        for (User source : usersOrigList) {
-            UserDTO target = new UserDTO();
-            BeanUtils.copyProperties(source, target);
-            usersTargetList.add(target);
-        }
-       return usersTargetList;
+        return users;
+    }
+
+    public int countUsers() {
+        return userRepository.size();
+    }
+
+    /**
+     * Returns at most limit users with an id greater than afterId, ordered by id.
+     */
+    public List<UserDTO> getUsersDTOAfter(long afterId, int limit) {
+        log.debug("getUsersDTOAfter: " + afterId + " limit: " + limit);
+        return userRepository.valuesAfter(afterId).stream().limit(limit).map(UserService::toDTO).toList();
+    }
+
+    /**
+     * Returns the users of the page, counted from 0, ordered by id.
+     */
+    public List<UserDTO> getUsersDTOPage(int page, int size) {
+        log.debug("getUsersDTOPage: " + page + " size: " + size);
+        return userRepository.valuesAfter(0).stream()
+                .skip((long) page * size)
+                .limit(size)
+                .map(UserService::toDTO)
+                .toList();
+    }
+
+    /**
+     * Returns the users with an id greater than afterId ordered by id; they are converted
+     * one at a time while the stream is consumed.
+     */
+    public Stream<UserDTO> streamUsersDTOAfter(long afterId) {
+        log.debug("streamUsersDTOAfter: " + afterId);
+        return userRepository.valuesAfter(afterId).stream().map(UserService::toDTO);
+    }
+
+    private static UserDTO toDTO(User user) {
+        UserDTO dto = new UserDTO();
+        dto.setId(user.getId());
+        dto.setFirstName(user.getFirstName());
+        dto.setLastName(user.getLastName());
+        dto.setEmail(user.getEmail());
+        return dto;
     }
 
 }
@@ -0,0 +1,102 @@
+package edu.fra.uas.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.core.DefaultLinkRelationProvider;
+import org.springframework.hateoas.server.mvc.WebMvcLinkBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.fra.uas.model.UserDTO;
+
+/**
+ * Time to render a list of 1000 and 10000 users as HAL, with the self links built by
+ * {@code linkTo} per user as before and with the {@link UserLinks} template; the
+ * rendered documents are compared first. Run with
+ * {@code java -cp ... edu.fra.uas.controller.UserLinksBenchmark}.
+ */
+public class UserLinksBenchmark {
+
+    private static final long TARGET_NANOS = 2_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+        request.setServerName("localhost");
+        request.setServerPort(8080);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new Jackson2HalModule());
+        mapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultLinkRelationProvider(), CurieProvider.NONE, MessageResolver.DEFAULTS_ONLY));
+        UserLinks userLinks = new UserLinks();
+
+        for (int size : new int[] {1_000, 10_000}) {
+            String before = mapper.writeValueAsString(perUser(size));
+            String after = mapper.writeValueAsString(template(userLinks, size));
+            if (!before.equals(after)) {
+                throw new IllegalStateException("documents differ for " + size + " users");
+            }
+            for (int round = 0; round < 2; round++) {
+                System.out.printf("%d users, round %d%n", size, round + 1);
+                report("links, linkTo", () -> perUser(size));
+                report("links, template", () -> template(userLinks, size));
+                report("links + HAL, linkTo", () -> mapper.writeValueAsString(perUser(size)));
+                report("links + HAL, template", () -> mapper.writeValueAsString(template(userLinks, size)));
+            }
+        }
+    }
+
+    private static CollectionModel<UserDTO> perUser(int size) {
+        CollectionModel<UserDTO> result = CollectionModel.of(users(size));
+        for (UserDTO user : result) {
+            user.add(WebMvcLinkBuilder.linkTo(ApiController.class).slash("/users/" + user.getId()).withSelfRel());
+        }
+        return result;
+    }
+
+    private static CollectionModel<UserDTO> template(UserLinks userLinks, int size) {
+        CollectionModel<UserDTO> result = CollectionModel.of(users(size));
+        UserLinks.Template links = userLinks.forCurrentRequest();
+        for (UserDTO user : result) {
+            user.add(links.self(user.getId()));
+        }
+        return result;
+    }
+
+    private static List<UserDTO> users(int size) {
+        List<UserDTO> users = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            UserDTO user = new UserDTO();
+            user.setId(i);
+            user.setFirstName("First" + i);
+            user.setLastName("Last" + i);
+            user.setEmail("user" + i + "@example.com");
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static void report(String name, Task task) throws Exception {
+        long start = System.nanoTime();
+        int lists = 0;
+        while (System.nanoTime() - start < TARGET_NANOS) {
+            task.run();
+            lists++;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  %-24s %10.3f ms per list%n", name, elapsed / 1e6 / lists);
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+}
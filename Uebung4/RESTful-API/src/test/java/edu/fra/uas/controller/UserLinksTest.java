@@ -0,0 +1,37 @@
+package edu.fra.uas.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+class UserLinksTest {
+
+    private final UserLinks userLinks = new UserLinks();
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void selfLinksAreThoseOfLinkTo() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/api/users");
+        request.setScheme("https");
+        request.setServerName("example.com");
+        request.setServerPort(8443);
+        request.setContextPath("/app");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        UserLinks.Template links = userLinks.forCurrentRequest();
+        for (long id : new long[] {1, 42, Long.MAX_VALUE}) {
+            assertEquals(linkTo(ApiController.class).slash("/users/" + id).withSelfRel(), links.self(id));
+        }
+        assertEquals("https://example.com:8443/app/api/users/42", links.self(42).getHref());
+    }
+
+}
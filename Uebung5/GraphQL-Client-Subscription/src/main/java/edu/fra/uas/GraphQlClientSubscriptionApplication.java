@@ -81,9 +81,13 @@ public class GraphQlClientSubscriptionApplication {
 			Thread.sleep(2000);
 			log.info("<===> Start subscription for StockPrices Silver");
 			Disposable silverSubscription = stockPriceService.subscribeToStockPrice("Silver", "Silver-Subscription");
-			Thread.sleep(5000);
-			log.info("<===> Stop subscription for StockPrices Gold");
+			Thread.sleep(2000);
+			log.info("<===> Start second subscription for StockPrices Gold, shares the first one");
+			Disposable secondGoldSubscription = stockPriceService.subscribeToStockPrice("Gold", "Gold-Subscription-2");
+			Thread.sleep(3000);
+			log.info("<===> Stop subscriptions for StockPrices Gold");
 			goldSubscription.dispose();
+			secondGoldSubscription.dispose();
 			Thread.sleep(2000);
 			log.info("<===> Stop subscription for StockPrices Silver");
 			silverSubscription.dispose();
@@ -0,0 +1,162 @@
+package edu.fra.uas.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.graphql.client.SubscriptionErrorException;
+import org.springframework.graphql.client.WebSocketGraphQlClient;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+
+import edu.fra.uas.model.StockPrice;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+/**
+ * Stock price subscriptions shared by all consumers of this client.
+ * <p>
+ * The first consumer of a symbol subscribes to it at the server, all further consumers of
+ * the symbol get the prices of that one subscription; it is cancelled when the last
+ * consumer cancels. A consumer that joins a running subscription gets the latest price
+ * right away. If the connection is lost the subscription is made again, after a backoff
+ * that starts at {@code stock.price.reconnect.min-backoff} and doubles up to
+ * {@code stock.price.reconnect.max-backoff}; it starts again once a price arrives.
+ * Subscriptions rejected by the server are not repeated, their consumers get the error.
+ * <p>
+ * Each consumer has its own flow control, a slow consumer never holds back the others:
+ * with {@link Overflow#LATEST} it gets only the newest price once it requests the next
+ * one, with {@link Overflow#BUFFER} up to {@code stock.price.buffer-size} prices are kept
+ * for it and the oldest are dropped when the buffer is full.
+ */
+@Service
+public class StockPriceSubscriptions {
+
+    private static final Logger log = LoggerFactory.getLogger(StockPriceSubscriptions.class);
+
+    private static final String wsURL = "ws://localhost:8080/graphqlws";
+
+    private static final String STOCK_PRICE = """
+            subscription StockPrice($symbol: String) {
+              stockPrice(symbol: $symbol) { symbol price timestamp }
+            }""";
+
+    /**
+     * What a consumer gets when it does not keep up with the prices.
+     */
+    public enum Overflow {
+        BUFFER, LATEST
+    }
+
+    private final Function<String, Flux<StockPrice>> subscribe;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final int bufferSize;
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StockPriceSubscriptions(@Value("${stock.price.reconnect.min-backoff:1s}") Duration minBackoff,
+            @Value("${stock.price.reconnect.max-backoff:30s}") Duration maxBackoff,
+            @Value("${stock.price.buffer-size:256}") int bufferSize) {
+        this(subscribe(WebSocketGraphQlClient.builder(wsURL, new ReactorNettyWebSocketClient()).build()),
+                minBackoff, maxBackoff, bufferSize);
+    }
+
+    StockPriceSubscriptions(Function<String, Flux<StockPrice>> subscribe, Duration minBackoff, Duration maxBackoff,
+            int bufferSize) {
+        this.subscribe = subscribe;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.bufferSize = bufferSize;
+    }
+
+    private static Function<String, Flux<StockPrice>> subscribe(WebSocketGraphQlClient wsGraphQlClient) {
+        return symbol -> wsGraphQlClient.document(STOCK_PRICE)
+                .variable("symbol", symbol)
+                .retrieveSubscription("stockPrice")
+                .toEntity(StockPrice.class);
+    }
+
+    /**
+     * Returns the prices of the symbol for one consumer, starting with the latest one.
+     */
+    public Flux<StockPrice> prices(String symbol, Overflow overflow) {
+        Flux<StockPrice> prices = Flux.defer(() -> acquire(symbol).prices.doFinally(signal -> release(symbol)));
+        return switch (overflow) {
+            case LATEST -> prices.onBackpressureLatest();
+            case BUFFER -> prices.onBackpressureBuffer(bufferSize,
+                    dropped -> log.debug("buffer of {} is full, dropped {}", symbol, dropped),
+                    BufferOverflowStrategy.DROP_OLDEST);
+        };
+    }
+
+    /**
+     * Returns the number of symbols subscribed at the server.
+     */
+    public int size() {
+        return upstreams.size();
+    }
+
+    // the consumers are counted under the lock of the entry, an upstream stays in the map
+    // for as long as it has consumers and only the first one subscribes at the server
+    private Upstream acquire(String symbol) {
+        return upstreams.compute(symbol, (key, upstream) -> {
+            if (upstream == null) {
+                upstream = new Upstream(key);
+            }
+            upstream.consumers++;
+            return upstream;
+        });
+    }
+
+    private void release(String symbol) {
+        upstreams.computeIfPresent(symbol, (key, upstream) -> {
+            if (--upstream.consumers > 0) {
+                return upstream;
+            }
+            upstream.cancel();
+            return null;
+        });
+    }
+
+    private final class Upstream {
+
+        private final String symbol;
+        private final Flux<StockPrice> prices;
+        private final Disposable subscription;
+        // only changed in acquire and release
+        private int consumers;
+
+        Upstream(String symbol) {
+            log.debug("subscribing to {}", symbol);
+            ConnectableFlux<StockPrice> prices = subscribe.apply(symbol)
+                    // the server ended the subscription, e.g. on shutdown
+                    .repeatWhen(completed -> completed.delayElements(minBackoff))
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, minBackoff)
+                            .maxBackoff(maxBackoff)
+                            .transientErrors(true)
+                            .filter(error -> !(error instanceof SubscriptionErrorException))
+                            .doBeforeRetry(retry -> log.warn("subscription to {} lost, attempt {} to subscribe again: {}",
+                                    symbol, retry.totalRetriesInARow() + 1, retry.failure().toString())))
+                    .replay(1);
+            this.symbol = symbol;
+            this.prices = prices;
+            this.subscription = prices.connect();
+        }
+
+        void cancel() {
+            log.debug("unsubscribing from {}", symbol);
+            subscription.dispose();
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+package edu.fra.uas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.fra.uas.model.StockPrice;
+import edu.fra.uas.service.StockPriceSubscriptions.Overflow;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+class StockPriceSubscriptionsTest {
+
+    private static final String GOLD = "Gold";
+
+    // prices sent by the server on the current subscription
+    private final Sinks.Many<StockPrice> server = Sinks.many().multicast().directBestEffort();
+    private final AtomicInteger subscribed = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    // subscriptions with a number up to this one fail as if the connection was lost
+    private volatile int failUpTo;
+
+    private VirtualTimeScheduler scheduler;
+    private StockPriceSubscriptions subscriptions;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = VirtualTimeScheduler.getOrSet();
+        subscriptions = new StockPriceSubscriptions(symbol -> Flux.defer(() -> subscribed.incrementAndGet() <= failUpTo
+                        ? Flux.<StockPrice>error(new IllegalStateException("connection lost"))
+                        : server.asFlux().doOnCancel(cancelled::incrementAndGet)),
+                Duration.ofSeconds(1), Duration.ofSeconds(30), 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        VirtualTimeScheduler.reset();
+    }
+
+    @Test
+    void consumersOfASymbolShareOneSubscription() {
+        List<Double> first = new CopyOnWriteArrayList<>();
+        List<Double> second = new CopyOnWriteArrayList<>();
+        Disposable a = subscriptions.prices(GOLD, Overflow.LATEST).subscribe(price -> first.add(price.getPrice()));
+        Disposable b = subscriptions.prices(GOLD, Overflow.BUFFER).subscribe(price -> second.add(price.getPrice()));
+
+        send(1.0);
+        send(2.0);
+
+        assertEquals(List.of(1.0, 2.0), first);
+        assertEquals(first, second);
+        assertEquals(1, subscribed.get());
+        assertEquals(1, subscriptions.size());
+        a.dispose();
+        b.dispose();
+    }
+
+    @Test
+    void lateConsumerGetsTheLatestPriceRightAway() {
+        Disposable first = subscriptions.prices(GOLD, Overflow.LATEST).subscribe();
+        send(1.0);
+        send(2.0);
+
+        StepVerifier.create(subscriptions.prices(GOLD, Overflow.LATEST))
+                .expectNextMatches(price -> price.getPrice() == 2.0)
+                .then(() -> send(3.0))
+                .expectNextMatches(price -> price.getPrice() == 3.0)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, subscribed.get());
+        first.dispose();
+    }
+
+    @Test
+    void subscriptionIsCancelledWithItsLastConsumer() {
+        Disposable a = subscriptions.prices(GOLD, Overflow.LATEST).subscribe();
+        Disposable b = subscriptions.prices(GOLD, Overflow.LATEST).subscribe();
+        send(1.0);
+
+        a.dispose();
+        assertEquals(0, cancelled.get());
+        b.dispose();
+        assertEquals(1, cancelled.get());
+        assertEquals(0, subscriptions.size());
+
+        // the next consumer subscribes again and gets nothing of the cancelled subscription
+        StepVerifier.create(subscriptions.prices(GOLD, Overflow.LATEST))
+                .expectSubscription()
+                .then(() -> send(2.0))
+                .expectNextMatches(price -> price.getPrice() == 2.0)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, subscribed.get());
+        assertEquals(0, subscriptions.size());
+    }
+
+    @Test
+    void lostSubscriptionIsMadeAgainAfterTheBackoff() {
+        failUpTo = 1;
+
+        StepVerifier.create(subscriptions.prices(GOLD, Overflow.LATEST))
+                .expectSubscription()
+                .then(() -> assertEquals(1, subscribed.get()))
+                // the first retry waits between 1 and 1.5 seconds because of the jitter
+                .then(() -> scheduler.advanceTimeBy(Duration.ofMillis(999)))
+                .then(() -> assertEquals(1, subscribed.get()))
+                .then(() -> scheduler.advanceTimeBy(Duration.ofMillis(501)))
+                .then(() -> assertEquals(2, subscribed.get()))
+                .then(() -> send(1.0))
+                // the consumer never sees the lost connection
+                .expectNextMatches(price -> price.getPrice() == 1.0)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, cancelled.get());
+        assertEquals(0, subscriptions.size());
+    }
+
+    private void send(double price) {
+        server.tryEmitNext(new StockPrice(GOLD, price, String.valueOf(price)));
+    }
+
+}
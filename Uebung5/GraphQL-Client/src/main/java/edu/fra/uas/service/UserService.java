@@ -1,6 +1,13 @@
 package edu.fra.uas.service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +19,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 
 import edu.fra.uas.model.User;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
 
 @Service
 public class UserService {
@@ -20,6 +28,21 @@ public class UserService {
 
     private static final String baseURI = "http://localhost:8080/graphql";
 
+    // the documents never change, only the variables do, so the server can cache them
+    private static final String USER_FIELDS = "{ id role firstName lastName email password }";
+    private static final String ALL_USERS = "query AllUsers { allUsers " + USER_FIELDS + " }";
+    private static final String USERS = "query Users($count: Int!, $offset: Int!) { users(count: $count, offset: $offset) " + USER_FIELDS + " }";
+    private static final String USER_BY_ID = "query UserById($id: ID) { userById(id: $id) " + USER_FIELDS + " }";
+    private static final String ADD_USER = "mutation AddUser($role: String!, $firstName: String!, $lastName: String!, $email: String!, $password: String!) "
+            + "{ addUser(role: $role, firstName: $firstName, lastName: $lastName, email: $email, password: $password) " + USER_FIELDS + " }";
+    private static final String UPDATE_USER = "mutation UpdateUser($id: ID!, $role: String!, $firstName: String!, $lastName: String!, $email: String!, $password: String!) "
+            + "{ updateUser(id: $id, role: $role, firstName: $firstName, lastName: $lastName, email: $email, password: $password) " + USER_FIELDS + " }";
+    private static final String DELETE_USER = "mutation DeleteUser($id: ID!) { deleteUser(id: $id) }";
+
+    private static final String PERSISTED_QUERY_NOT_FOUND = "PersistedQueryNotFound";
+
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
     private RestClient restClient;
     private HttpSyncGraphQlClient graphQlClient;
 
@@ -39,11 +62,9 @@ public class UserService {
     }
 
     public List<User> getAllUsers() {
-        // GraphQL query syntax
-        String document = "query { allUsers { id role firstName lastName email password } }";
         try {
             // retrieve data from GraphQL server
-            List<User> usersList = graphQlClient.document(document).retrieveSync("allUsers").toEntityList(User.class);
+            List<User> usersList = execute(ALL_USERS, Map.of()).field("allUsers").toEntityList(User.class);
             return usersList;
         } catch (FieldAccessException ex) {
             ClientGraphQlResponse response = ex.getResponse();
@@ -53,11 +74,9 @@ public class UserService {
     }
 
     public List<User> getUsers(int count, int offset) {
-        // GraphQL query syntax
-        String document = "query { users(count: " + count + ", offset: " + offset + ") { id role firstName lastName email password } }";
         try {
             // retrieve data from GraphQL server
-            List<User> usersList = graphQlClient.document(document).retrieveSync("users").toEntityList(User.class);
+            List<User> usersList = execute(USERS, Map.of("count", count, "offset", offset)).field("users").toEntityList(User.class);
             return usersList;
         } catch (FieldAccessException ex) {
             ClientGraphQlResponse response = ex.getResponse();
@@ -67,11 +86,9 @@ public class UserService {
     }
 
     public User getUserById(int id) {
-        // GraphQL query syntax
-        String document = "query { userById(id: " + id + ") { id role firstName lastName email password } }";
         try {
             // retrieve data from GraphQL server
-            User user = graphQlClient.document(document).retrieveSync("userById").toEntity(User.class);
+            User user = execute(USER_BY_ID, Map.of("id", id)).field("userById").toEntity(User.class);
             return user;
         } catch (FieldAccessException ex) {
             ClientGraphQlResponse response = ex.getResponse();
@@ -81,20 +98,15 @@ public class UserService {
     }
 
     public User addUser(String role, String firstName, String lastName, String email, String password) {
-        // GraphQL mutation syntax
-        String document = "mutation { addUser( " + 
-                                                "role: \"" + role + "\", " + 
-                                                "firstName: \"" + firstName + "\", " + 
-                                                "lastName: \"" + lastName + "\", " + 
-                                                "email: \"" + email + "\", " + 
-                                                "password: \"" + password + "\" " + 
-                                            ") " + 
-                                            "{ id role firstName lastName email password } " + 
-                                   "}";
-        
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("role", role);
+        variables.put("firstName", firstName);
+        variables.put("lastName", lastName);
+        variables.put("email", email);
+        variables.put("password", password);
         try {
             // retrieve data from GraphQL server
-            User user = graphQlClient.document(document).retrieveSync("addUser").toEntity(User.class);
+            User user = execute(ADD_USER, variables).field("addUser").toEntity(User.class);
             return user;
         } catch (FieldAccessException ex) {
             ClientGraphQlResponse response = ex.getResponse();
@@ -104,20 +116,16 @@ public class UserService {
     }
 
     public User updateUser(int id, String role, String firstName, String lastName, String email, String password) {
-        // GraphQL mutation syntax
-        String document = "mutation { updateUser( " + 
-                                                    "id: \"" + id + "\", " +
-                                                    "role: \"" + role + "\", " + 
-                                                    "firstName: \"" + firstName + "\", " + 
-                                                    "lastName: \"" + lastName + "\", " + 
-                                                    "email: \"" + email + "\", " + 
-                                                    "password: \"" + password + "\" " +                              
-                                                ") " + 
-                                                "{ id role firstName lastName email password } " +
-                                   "}";
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("id", id);
+        variables.put("role", role);
+        variables.put("firstName", firstName);
+        variables.put("lastName", lastName);
+        variables.put("email", email);
+        variables.put("password", password);
         try {
             // retrieve data from GraphQL server
-            User user = graphQlClient.document(document).retrieveSync("updateUser").toEntity(User.class);
+            User user = execute(UPDATE_USER, variables).field("updateUser").toEntity(User.class);
             return user;
         } catch (FieldAccessException ex) {
             ClientGraphQlResponse response = ex.getResponse();
@@ -127,11 +135,9 @@ public class UserService {
     }
 
     public Integer deleteUser(int id) {
-        // GraphQL mutation syntax
-        String document = "mutation { deleteUser(id: " + id + ")}";
         try {
             // retrieve data from GraphQL server
-            Integer integer = graphQlClient.document(document).retrieveSync("deleteUser").toEntity(Integer.class);
+            Integer integer = execute(DELETE_USER, Map.of("id", id)).field("deleteUser").toEntity(Integer.class);
             return integer;
         } catch (FieldAccessException ex) {
             ClientGraphQlResponse response = ex.getResponse();
@@ -140,4 +146,35 @@ public class UserService {
         return null;
     }
 
+    /**
+     * Sends only the hash of the document as automatic persisted query. If the server
+     * does not know the hash yet, the request is repeated once with the document, which
+     * the server then keeps for all following requests. The first request has no document,
+     * it carries the marker graphql-java uses for a missing query instead.
+     */
+    private ClientGraphQlResponse execute(String document, Map<String, Object> variables) {
+        Map<String, Object> persistedQuery = Map.of("version", 1, "sha256Hash", hashes.computeIfAbsent(document, UserService::sha256));
+        ClientGraphQlResponse response = graphQlClient.document(PersistedQuerySupport.PERSISTED_QUERY_MARKER)
+                .variables(variables)
+                .extension("persistedQuery", persistedQuery)
+                .executeSync();
+        if (response.getErrors().stream().anyMatch(error -> PERSISTED_QUERY_NOT_FOUND.equals(error.getMessage()))) {
+            log.debug("registering persisted query " + persistedQuery.get("sha256Hash"));
+            response = graphQlClient.document(document)
+                    .variables(variables)
+                    .extension("persistedQuery", persistedQuery)
+                    .executeSync();
+        }
+        return response;
+    }
+
+    private static String sha256(String document) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(document.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
 }
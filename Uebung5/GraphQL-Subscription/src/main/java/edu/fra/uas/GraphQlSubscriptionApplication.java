@@ -2,8 +2,10 @@ package edu.fra.uas;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class GraphQlSubscriptionApplication {
 
 	public static void main(String[] args) {
@@ -5,21 +5,25 @@ import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.GraphQlExceptionHandler;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.graphql.data.method.annotation.SchemaMapping;
 import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
+import org.springframework.graphql.execution.ErrorType;
 import org.springframework.stereotype.Controller;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import edu.fra.uas.model.StockPrice;
 import edu.fra.uas.model.User;
+import edu.fra.uas.repository.DuplicateEmailException;
+import edu.fra.uas.service.StockPriceHub;
 import edu.fra.uas.service.UserService;
+import graphql.GraphQLError;
+import graphql.schema.DataFetchingEnvironment;
 
 import reactor.core.publisher.Flux;
 
@@ -32,6 +36,9 @@ public class GraphqlController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private StockPriceHub stockPriceHub;
+
     @QueryMapping(name="allUsers")
     public List<User> getAllUsers() {
         log.debug("getAllUsers() is called");
@@ -85,22 +92,22 @@ public class GraphqlController {
     public User updateUser(@Argument Long id, @Argument String role, @Argument String firstName, @Argument String lastName, @Argument String email, @Argument String password) {
         log.debug("updateUser() is called");
         User user = userService.getUserById(id);
-        if (role != null && !role.isEmpty()) {
-            user.setRole(role);
-        }
-        if (firstName != null && !firstName.isEmpty()) {
-            user.setFirstName(firstName);            
-        }
-        if (lastName != null && !lastName.isEmpty()) {
-            user.setLastName(lastName);            
-        }
-        if (email != null && !email.isEmpty()) {
-            user.setEmail(email);            
-        }
-        if (password != null && !password.isEmpty()) {
-            user.setPassword(password);            
+        if (user == null) {
+            log.error("User with id " + id + " not found");
+            return null;
         }
-        return userService.updateUser(user);
+        // a copy, the stored user stays unchanged if the update is rejected
+        User changed = new User(user.getId(),
+                orElse(role, user.getRole()),
+                orElse(firstName, user.getFirstName()),
+                orElse(lastName, user.getLastName()),
+                orElse(email, user.getEmail()),
+                orElse(password, user.getPassword()));
+        return userService.updateUser(changed);
+    }
+
+    private static String orElse(String value, String current) {
+        return value != null && !value.isEmpty() ? value : current;
     }
 
     @MutationMapping
@@ -116,11 +123,21 @@ public class GraphqlController {
         }
     }
 
+    @GraphQlExceptionHandler({IllegalArgumentException.class, DuplicateEmailException.class})
+    public GraphQLError handleBadRequest(RuntimeException e, DataFetchingEnvironment environment) {
+        log.error(e.getMessage());
+        return GraphQLError.newError()
+                .errorType(ErrorType.BAD_REQUEST)
+                .message(e.getMessage())
+                .path(environment.getExecutionStepInfo().getPath())
+                .location(environment.getField().getSourceLocation())
+                .build();
+    }
+
     @SubscriptionMapping
     public Flux<StockPrice> stockPrice(@Argument String symbol) {
         log.debug("stockPrice() is called");
-        return Flux.interval(Duration.ofSeconds(1))
-                .map(l -> new StockPrice(symbol, Math.random(), LocalDateTime.now().toString()));
+        return stockPriceHub.prices(symbol);
     }
 
 }
@@ -0,0 +1,110 @@
+package edu.fra.uas.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import edu.fra.uas.model.StockPrice;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+
+/**
+ * One price feed per symbol, shared by all of its subscribers.
+ * <p>
+ * A feed is started by the first subscriber of a symbol and stopped when the last one
+ * cancels; a later subscriber starts it again. Every price is generated once per symbol
+ * and multicast to all subscribers, a new subscriber gets the latest price right away.
+ * The feed never waits for a subscriber: a subscriber that does not keep up only gets
+ * the newest price once it requests the next one, the prices in between are dropped.
+ */
+@Service
+public class StockPriceHub {
+
+    private static final Logger log = LoggerFactory.getLogger(StockPriceHub.class);
+
+    private final Function<String, Flux<StockPrice>> source;
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StockPriceHub(@Value("${stock.price.interval:1000}") long interval) {
+        this(symbol -> Flux.interval(Duration.ofMillis(interval))
+                .map(tick -> new StockPrice(symbol, ThreadLocalRandom.current().nextDouble(), LocalDateTime.now().toString())));
+    }
+
+    StockPriceHub(Function<String, Flux<StockPrice>> source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns the prices of the symbol, starting with the latest one.
+     */
+    public Flux<StockPrice> prices(String symbol) {
+        if (symbol == null) {
+            return Flux.error(new IllegalArgumentException("symbol is required"));
+        }
+        return Flux.defer(() -> acquire(symbol).prices.doFinally(signal -> release(symbol))).onBackpressureLatest();
+    }
+
+    /**
+     * Returns the number of symbols with a running feed.
+     */
+    public int size() {
+        return feeds.size();
+    }
+
+    // a feed is counted and removed under the lock of its entry, so it stays in the map
+    // for as long as anyone subscribes to it and is never started twice
+    private Feed acquire(String symbol) {
+        return feeds.compute(symbol, (key, feed) -> {
+            if (feed == null) {
+                feed = new Feed(key);
+            }
+            feed.subscribers++;
+            return feed;
+        });
+    }
+
+    private void release(String symbol) {
+        feeds.computeIfPresent(symbol, (key, feed) -> {
+            if (--feed.subscribers > 0) {
+                return feed;
+            }
+            feed.stop();
+            return null;
+        });
+    }
+
+    private final class Feed {
+
+        private final String symbol;
+        private final Flux<StockPrice> prices;
+        private final Disposable connection;
+        // only changed in acquire and release
+        private int subscribers;
+
+        Feed(String symbol) {
+            log.debug("starting feed {}", symbol);
+            ConnectableFlux<StockPrice> prices = source.apply(symbol).replay(1);
+            this.symbol = symbol;
+            this.prices = prices;
+            this.connection = prices.connect();
+        }
+
+        void stop() {
+            log.debug("stopping feed {}", symbol);
+            connection.dispose();
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package edu.fra.uas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.fra.uas.model.StockPrice;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+class StockPriceHubTest {
+
+    private static final String GOLD = "Gold";
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private VirtualTimeScheduler scheduler;
+    private StockPriceHub hub;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = VirtualTimeScheduler.getOrSet();
+        // the n-th price of a feed is n, so the prices tell which ticks a subscriber got
+        hub = new StockPriceHub(symbol -> Flux.interval(Duration.ofSeconds(1))
+                .map(tick -> new StockPrice(symbol, (double) tick, String.valueOf(tick)))
+                .doOnSubscribe(subscription -> {
+                    started.incrementAndGet();
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                })
+                .doOnCancel(running::decrementAndGet));
+    }
+
+    @AfterEach
+    void tearDown() {
+        VirtualTimeScheduler.reset();
+    }
+
+    @Test
+    void subscribersOfASymbolShareOneFeed() {
+        List<Double> first = new CopyOnWriteArrayList<>();
+        List<Double> second = new CopyOnWriteArrayList<>();
+        Disposable a = hub.prices(GOLD).subscribe(price -> first.add(price.getPrice()));
+        Disposable b = hub.prices(GOLD).subscribe(price -> second.add(price.getPrice()));
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(3));
+
+        assertEquals(List.of(0.0, 1.0, 2.0), first);
+        assertEquals(first, second);
+        assertEquals(1, started.get());
+        assertEquals(1, hub.size());
+        a.dispose();
+        b.dispose();
+    }
+
+    @Test
+    void lateSubscriberGetsTheLatestPriceRightAway() {
+        Disposable first = hub.prices(GOLD).subscribe();
+        scheduler.advanceTimeBy(Duration.ofSeconds(3));
+
+        StepVerifier.create(hub.prices(GOLD))
+                .expectNextMatches(price -> price.getPrice() == 2.0)
+                .then(() -> scheduler.advanceTimeBy(Duration.ofSeconds(1)))
+                .expectNextMatches(price -> price.getPrice() == 3.0)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, started.get());
+        first.dispose();
+    }
+
+    @Test
+    void feedStopsWithItsLastSubscriberAndStartsAgainWithTheNext() {
+        Disposable a = hub.prices(GOLD).subscribe();
+        Disposable b = hub.prices(GOLD).subscribe();
+        scheduler.advanceTimeBy(Duration.ofSeconds(3));
+
+        a.dispose();
+        assertEquals(1, running.get());
+        b.dispose();
+        assertEquals(0, running.get());
+        assertEquals(0, hub.size());
+
+        // a new feed has no price yet, nothing of the stopped one is replayed
+        StepVerifier.create(hub.prices(GOLD))
+                .expectSubscription()
+                .then(() -> scheduler.advanceTimeBy(Duration.ofSeconds(1)))
+                .expectNextMatches(price -> price.getPrice() == 0.0)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, started.get());
+        assertEquals(0, hub.size());
+    }
+
+    @Test
+    void subscriberRacingTheLastCancelNeverStartsASecondFeed() throws InterruptedException {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    hub.prices(GOLD).subscribe().dispose();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(0, running.get());
+        assertEquals(0, hub.size());
+        assertTrue(started.get() > 1);
+    }
+
+}
@@ -0,0 +1,149 @@
+package edu.fra.uas.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.fra.uas.GraphQlSubscriptionApplication;
+
+/**
+ * Soak test of the stock price subscriptions over WebSocket. Starts the application on a
+ * random port, opens {@code connections} WebSocket connections with the
+ * {@code graphql-transport-ws} protocol and subscribes {@code subscriptions} times on each,
+ * spread over {@code symbols} symbols. Once all are running it reports the heap used after
+ * a GC and, over a window of {@code seconds}, the prices received and the CPU time used.
+ * Client and server run in the same JVM, the numbers include both. Run with
+ * {@code java -cp ... edu.fra.uas.service.StockPriceSoakBenchmark [connections] [subscriptions] [symbols] [seconds]},
+ * the default is 100 connections with 100 subscriptions each over 10 symbols for 60 seconds.
+ */
+public class StockPriceSoakBenchmark {
+
+    private static final long INTERVAL_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int subscriptions = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int symbols = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+
+        ConfigurableApplicationContext context = SpringApplication.run(GraphQlSubscriptionApplication.class,
+                "--server.port=0", "--users.store=memory", "--logging.level.edu.fra.uas=INFO",
+                "--spring.output.ansi.enabled=NEVER", "--stock.price.interval=" + INTERVAL_MILLIS);
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            StockPriceHub hub = context.getBean(StockPriceHub.class);
+            URI uri = URI.create("ws://localhost:" + port + "/graphqlws");
+            HttpClient client = HttpClient.newHttpClient();
+            AtomicLong prices = new AtomicLong();
+            long heapBefore = usedHeap();
+
+            List<WebSocket> sockets = new ArrayList<>();
+            for (int c = 0; c < connections; c++) {
+                Listener listener = new Listener(prices);
+                WebSocket socket = client.newWebSocketBuilder()
+                        .subprotocols("graphql-transport-ws")
+                        .buildAsync(uri, listener)
+                        .get(10, TimeUnit.SECONDS);
+                socket.sendText("{\"type\":\"connection_init\"}", true).get();
+                listener.ack.get(10, TimeUnit.SECONDS);
+                for (int s = 0; s < subscriptions; s++) {
+                    String symbol = "SYM" + ((c * subscriptions + s) % symbols);
+                    socket.sendText("{\"id\":\"" + s + "\",\"type\":\"subscribe\",\"payload\":{\"query\":"
+                            + "\"subscription { stockPrice(symbol: \\\"" + symbol + "\\\") { symbol price timestamp } }\"}}", true).get();
+                }
+                sockets.add(socket);
+            }
+            int total = connections * subscriptions;
+            System.out.printf("%d subscriptions on %d connections, %d feeds running%n", total, connections, hub.size());
+
+            // let all subscriptions receive their first prices before measuring
+            Thread.sleep(5_000);
+            long heapAfter = usedHeap();
+            System.out.printf("heap: %.1f MB before, %.1f MB with subscriptions, %.2f KB per subscription%n",
+                    heapBefore / 1e6, heapAfter / 1e6, (heapAfter - heapBefore) / 1e3 / total);
+
+            com.sun.management.OperatingSystemMXBean os =
+                    (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            long cpuStart = os.getProcessCpuTime();
+            long pricesStart = prices.get();
+            long start = System.nanoTime();
+            for (int second = 1; second <= seconds; second++) {
+                Thread.sleep(1_000);
+                if (second % 10 == 0 || second == seconds) {
+                    long elapsed = System.nanoTime() - start;
+                    long received = prices.get() - pricesStart;
+                    System.out.printf("%3d s: %10.0f prices/s (expected %.0f), CPU %5.1f %% of one core, heap %.1f MB%n",
+                            second, received * 1e9 / elapsed, total * 1000.0 / INTERVAL_MILLIS,
+                            (os.getProcessCpuTime() - cpuStart) * 100.0 / elapsed,
+                            ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1e6);
+                }
+            }
+
+            for (WebSocket socket : sockets) {
+                socket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(10, TimeUnit.SECONDS);
+            }
+            Thread.sleep(2_000);
+            System.out.printf("closed all connections, %d feeds running%n", hub.size());
+        } finally {
+            context.close();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static final class Listener implements WebSocket.Listener {
+
+        private final AtomicLong prices;
+        private final CompletableFuture<Void> ack = new CompletableFuture<>();
+        private final StringBuilder message = new StringBuilder();
+
+        Listener(AtomicLong prices) {
+            this.prices = prices;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            message.append(data);
+            if (last) {
+                String text = message.toString();
+                message.setLength(0);
+                if (text.contains("\"type\":\"next\"")) {
+                    prices.incrementAndGet();
+                } else if (text.contains("\"type\":\"connection_ack\"")) {
+                    ack.complete(null);
+                } else if (text.contains("\"type\":\"error\"")) {
+                    System.err.println(text);
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            ack.completeExceptionally(error);
+            System.err.println("connection failed: " + error);
+        }
+
+    }
+
+}
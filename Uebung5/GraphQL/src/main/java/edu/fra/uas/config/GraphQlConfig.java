@@ -0,0 +1,91 @@
+package edu.fra.uas.config;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.graphql.GraphQlSourceBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import edu.fra.uas.graphql.DocumentCache;
+import edu.fra.uas.service.UserService;
+import graphql.analysis.FieldComplexityCalculator;
+import graphql.analysis.MaxQueryComplexityInstrumentation;
+import graphql.analysis.MaxQueryDepthInstrumentation;
+import graphql.schema.GraphQLTypeUtil;
+
+/**
+ * Settings of the GraphQL engine. Parsed documents are taken from the {@link DocumentCache},
+ * which also serves persisted queries.
+ * <p>
+ * Limits of the depth and complexity of GraphQL documents. Both are computed from the
+ * document before any field is fetched, documents over a limit are rejected with an error.
+ * <p>
+ * Each field costs 1. A list field multiplies the cost of its selection by the number of
+ * users it can return: {@code count} for {@code users} and {@code colleagues} and
+ * {@code first} of the connection for {@code edges}. Lists without a bound, {@code allUsers}
+ * and a {@code count} of 0, are estimated with {@code graphql.unbounded-list-estimate}
+ * users, so whether a document is accepted does not depend on the number of stored users.
+ */
+@Configuration
+public class GraphQlConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphQlConfig.class);
+
+    @Value("${graphql.max-depth:8}")
+    private int maxDepth;
+
+    @Value("${graphql.max-complexity:50000}")
+    private int maxComplexity;
+
+    @Value("${graphql.unbounded-list-estimate:100}")
+    private int unboundedListEstimate;
+
+    @Bean
+    public GraphQlSourceBuilderCustomizer documentCacheCustomizer(DocumentCache documentCache) {
+        return builder -> builder.configureGraphQl(graphQl -> graphQl.preparsedDocumentProvider(documentCache));
+    }
+
+    @Bean
+    public MaxQueryDepthInstrumentation maxQueryDepthInstrumentation() {
+        log.debug("max query depth: {}", maxDepth);
+        return new MaxQueryDepthInstrumentation(maxDepth);
+    }
+
+    @Bean
+    public MaxQueryComplexityInstrumentation maxQueryComplexityInstrumentation() {
+        log.debug("max query complexity: {}, unbounded lists: {}", maxComplexity, unboundedListEstimate);
+        return new MaxQueryComplexityInstrumentation(maxComplexity, fieldComplexity(unboundedListEstimate));
+    }
+
+    public static FieldComplexityCalculator fieldComplexity(int unboundedListEstimate) {
+        return (environment, childComplexity) -> {
+            if (!GraphQLTypeUtil.isList(GraphQLTypeUtil.unwrapNonNull(environment.getFieldDefinition().getType()))) {
+                return 1 + childComplexity;
+            }
+            long items = switch (environment.getField().getName()) {
+                case "users", "colleagues" -> count(environment.getArguments(), unboundedListEstimate);
+                case "edges" -> Math.max(first(environment.getParentEnvironment().getArguments()), 0);
+                default -> unboundedListEstimate;
+            };
+            return (int) Math.min(Integer.MAX_VALUE, 1 + items * Math.max(childComplexity, 1));
+        };
+    }
+
+    // 0 stands for all users
+    private static long count(Map<String, Object> arguments, int unboundedListEstimate) {
+        Object count = arguments.get("count");
+        if (!(count instanceof Number number) || number.intValue() <= 0) {
+            return unboundedListEstimate;
+        }
+        return number.intValue();
+    }
+
+    private static long first(Map<String, Object> arguments) {
+        Object first = arguments.get("first");
+        return first instanceof Number number ? number.intValue() : UserService.DEFAULT_PAGE_SIZE;
+    }
+
+}
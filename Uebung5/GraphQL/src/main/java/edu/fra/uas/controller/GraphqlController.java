@@ -1,20 +1,30 @@
 package edu.fra.uas.controller;
 
+import org.dataloader.DataLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.GraphQlExceptionHandler;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.graphql.execution.ErrorType;
 import org.springframework.stereotype.Controller;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 import edu.fra.uas.model.User;
+import edu.fra.uas.model.UserConnection;
+import edu.fra.uas.repository.DuplicateEmailException;
 import edu.fra.uas.service.UserService;
+import graphql.GraphQLError;
+import graphql.schema.DataFetchingEnvironment;
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
 
 
 @Controller
@@ -26,6 +36,21 @@ public class GraphqlController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private BatchLoaderRegistry batchLoaderRegistry;
+
+    /**
+     * Registers the batch loaders. Within one request, all users and roles requested
+     * by fields of the same level are collected and looked up with a single call.
+     */
+    @PostConstruct
+    public void registerBatchLoaders() {
+        batchLoaderRegistry.forTypePair(Long.class, User.class)
+                .registerMappedBatchLoader((ids, environment) -> Mono.fromSupplier(() -> userService.getUsersById(ids)));
+        batchLoaderRegistry.<String, List<User>>forName("usersByRole")
+                .registerMappedBatchLoader((roles, environment) -> Mono.fromSupplier(() -> userService.getUsersByRoles(roles)));
+    }
+
     @QueryMapping(name="allUsers")
     public List<User> getAllUsers() {
         log.debug("getAllUsers() is called");
@@ -44,23 +69,54 @@ public class GraphqlController {
             log.error("Invalid count or offset values");
             return null;
         }
-        Iterable<User> userIter = userService.getAllUsers();
-        List<User> users = new ArrayList<>();
-        for (User user : userIter) {
-            users.add(user);
-        }
+        return userService.getUsers(offset, count);
+    }
 
-        if (count > 0) {
-            return users.stream().skip(offset).limit(count).collect(Collectors.toList());
-        } else {
-            return users.stream().skip(offset).collect(Collectors.toList());
-        }
+    @QueryMapping
+    public UserConnection usersConnection(@Argument Integer first, @Argument String after) {
+        log.debug("usersConnection(first=" + first + ", after=" + after + ") is called");
+        return userService.getUsersConnection(first == null ? UserService.DEFAULT_PAGE_SIZE : first, after);
     }
 
     @QueryMapping(name="userById")
-    public User getUserById(@Argument Long id) {
+    public CompletableFuture<User> getUserById(@Argument Long id, DataLoader<Long, User> users) {
         log.debug("getUserById() is called");
-        return userService.getUserById(id);
+        if (id == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return users.load(id);
+    }
+
+    /**
+     * The other users with the same role. The roles of all users of a list are loaded together.
+     */
+    @SchemaMapping
+    public CompletableFuture<List<User>> colleagues(User user, @Argument int count, DataLoader<String, List<User>> usersByRole) {
+        if (user.getRole() == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return usersByRole.load(user.getRole()).thenApply(sameRole -> others(user, sameRole, count));
+    }
+
+    static List<User> others(User user, List<User> sameRole, int count) {
+        if (sameRole == null) {
+            return List.of();
+        }
+        return sameRole.stream()
+                .filter(other -> other.getId() != user.getId())
+                .limit(Math.max(count, 0))
+                .toList();
+    }
+
+    @GraphQlExceptionHandler({IllegalArgumentException.class, DuplicateEmailException.class})
+    public GraphQLError handleBadRequest(RuntimeException e, DataFetchingEnvironment environment) {
+        log.error(e.getMessage());
+        return GraphQLError.newError()
+                .errorType(ErrorType.BAD_REQUEST)
+                .message(e.getMessage())
+                .path(environment.getExecutionStepInfo().getPath())
+                .location(environment.getField().getSourceLocation())
+                .build();
     }
 
     @MutationMapping
@@ -79,22 +135,22 @@ public class GraphqlController {
     public User updateUser(@Argument Long id, @Argument String role, @Argument String firstName, @Argument String lastName, @Argument String email, @Argument String password) {
         log.debug("updateUser() is called");
         User user = userService.getUserById(id);
-        if (role != null && !role.isEmpty()) {
-            user.setRole(role);
-        }
-        if (firstName != null && !firstName.isEmpty()) {
-            user.setFirstName(firstName);            
-        }
-        if (lastName != null && !lastName.isEmpty()) {
-            user.setLastName(lastName);            
-        }
-        if (email != null && !email.isEmpty()) {
-            user.setEmail(email);            
-        }
-        if (password != null && !password.isEmpty()) {
-            user.setPassword(password);            
+        if (user == null) {
+            log.error("User with id " + id + " not found");
+            return null;
         }
-        return userService.updateUser(user);
+        // a copy, the stored user stays unchanged if the update is rejected
+        User changed = new User(user.getId(),
+                orElse(role, user.getRole()),
+                orElse(firstName, user.getFirstName()),
+                orElse(lastName, user.getLastName()),
+                orElse(email, user.getEmail()),
+                orElse(password, user.getPassword()));
+        return userService.updateUser(changed);
+    }
+
+    private static String orElse(String value, String current) {
+        return value != null && !value.isEmpty() ? value : current;
     }
 
     @MutationMapping
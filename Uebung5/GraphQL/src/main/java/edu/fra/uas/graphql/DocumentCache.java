@@ -0,0 +1,155 @@
+package edu.fra.uas.graphql;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.PersistedQueryIdInvalid;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+
+/**
+ * Cache of parsed and validated GraphQL documents, with support for automatic persisted
+ * queries as defined by Apollo.
+ * <p>
+ * A document sent as text is parsed and validated once and then taken from the cache for
+ * as long as it stays there. A client may instead send only the SHA-256 hash of its
+ * document in the {@code persistedQuery} extension; if the hash is unknown the request
+ * fails with {@code PersistedQueryNotFound} and the client repeats it with the document,
+ * which is then cached under the hash:
+ * <pre>
+ * {"variables": {...}, "extensions": {"persistedQuery": {"version": 1, "sha256Hash": "..."}}}
+ * </pre>
+ * The cache holds at most {@code graphql.document-cache.max-entries} documents, the
+ * oldest are evicted first. Validation only depends on the schema, so entries never
+ * become stale.
+ */
+@Component
+public class DocumentCache implements PreparsedDocumentProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentCache.class);
+
+    private static final String PERSISTED_QUERY = "persistedQuery";
+    private static final String HASH = "sha256Hash";
+
+    private final int maxEntries;
+    // keyed by the hash of persisted queries and by the text of all other documents
+    private final Map<String, PreparsedDocumentEntry> entries = new ConcurrentHashMap<>();
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DocumentCache(@Value("${graphql.document-cache.max-entries:1000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput,
+            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return CompletableFuture.completedFuture(lookup(executionInput, parseAndValidateFunction));
+    }
+
+    @Override
+    public PreparsedDocumentEntry getDocument(ExecutionInput executionInput,
+            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return lookup(executionInput, parseAndValidateFunction);
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private PreparsedDocumentEntry lookup(ExecutionInput executionInput,
+            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        String query = executionInput.getQuery();
+        boolean hasQuery = query != null && !query.isBlank() && !query.equals(PersistedQuerySupport.PERSISTED_QUERY_MARKER);
+        String hash = persistedQueryHash(executionInput);
+        if (hash == null) {
+            return hasQuery ? get(query, executionInput, parseAndValidateFunction) : parseAndValidateFunction.apply(executionInput);
+        }
+        if (!hasQuery) {
+            PreparsedDocumentEntry entry = entries.get(hash);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return new PreparsedDocumentEntry(new PersistedQueryNotFound(hash));
+            }
+            hits.incrementAndGet();
+            return entry;
+        }
+        if (!hash.equals(sha256(query))) {
+            return new PreparsedDocumentEntry(new PersistedQueryIdInvalid(hash));
+        }
+        return get(hash, executionInput, parseAndValidateFunction);
+    }
+
+    private PreparsedDocumentEntry get(String key, ExecutionInput executionInput,
+            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        PreparsedDocumentEntry entry = entries.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        // concurrent misses of the same document may parse it more than once, the last one is kept
+        entry = parseAndValidateFunction.apply(executionInput);
+        if (entries.put(key, entry) == null) {
+            order.add(key);
+            while (entries.size() > maxEntries) {
+                String oldest = order.poll();
+                if (oldest == null) {
+                    break;
+                }
+                entries.remove(oldest);
+            }
+        }
+        return entry;
+    }
+
+    private static String persistedQueryHash(ExecutionInput executionInput) {
+        Map<String, Object> extensions = executionInput.getExtensions();
+        if (extensions == null || !(extensions.get(PERSISTED_QUERY) instanceof Map<?, ?> persistedQuery)) {
+            return null;
+        }
+        Object hash = persistedQuery.get(HASH);
+        if (hash == null) {
+            log.debug("persisted query without hash");
+            return null;
+        }
+        // hex digits may come in either case, they are kept in lower case as sha256 returns them
+        return hash.toString().toLowerCase();
+    }
+
+    public static String sha256(String query) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(query.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+}
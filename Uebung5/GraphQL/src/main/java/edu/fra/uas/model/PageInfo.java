@@ -0,0 +1,7 @@
+package edu.fra.uas.model;
+
+/**
+ * Relay page info of a {@link UserConnection}.
+ */
+public record PageInfo(boolean hasNextPage, boolean hasPreviousPage, String startCursor, String endCursor) {
+}
@@ -0,0 +1,9 @@
+package edu.fra.uas.model;
+
+import java.util.List;
+
+/**
+ * One page of users as Relay connection.
+ */
+public record UserConnection(List<UserEdge> edges, PageInfo pageInfo) {
+}
@@ -0,0 +1,41 @@
+package edu.fra.uas.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A user of a {@link UserConnection} and its cursor.
+ * <p>
+ * A cursor is opaque to clients; it encodes the id of the user, so the page after it
+ * is found in the ordered id index no matter how far down the list it is.
+ */
+public record UserEdge(String cursor, User node) {
+
+    private static final String PREFIX = "user:";
+
+    public UserEdge(User node) {
+        this(cursor(node.getId()), node);
+    }
+
+    public static String cursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the id encoded in the cursor.
+     *
+     * @throws IllegalArgumentException if the cursor was not returned by {@link #cursor(long)}
+     */
+    public static long id(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (decoded.startsWith(PREFIX)) {
+                return Long.parseLong(decoded.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // not Base64 or not followed by a number
+        }
+        throw new IllegalArgumentException("Invalid cursor " + cursor);
+    }
+
+}
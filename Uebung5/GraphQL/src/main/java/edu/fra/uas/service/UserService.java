@@ -1,10 +1,22 @@
 package edu.fra.uas.service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import edu.fra.uas.model.PageInfo;
 import edu.fra.uas.model.User;
+import edu.fra.uas.model.UserConnection;
+import edu.fra.uas.model.UserEdge;
 import edu.fra.uas.repository.UserRepository;
 
 /**
@@ -15,13 +27,29 @@ public class UserService {
 
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(UserService.class);
 
+    public static final int DEFAULT_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private UserRepository userRepository;
-    
-    private long nextUserId = 1;
+
+    public UserService() {
+    }
+
+    public UserService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    // the journal only has to be replayed from the last snapshot on
+    @Scheduled(initialDelayString = "${users.journal.snapshot-interval:300000}",
+               fixedDelayString = "${users.journal.snapshot-interval:300000}")
+    public void snapshot() throws IOException {
+        log.debug("snapshot");
+        userRepository.snapshot();
+    }
 
     public User createUser(User user) {
-        user.setId(nextUserId++);
+        user.setId(userRepository.nextId());
         log.debug("createUser: " + user);
         userRepository.put(user.getId(), user);
         return userRepository.get(user.getId());
@@ -32,11 +60,87 @@ public class UserService {
         return userRepository.values();
     }
 
+    /**
+     * Returns count users from offset on, all remaining ones if count is 0; only the
+     * returned users are copied.
+     */
+    public List<User> getUsers(int offset, int count) {
+        log.debug("getUsers: offset " + offset + " count " + count);
+        return userRepository.values().stream()
+                .skip(offset)
+                .limit(count > 0 ? count : Long.MAX_VALUE)
+                .toList();
+    }
+
+    /**
+     * Returns the first users after the cursor, ordered by id; from the start if after is
+     * {@code null}. The page is read from the ordered id index, a page deep down the list
+     * costs the same as the first one.
+     *
+     * @throws IllegalArgumentException if first is out of range or the cursor is invalid
+     */
+    public UserConnection getUsersConnection(int first, String after) {
+        log.debug("getUsersConnection: first " + first + " after " + after);
+        if (first < 0 || first > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("first must be between 0 and " + MAX_PAGE_SIZE);
+        }
+        long afterId = after == null ? Long.MIN_VALUE : UserEdge.id(after);
+        List<UserEdge> edges = new ArrayList<>(first);
+        Iterator<User> users = userRepository.valuesAfter(afterId).iterator();
+        while (edges.size() < first && users.hasNext()) {
+            edges.add(new UserEdge(users.next()));
+        }
+        Long firstId = userRepository.firstId();
+        PageInfo pageInfo = new PageInfo(
+                users.hasNext(),
+                firstId != null && firstId <= afterId,
+                edges.isEmpty() ? null : edges.get(0).cursor(),
+                edges.isEmpty() ? null : edges.get(edges.size() - 1).cursor());
+        return new UserConnection(edges, pageInfo);
+    }
+
+    /**
+     * Looks up the users of all ids at once, ids without a user are missing in the result.
+     */
+    public Map<Long, User> getUsersById(Collection<Long> ids) {
+        log.debug("getUsersById: " + ids.size() + " ids");
+        Map<Long, User> users = new HashMap<>();
+        for (Long id : ids) {
+            User user = userRepository.get(id);
+            if (user != null) {
+                users.put(id, user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Looks up the users of all roles at once, each role is read from the index once.
+     */
+    public Map<String, List<User>> getUsersByRoles(Collection<String> roles) {
+        log.debug("getUsersByRoles: " + roles);
+        Map<String, List<User>> users = new HashMap<>();
+        for (String role : roles) {
+            users.put(role, userRepository.findByRole(role));
+        }
+        return users;
+    }
+
     public User getUserById(long id) {
         log.debug("getUser: " + id);
         return userRepository.get(id);
     }
 
+    public User getUserByEmail(String email) {
+        log.debug("getUserByEmail: " + email);
+        return userRepository.findByEmail(email);
+    }
+
+    public List<User> getUsersByRole(String role) {
+        log.debug("getUsersByRole: " + role);
+        return userRepository.findByRole(role);
+    }
+
     public User updateUser(User user) {
         log.debug("updateUser: " + user);
         userRepository.put(user.getId(), user);
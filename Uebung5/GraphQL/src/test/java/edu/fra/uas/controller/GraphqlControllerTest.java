@@ -0,0 +1,84 @@
+package edu.fra.uas.controller;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureGraphQlTester;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.graphql.test.tester.ExecutionGraphQlServiceTester;
+
+import edu.fra.uas.model.User;
+import edu.fra.uas.service.UserService;
+
+@SpringBootTest(properties = "users.store=memory")
+@AutoConfigureGraphQlTester
+class GraphqlControllerTest {
+
+    @Autowired
+    private ExecutionGraphQlServiceTester graphQlTester;
+
+    @SpyBean
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        // InitData has already used the service
+        clearInvocations(userService);
+    }
+
+    @Test
+    void rejectsDocumentsNestedTooDeep() {
+        // graphql.max-depth is 8
+        graphQlTester.document("{ allUsers { colleagues { colleagues { colleagues { colleagues { colleagues"
+                        + " { colleagues { colleagues { colleagues { id } } } } } } } } } }")
+                .execute()
+                .errors()
+                .expect(error -> error.getMessage().contains("depth"))
+                .verify();
+        verify(userService, never()).getAllUsers();
+    }
+
+    @Test
+    void rejectsDocumentsTooComplex() {
+        // 1 + 1000 * (1 + 100), graphql.max-complexity is 50000
+        graphQlTester.document("{ users(count: 1000, offset: 0) { colleagues(count: 100) { id } } }")
+                .execute()
+                .errors()
+                .expect(error -> error.getMessage().contains("complexity"))
+                .verify();
+        verify(userService, never()).getUsers(anyInt(), anyInt());
+    }
+
+    @Test
+    void acceptsAllUsersNoMatterHowManyThereAre() {
+        for (int i = 0; i < 10_000; i++) {
+            userService.createUser(new User(0, "GUEST", "First" + i, "Last" + i, "guest" + i + "@example.com", "secret"));
+        }
+        graphQlTester.document("{ allUsers { id colleagues { id } } }")
+                .execute()
+                .path("allUsers[*].id")
+                .entityList(String.class)
+                .hasSizeGreaterThan(10_000);
+    }
+
+    @Test
+    void loadsTheRolesOfColleaguesOncePerLevel() {
+        graphQlTester.document("{ allUsers { id colleagues(count: 3) { id colleagues(count: 3) { id } } } }")
+                .execute()
+                .path("allUsers[*].colleagues[*].colleagues[*].id")
+                .entityList(String.class)
+                .hasSizeGreaterThan(0);
+        // the roles of all users of the first level are loaded with one call, the second
+        // level only has the same roles again and finds them in the data loader
+        verify(userService, times(1)).getUsersByRoles(anyCollection());
+    }
+
+}
@@ -0,0 +1,125 @@
+package edu.fra.uas.controller;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderRegistry;
+import org.dataloader.MappedBatchLoader;
+
+import edu.fra.uas.model.User;
+import edu.fra.uas.repository.UserRepository;
+import edu.fra.uas.service.UserService;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.DataFetcher;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+
+/**
+ * Time of a query for 1000 users with their colleagues, with {@code colleagues} resolved
+ * per user and with the role lookups batched by a data loader as the GraphqlController does.
+ * Also counts the role lookups per query. Run with
+ * {@code java -cp ... edu.fra.uas.controller.NestedQueryBenchmark}.
+ */
+public class NestedQueryBenchmark {
+
+    private static final int USERS = 1_000;
+    private static final int ROLES = 10;
+    private static final long TARGET_NANOS = 3_000_000_000L;
+    private static final String QUERY = "{ users(count: " + USERS + ", offset: 0) { id firstName colleagues(count: 10) { id email } } }";
+
+    public static void main(String[] args) throws Exception {
+        AtomicLong lookups = new AtomicLong();
+        UserRepository repository = new UserRepository() {
+            @Override
+            public List<User> findByRole(String role) {
+                lookups.incrementAndGet();
+                return super.findByRole(role);
+            }
+        };
+        repository.recover();
+        UserService userService = new UserService(repository);
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setRole("ROLE" + (i % ROLES));
+            user.setFirstName("First" + i);
+            user.setLastName("Last" + i);
+            user.setEmail("user" + i + "@example.com");
+            user.setPassword("secret");
+            userService.createUser(user);
+        }
+
+        DataFetcher<List<User>> perUser = environment -> {
+            User user = environment.getSource();
+            return GraphqlController.others(user, userService.getUsersByRole(user.getRole()), environment.getArgument("count"));
+        };
+        DataFetcher<CompletableFuture<List<User>>> batched = environment -> {
+            User user = environment.getSource();
+            int count = environment.getArgument("count");
+            DataLoader<String, List<User>> usersByRole = environment.getDataLoader("usersByRole");
+            return usersByRole.load(user.getRole()).thenApply(sameRole -> GraphqlController.others(user, sameRole, count));
+        };
+        GraphQL unbatchedGraphQl = graphQl(userService, perUser);
+        GraphQL batchedGraphQl = graphQl(userService, batched);
+        MappedBatchLoader<String, List<User>> loader = roles -> CompletableFuture.completedFuture(userService.getUsersByRoles(roles));
+
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("round %d%n", round + 1);
+            report("per user", lookups, () -> unbatchedGraphQl.execute(ExecutionInput.newExecutionInput(QUERY).build()));
+            report("batched", lookups, () -> {
+                DataLoaderRegistry registry = new DataLoaderRegistry();
+                registry.register("usersByRole", DataLoaderFactory.newMappedDataLoader(loader));
+                return batchedGraphQl.execute(ExecutionInput.newExecutionInput(QUERY).dataLoaderRegistry(registry).build());
+            });
+        }
+    }
+
+    private static GraphQL graphQl(UserService userService, DataFetcher<?> colleagues) throws Exception {
+        TypeDefinitionRegistry types;
+        try (Reader schema = new InputStreamReader(
+                NestedQueryBenchmark.class.getResourceAsStream("/graphql/schemas.graphqls"), StandardCharsets.UTF_8)) {
+            types = new SchemaParser().parse(schema);
+        }
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", type -> type.dataFetcher("users", environment ->
+                        userService.getUsers(environment.getArgument("offset"), environment.getArgument("count"))))
+                .type("User", type -> type.dataFetcher("colleagues", colleagues))
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(types, wiring);
+        return GraphQL.newGraphQL(schema).build();
+    }
+
+    private static void report(String name, AtomicLong lookups, Query query) {
+        ExecutionResult first = query.execute();
+        if (!first.getErrors().isEmpty()) {
+            throw new IllegalStateException(name + ": " + first.getErrors());
+        }
+        List<?> users = (List<?>) ((Map<?, ?>) first.getData()).get("users");
+        long before = lookups.get();
+        long start = System.nanoTime();
+        int queries = 0;
+        while (System.nanoTime() - start < TARGET_NANOS) {
+            query.execute();
+            queries++;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  %-10s %8.3f ms per query, %6d role lookups per query, %d users%n",
+                name, elapsed / 1e6 / queries, (lookups.get() - before) / queries, users.size());
+    }
+
+    private interface Query {
+        ExecutionResult execute();
+    }
+
+}
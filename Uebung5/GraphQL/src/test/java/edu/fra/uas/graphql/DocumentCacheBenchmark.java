@@ -0,0 +1,90 @@
+package edu.fra.uas.graphql;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import edu.fra.uas.model.User;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+
+/**
+ * Time per request of a small query with variables, parsed and validated on every request,
+ * taken from the {@link DocumentCache} by its text and sent as persisted query hash.
+ * The fetched data is kept small so that the time is dominated by the document. Run with
+ * {@code java -cp ... edu.fra.uas.graphql.DocumentCacheBenchmark}.
+ */
+public class DocumentCacheBenchmark {
+
+    private static final long TARGET_NANOS = 2_000_000_000L;
+    private static final String QUERY = "query Users($count: Int!, $offset: Int!) "
+            + "{ users(count: $count, offset: $offset) { id role firstName lastName email password } }";
+
+    public static void main(String[] args) throws Exception {
+        List<User> users = List.of(new User(1, "USER", "Alice", "Cooper", "alice@example.com", "alice1234"));
+        GraphQL uncached = graphQl(users, null);
+        DocumentCache documentCache = new DocumentCache(1000);
+        GraphQL cached = graphQl(users, documentCache);
+        Map<String, Object> variables = Map.of("count", 1, "offset", 0);
+        Map<String, Object> persistedQuery = Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", DocumentCache.sha256(QUERY)));
+
+        ExecutionInput text = ExecutionInput.newExecutionInput(QUERY).variables(variables).build();
+        ExecutionInput hashOnly = ExecutionInput.newExecutionInput(PersistedQuerySupport.PERSISTED_QUERY_MARKER).variables(variables).extensions(persistedQuery).build();
+        ExecutionInput register = ExecutionInput.newExecutionInput(QUERY).variables(variables).extensions(persistedQuery).build();
+        check(cached.execute(hashOnly), "PersistedQueryNotFound");
+        check(cached.execute(register), null);
+
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("round %d%n", round + 1);
+            report("parsed every time", () -> check(uncached.execute(text), null));
+            report("cached by text", () -> check(cached.execute(text), null));
+            report("persisted query", () -> check(cached.execute(hashOnly), null));
+        }
+        System.out.printf("cache: %d entries, %d hits, %d misses%n", documentCache.size(), documentCache.hits(), documentCache.misses());
+    }
+
+    private static GraphQL graphQl(List<User> users, DocumentCache documentCache) throws Exception {
+        TypeDefinitionRegistry types;
+        try (Reader schema = new InputStreamReader(
+                DocumentCacheBenchmark.class.getResourceAsStream("/graphql/schemas.graphqls"), StandardCharsets.UTF_8)) {
+            types = new SchemaParser().parse(schema);
+        }
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", type -> type.dataFetcher("users", environment -> users))
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(types, wiring);
+        GraphQL.Builder builder = GraphQL.newGraphQL(schema);
+        if (documentCache != null) {
+            builder.preparsedDocumentProvider(documentCache);
+        }
+        return builder.build();
+    }
+
+    private static void check(ExecutionResult result, String expectedError) {
+        String error = result.getErrors().isEmpty() ? null : result.getErrors().get(0).getMessage();
+        if (expectedError == null ? error != null : !expectedError.equals(error)) {
+            throw new IllegalStateException("unexpected result " + result.getErrors());
+        }
+    }
+
+    private static void report(String name, Runnable request) {
+        long start = System.nanoTime();
+        int requests = 0;
+        while (System.nanoTime() - start < TARGET_NANOS) {
+            request.run();
+            requests++;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  %-20s %8.2f us per request%n", name, elapsed / 1e3 / requests);
+    }
+
+}
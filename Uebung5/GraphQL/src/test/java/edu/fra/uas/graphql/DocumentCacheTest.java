@@ -0,0 +1,117 @@
+package edu.fra.uas.graphql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.persisted.PersistedQueryIdInvalid;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.parser.Parser;
+
+class DocumentCacheTest {
+
+    private static final String QUERY = "query UserById($id: ID) { userById(id: $id) { id firstName } }";
+
+    private final AtomicInteger parsed = new AtomicInteger();
+    private final Function<ExecutionInput, PreparsedDocumentEntry> parse = input -> {
+        parsed.incrementAndGet();
+        return new PreparsedDocumentEntry(Parser.parse(input.getQuery()));
+    };
+
+    @Test
+    void documentSentAsTextIsParsedOnce() {
+        DocumentCache cache = new DocumentCache(10);
+
+        PreparsedDocumentEntry first = cache.getDocument(text(QUERY), parse);
+        PreparsedDocumentEntry second = cache.getDocument(text(QUERY), parse);
+
+        assertFalse(first.hasErrors());
+        assertSame(first, second);
+        assertEquals(1, parsed.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void unknownHashIsNotFound() {
+        DocumentCache cache = new DocumentCache(10);
+
+        PreparsedDocumentEntry entry = cache.getDocument(hashOnly(DocumentCache.sha256(QUERY)), parse);
+
+        assertTrue(entry.hasErrors());
+        assertInstanceOf(PersistedQueryNotFound.class, entry.getErrors().get(0));
+        assertEquals(0, parsed.get());
+    }
+
+    @Test
+    void hashOfAnotherDocumentIsInvalid() {
+        DocumentCache cache = new DocumentCache(10);
+
+        PreparsedDocumentEntry entry = cache.getDocument(persisted(QUERY, DocumentCache.sha256("{ allUsers { id } }")), parse);
+
+        assertTrue(entry.hasErrors());
+        assertInstanceOf(PersistedQueryIdInvalid.class, entry.getErrors().get(0));
+        assertEquals(0, parsed.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void registeredHashIsFoundWithoutDocument() {
+        DocumentCache cache = new DocumentCache(10);
+        String hash = DocumentCache.sha256(QUERY);
+
+        PreparsedDocumentEntry registered = cache.getDocument(persisted(QUERY, hash), parse);
+        PreparsedDocumentEntry found = cache.getDocument(hashOnly(hash.toUpperCase()), parse);
+
+        assertSame(registered, found);
+        assertEquals(1, parsed.get());
+    }
+
+    @Test
+    void oldestDocumentIsEvictedFirst() {
+        DocumentCache cache = new DocumentCache(3);
+        for (int i = 0; i < 4; i++) {
+            cache.getDocument(text(query(i)), parse);
+        }
+        assertEquals(3, cache.size());
+        assertEquals(4, parsed.get());
+
+        // the newest are still there, the first one has to be parsed again
+        cache.getDocument(text(query(3)), parse);
+        cache.getDocument(text(query(1)), parse);
+        assertEquals(4, parsed.get());
+        cache.getDocument(text(query(0)), parse);
+        assertEquals(5, parsed.get());
+        assertEquals(3, cache.size());
+    }
+
+    private static String query(int i) {
+        return "{ userById(id: " + i + ") { id } }";
+    }
+
+    private static ExecutionInput text(String query) {
+        return ExecutionInput.newExecutionInput(query).build();
+    }
+
+    private static ExecutionInput hashOnly(String hash) {
+        return persisted(PersistedQuerySupport.PERSISTED_QUERY_MARKER, hash);
+    }
+
+    private static ExecutionInput persisted(String query, String hash) {
+        return ExecutionInput.newExecutionInput(query)
+                .extensions(Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash)))
+                .build();
+    }
+
+}
@@ -0,0 +1,49 @@
+package edu.fra.uas.graphql;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureHttpGraphQlTester;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.graphql.test.tester.HttpGraphQlTester;
+
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "users.store=memory")
+@AutoConfigureHttpGraphQlTester
+class PersistedQueryTest {
+
+    private static final String QUERY = "query FirstNames { allUsers { firstName } }";
+
+    @Autowired
+    private HttpGraphQlTester graphQlTester;
+
+    @Test
+    void hashIsRegisteredWithTheDocumentAndThenSentAlone() {
+        Map<String, Object> persistedQuery = Map.of("version", 1, "sha256Hash", DocumentCache.sha256(QUERY));
+
+        graphQlTester.document(PersistedQuerySupport.PERSISTED_QUERY_MARKER)
+                .extension("persistedQuery", persistedQuery)
+                .execute()
+                .errors()
+                .expect(error -> "PersistedQueryNotFound".equals(error.getMessage()))
+                .verify();
+
+        graphQlTester.document(QUERY)
+                .extension("persistedQuery", persistedQuery)
+                .execute()
+                .path("allUsers[*].firstName")
+                .entityList(String.class)
+                .contains("Alice");
+
+        graphQlTester.document(PersistedQuerySupport.PERSISTED_QUERY_MARKER)
+                .extension("persistedQuery", persistedQuery)
+                .execute()
+                .path("allUsers[*].firstName")
+                .entityList(String.class)
+                .contains("Alice");
+    }
+
+}
@@ -0,0 +1,71 @@
+package edu.fra.uas.service;
+
+import edu.fra.uas.model.User;
+import edu.fra.uas.model.UserConnection;
+import edu.fra.uas.model.UserEdge;
+import edu.fra.uas.repository.UserRepository;
+
+/**
+ * Paging through one million users with {@code usersConnection} compared to the offset
+ * based {@code users} query: the time of a walk over all pages and of a single page at
+ * the start and at the end of the list. Run with
+ * {@code java -cp ... edu.fra.uas.service.UsersConnectionBenchmark}.
+ */
+public class UsersConnectionBenchmark {
+
+    private static final int USERS = 1_000_000;
+    private static final int PAGE = 1_000;
+    private static final long TARGET_NANOS = 2_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        UserRepository repository = new UserRepository();
+        repository.recover();
+        for (long id = 1; id <= USERS; id++) {
+            repository.put(id, new User(id, "USER", "First", "Last", "user" + id + "@example.com", "secret"));
+        }
+        UserService userService = new UserService(repository);
+        String last = UserEdge.cursor(USERS - PAGE);
+
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("round %d%n", round + 1);
+            long start = System.nanoTime();
+            String after = null;
+            int pages = 0;
+            int users = 0;
+            UserConnection connection;
+            do {
+                connection = userService.getUsersConnection(PAGE, after);
+                after = connection.pageInfo().endCursor();
+                users += connection.edges().size();
+                pages++;
+            } while (connection.pageInfo().hasNextPage());
+            long elapsed = System.nanoTime() - start;
+            if (users != USERS) {
+                throw new IllegalStateException(users + " users paged instead of " + USERS);
+            }
+            System.out.printf("  %-28s %10.3f ms for %d pages%n", "connection, all pages", elapsed / 1e6, pages);
+            report("connection, first page", () -> userService.getUsersConnection(PAGE, null));
+            report("connection, last page", () -> userService.getUsersConnection(PAGE, last));
+            report("offset, first page", () -> userService.getUsers(0, PAGE));
+            report("offset, last page", () -> userService.getUsers(USERS - PAGE, PAGE));
+            System.out.printf("  %-28s %10.0f ms estimated for all pages%n", "offset, all pages",
+                    time(() -> userService.getUsers(USERS / 2, PAGE)) / 1e6 * (USERS / PAGE));
+        }
+    }
+
+    private static void report(String name, Runnable page) {
+        System.out.printf("  %-28s %10.3f ms per page%n", name, time(page) / 1e6);
+    }
+
+    // average nanoseconds per run
+    private static double time(Runnable page) {
+        long start = System.nanoTime();
+        int runs = 0;
+        while (System.nanoTime() - start < TARGET_NANOS) {
+            page.run();
+            runs++;
+        }
+        return (double) (System.nanoTime() - start) / runs;
+    }
+
+}
@@ -19,6 +19,10 @@ public class InitData {
     @PostConstruct
     public void init() {
         log.debug("### Initialize Data ###");
+        if (userService.getAllUsers().iterator().hasNext()) {
+            log.debug("### Users restored, nothing to initialize ###");
+            return;
+        }
 
         log.debug("create user admin");
         User user = new User();
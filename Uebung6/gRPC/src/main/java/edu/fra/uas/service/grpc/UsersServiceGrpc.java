@@ -10,8 +10,10 @@ import edu.fra.uas.grpc.UsersServiceOuterClass.UsersRequest;
 import edu.fra.uas.grpc.UsersServiceOuterClass.UsersResponse;
 
 import edu.fra.uas.model.User;
+import edu.fra.uas.repository.DuplicateEmailException;
 import edu.fra.uas.service.UserService;
 
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
 import net.devh.boot.grpc.server.service.GrpcService;
@@ -45,14 +47,26 @@ public class UsersServiceGrpc extends UsersServiceImplBase {
 
     @Override
     public void createUser(UserProto request, StreamObserver<UserProto> responseObserver) {
-        User user = userService.createUser(GrpcUsersMapper.mapProtoToUser(request));
+        User user;
+        try {
+            user = userService.createUser(GrpcUsersMapper.mapProtoToUser(request));
+        } catch (DuplicateEmailException e) {
+            responseObserver.onError(Status.ALREADY_EXISTS.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
         responseObserver.onNext(GrpcUsersMapper.mapUserToProto(user));
         responseObserver.onCompleted();
     }
 
     @Override
     public void updateUser(UserProto request, StreamObserver<UserProto> responseObserver) {
-        User user = userService.updateUser(GrpcUsersMapper.mapProtoToUser(request));
+        User user;
+        try {
+            user = userService.updateUser(GrpcUsersMapper.mapProtoToUser(request));
+        } catch (DuplicateEmailException e) {
+            responseObserver.onError(Status.ALREADY_EXISTS.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
         responseObserver.onNext(GrpcUsersMapper.mapUserToProto(user));
         responseObserver.onCompleted();
     }
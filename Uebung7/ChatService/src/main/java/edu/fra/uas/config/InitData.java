@@ -20,6 +20,10 @@ public class InitData {
 
     @PostConstruct
     public void init() {
+        if (roomService.getAll().iterator().hasNext()) {
+            log.debug("### Data recovered from journal, skip initialization ###");
+            return;
+        }
         log.debug("### Initialize Data ###");
 
         log.debug("create room 1");
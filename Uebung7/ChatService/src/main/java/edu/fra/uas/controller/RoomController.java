@@ -4,10 +4,12 @@ import java.net.URI;
 import java.util.List;
 
 import edu.fra.uas.model.Message;
+import edu.fra.uas.model.RetentionPolicy;
 import edu.fra.uas.model.ChatUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
@@ -19,11 +21,15 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import edu.fra.uas.model.Room;
 import edu.fra.uas.model.RoomDTO;
+import edu.fra.uas.model.SearchHit;
 import edu.fra.uas.service.RoomService;
 
 @RestController
@@ -34,6 +40,9 @@ public class RoomController {
     @Autowired
     private RoomService roomService;
 
+    @Value("${chat.messages.max-batch:1000}")
+    private int maxBatchSize;
+
     @GetMapping(value = "/rooms",
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
@@ -49,8 +58,17 @@ public class RoomController {
     @GetMapping(value = "/rooms/{id}", 
                 produces = MediaType.APPLICATION_JSON_VALUE)               
     @ResponseBody
-    public ResponseEntity<?> getById(@PathVariable("id") Long roomId) {
+    public ResponseEntity<?> getById(@PathVariable("id") Long roomId,
+                                     @RequestParam(value = "summary", defaultValue = "false") boolean summary) {
         log.info("Get room by id: ", roomId);
+        if (summary) {
+            // summary mode leaves out members and message history
+            RoomDTO room = roomService.getSummaryById(roomId);
+            if (room == null) {
+                return new ResponseEntity<> ("Room was not found for id {" + roomId + "}", HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<RoomDTO>(room, HttpStatus.OK);
+        }
         Room room = roomService.getById(roomId);
         if (room == null) {
             return new ResponseEntity<> ("Room was not found for id {" + roomId + "}", HttpStatus.NOT_FOUND);
@@ -101,6 +119,27 @@ public class RoomController {
         return new ResponseEntity<Room>(room, HttpStatus.OK);
     }
 
+    @PutMapping(value = "/rooms/{id}/retention",
+                consumes = MediaType.APPLICATION_JSON_VALUE,
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> setRetention(@PathVariable("id") Long roomId, @RequestBody RetentionPolicy retention) {
+        log.info("Set retention of room: ", roomId);
+        Room room = roomService.getById(roomId);
+        if (room == null) {
+            return new ResponseEntity<> ("Room was not found for id {" + roomId + "}", HttpStatus.NOT_FOUND);
+        }
+        if (retention.getMaxMessages() < 0 || retention.getMaxAgeSeconds() < 0 || retention.getMaxBytes() < 0) {
+            String detail = "Retention limits must not be negative";
+            ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.UNPROCESSABLE_ENTITY, detail);
+            pd.setInstance(URI.create("/rooms/" + roomId + "/retention"));
+            pd.setTitle("Retention policy error");
+            return ResponseEntity.unprocessableEntity().body(pd);
+        }
+        room = roomService.setRetention(roomId, retention);
+        return new ResponseEntity<RetentionPolicy>(room.getRetention(), HttpStatus.OK);
+    }
+
     @PatchMapping(value = "/rooms/{id}/users/{userId}", 
                   produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
@@ -132,11 +171,45 @@ public class RoomController {
         return new ResponseEntity<Message>(message, HttpStatus.OK);
     }
 
+    @PostMapping(value = "/rooms/{id}/users/{userId}/messages/batch",
+                 consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> sendMessages(@PathVariable("id") Long roomId, @PathVariable("userId") Long userId, @RequestBody List<String> texts) {
+        log.info("Send message batch to room: ", roomId);
+        if (texts == null || texts.isEmpty() || texts.size() > maxBatchSize) {
+            String detail = "A batch must contain between 1 and " + maxBatchSize + " messages";
+            ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.UNPROCESSABLE_ENTITY, detail);
+            pd.setInstance(URI.create("/rooms/" + roomId + "/users/" + userId + "/messages/batch"));
+            pd.setTitle("Message batch error");
+            return ResponseEntity.unprocessableEntity().body(pd);
+        }
+        Room room = roomService.getById(roomId);
+        if (room == null) {
+            return new ResponseEntity<> ("Room was not found for id {" + roomId + "}", HttpStatus.NOT_FOUND);
+        }
+        ChatUser user = roomService.getUserById(roomId, userId);
+        if (user == null) {
+            return new ResponseEntity<> ("User was not found for id {" + userId + "}", HttpStatus.NOT_FOUND);
+        }
+        List<Message> messages = roomService.sendMessages(room, userId, texts);
+        return new ResponseEntity<List<Message>>(messages, HttpStatus.OK);
+    }
+
     @GetMapping(value = "/rooms/{id}/users/{userId}/messages", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> getMessages(@PathVariable("id") Long roomId, @PathVariable("userId") Long userId) {
+    public ResponseEntity<?> getMessages(@PathVariable("id") Long roomId, @PathVariable("userId") Long userId,
+                                         @RequestParam(value = "since", required = false) Long since,
+                                         @RequestParam(value = "limit", required = false) Integer limit) {
         log.info("Get messages from room: ", roomId);
+        if ((since != null && since < 0) || (limit != null && limit <= 0)) {
+            String detail = "Parameter since must not be negative and limit must be greater than 0";
+            ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, detail);
+            pd.setInstance(URI.create("/rooms/" + roomId + "/users/" + userId + "/messages"));
+            pd.setTitle("Message query error");
+            return ResponseEntity.badRequest().body(pd);
+        }
         Room room = roomService.getById(roomId);
         if (room == null) {
             return new ResponseEntity<> ("Room was not found for id {" + roomId + "}", HttpStatus.NOT_FOUND);
@@ -145,8 +218,67 @@ public class RoomController {
         if (user == null) {
             return new ResponseEntity<> ("User was not found for id {" + userId + "}", HttpStatus.NOT_FOUND);
         }
-        List<Message> messages = roomService.getMessages(room);
+        List<Message> messages;
+        if (since == null && limit == null) {
+            messages = roomService.getMessages(room);
+        } else {
+            messages = roomService.getMessages(room, since == null ? 0 : since, limit == null ? Integer.MAX_VALUE : limit);
+        }
         return new ResponseEntity<List<Message>>(messages, HttpStatus.OK);
     }
 
+    @GetMapping(value = "/rooms/{id}/users/{userId}/messages/stream",
+                produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamMessages(@PathVariable("id") Long roomId, @PathVariable("userId") Long userId,
+                                                     @RequestParam(value = "since", required = false) Long since,
+                                                     @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        log.info("Stream messages from room: ", roomId);
+        Room room = roomService.getById(roomId);
+        if (room == null || roomService.getUserById(roomId, userId) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // a reconnecting EventSource sends the id of the last event it has seen
+        long cursor = lastEventId != null ? lastEventId : (since != null ? since : room.getMessages().lastId());
+        return ResponseEntity.ok(roomService.subscribe(room, cursor));
+    }
+
+    @GetMapping(value = "/rooms/{id}/messages/search",
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> search(@PathVariable("id") Long roomId,
+                                    @RequestParam(value = "q", required = false) String text,
+                                    @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        log.info("Search messages in room: ", roomId);
+        if (text == null || text.isBlank() || limit <= 0) {
+            return searchError("/rooms/" + roomId + "/messages/search");
+        }
+        Room room = roomService.getById(roomId);
+        if (room == null) {
+            return new ResponseEntity<> ("Room was not found for id {" + roomId + "}", HttpStatus.NOT_FOUND);
+        }
+        List<Message> messages = roomService.search(room, text, limit);
+        return new ResponseEntity<List<Message>>(messages, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/messages/search",
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> searchAll(@RequestParam(value = "q", required = false) String text,
+                                       @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        log.info("Search messages in all rooms: ", text);
+        if (text == null || text.isBlank() || limit <= 0) {
+            return searchError("/messages/search");
+        }
+        List<SearchHit> hits = roomService.searchAll(text, limit);
+        return new ResponseEntity<List<SearchHit>>(hits, HttpStatus.OK);
+    }
+
+    private ResponseEntity<ProblemDetail> searchError(String instance) {
+        String detail = "Parameter q must not be empty and limit must be greater than 0";
+        ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, detail);
+        pd.setInstance(URI.create(instance));
+        pd.setTitle("Message search error");
+        return ResponseEntity.badRequest().body(pd);
+    }
+
 }
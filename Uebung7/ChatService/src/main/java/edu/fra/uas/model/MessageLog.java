@@ -0,0 +1,393 @@
+package edu.fra.uas.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Append-only message log of a room.
+ * <p>
+ * Writers claim a slot with an atomic sequence and write the message into a
+ * chunked array, so appends never take a lock. Readers only see the prefix of
+ * slots that is completely written ({@code published}) and therefore never
+ * block and never see a gap in the message ids.
+ * <p>
+ * The oldest messages can be evicted by a single compacting thread; readers
+ * then simply start at the new head. The chunks are kept in a ring that only
+ * grows when the retained messages no longer fit, so an empty log is small and
+ * a log with retention never runs out of slots.
+ */
+public class MessageLog implements Iterable<Message>, java.io.Serializable {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageLog.class);
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_CHUNKS = 4;
+    private static final int MAX_CHUNKS = 1 << 30;
+
+    // fills the slot of a message that was lost in a crash, readers skip it
+    private static final Message HOLE = new Message();
+
+    // next free slot, slot n holds the message with id n + 1
+    private final AtomicLong sequence = new AtomicLong();
+    // all slots below this index are written and visible to readers
+    private final AtomicLong published = new AtomicLong();
+    // slots below this index are evicted
+    private final AtomicLong head = new AtomicLong();
+    // estimated heap size of the retained messages
+    private final AtomicLong bytes = new AtomicLong();
+    // chunk n is at index n modulo the length; only replaced, set and cleared under the lock of the log
+    private volatile AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(MIN_CHUNKS);
+
+    public MessageLog() {
+        log.debug("MessageLog created");
+    }
+
+    /**
+     * Creates an empty log whose first message gets the given id, used when
+     * the older messages were archived before a restart.
+     */
+    public MessageLog(long firstId) {
+        log.debug("MessageLog created with firstId: " + firstId);
+        sequence.set(firstId - 1);
+        published.set(firstId - 1);
+        head.set(firstId - 1);
+    }
+
+    /**
+     * Appends the message and assigns the next id of this log to it.
+     */
+    public Message append(Message message) {
+        long slot = sequence.getAndIncrement();
+        message.setId(slot + 1);
+        bytes.addAndGet(sizeOf(message));
+        chunk(slot).set((int) (slot & CHUNK_MASK), message);
+        publish();
+        return message;
+    }
+
+    /**
+     * Appends the messages with one allocation of consecutive ids. Readers see
+     * either none or all of them.
+     */
+    public List<Message> appendAll(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        long first = sequence.getAndAdd(messages.size());
+        long size = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            messages.get(i).setId(first + i + 1);
+            size += sizeOf(messages.get(i));
+        }
+        bytes.addAndGet(size);
+        // the watermark stops at the first empty slot, so filling the first slot
+        // last publishes the whole range at once
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            long slot = first + i;
+            chunk(slot).set((int) (slot & CHUNK_MASK), messages.get(i));
+        }
+        publish();
+        return messages;
+    }
+
+    /**
+     * Returns the message with the given id or {@code null} if it is not (yet) visible.
+     */
+    public Message get(long id) {
+        long slot = id - 1;
+        if (slot < head.get() || slot >= published.get()) {
+            return null;
+        }
+        Message message = slotAt(slot);
+        return message == HOLE ? null : message;
+    }
+
+    public int size() {
+        return (int) (published.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Id of the oldest retained message; greater than {@link #lastId()} if the log is empty.
+     */
+    public long firstId() {
+        return head.get() + 1;
+    }
+
+    /**
+     * Id of the newest visible message, {@code 0} if the log is empty.
+     */
+    public long lastId() {
+        return published.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public List<Message> values() {
+        return since(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most {@code limit} messages with an id greater than {@code afterId}.
+     * Ids are dense, so the start is found in constant time.
+     */
+    public List<Message> since(long afterId, int limit) {
+        long end = published.get();
+        long from = Math.max(afterId, head.get());
+        if (from >= end || limit <= 0) {
+            return new ArrayList<>();
+        }
+        end = Math.min(end, from + limit);
+        List<Message> messages = new ArrayList<>((int) (end - from));
+        for (long slot = from; slot < end; slot++) {
+            Message message = slotAt(slot);
+            // null if the slot was evicted while reading
+            if (message != null && message != HOLE) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Removes up to {@code count} of the oldest messages and returns them in id order.
+     * Must only be called by one thread at a time.
+     */
+    public List<Message> evict(int count) {
+        long from = head.get();
+        long end = Math.min(published.get(), from + count);
+        List<Message> evicted = new ArrayList<>((int) Math.max(end - from, 0));
+        if (end <= from) {
+            return evicted;
+        }
+        for (long slot = from; slot < end; slot++) {
+            Message message = slotAt(slot);
+            if (message != HOLE) {
+                evicted.add(message);
+            }
+        }
+        // move the head first, so readers stop looking at the slots before they are cleared
+        head.set(end);
+        for (long slot = from; slot < end; slot++) {
+            Chunk chunk = find(chunks, slot >>> CHUNK_BITS);
+            if (chunk != null) {
+                chunk.set((int) (slot & CHUNK_MASK), null);
+            }
+        }
+        // release every chunk that lies completely below the head
+        for (long number = from >>> CHUNK_BITS; number < end >>> CHUNK_BITS; number++) {
+            release(number);
+        }
+        long evictedBytes = 0;
+        for (Message message : evicted) {
+            evictedBytes += sizeOf(message);
+        }
+        bytes.addAndGet(-evictedBytes);
+        return evicted;
+    }
+
+    /**
+     * Returns every message written so far, including those whose slot is not
+     * yet visible to readers because an older append is still in flight.
+     */
+    public List<Message> snapshot() {
+        long end = sequence.get();
+        List<Message> messages = new ArrayList<>();
+        for (long slot = head.get(); slot < end; slot++) {
+            Message message = slotAt(slot);
+            if (message != null && message != HOLE) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Puts a message with an already assigned id back into its slot while recovering.
+     * Must not run concurrently with any other write; {@link #seal()} makes the
+     * restored messages visible.
+     */
+    public void restore(Message message) {
+        long slot = message.getId() - 1;
+        if (slot < head.get() || slotAt(slot) != null) {
+            return;
+        }
+        chunk(slot).set((int) (slot & CHUNK_MASK), message);
+        bytes.addAndGet(sizeOf(message));
+        if (slot >= sequence.get()) {
+            sequence.set(slot + 1);
+        }
+    }
+
+    /**
+     * Marks the slots of messages that never made it into the journal as holes
+     * and publishes everything restored.
+     */
+    public void seal() {
+        long end = sequence.get();
+        for (long slot = published.get(); slot < end; slot++) {
+            Chunk chunk = chunk(slot);
+            chunk.compareAndSet((int) (slot & CHUNK_MASK), null, HOLE);
+        }
+        publish();
+    }
+
+    /**
+     * Rough heap size of a message: object headers and fields plus the UTF-16 content.
+     */
+    public static long sizeOf(Message message) {
+        String content = message.getContent();
+        return 96 + (content == null ? 0 : 2L * content.length());
+    }
+
+    @JsonValue
+    public Map<Long, Message> toMap() {
+        Map<Long, Message> map = new LinkedHashMap<>();
+        for (Message message : this) {
+            map.put(message.getId(), message);
+        }
+        return map;
+    }
+
+    @Override
+    public Iterator<Message> iterator() {
+        final long limit = published.get();
+        return new Iterator<Message>() {
+            private long slot = head.get();
+            private Message next = advance();
+
+            private Message advance() {
+                while (slot < limit) {
+                    Message message = slotAt(slot++);
+                    if (message != null && message != HOLE) {
+                        return message;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Message next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Message message = next;
+                next = advance();
+                return message;
+            }
+        };
+    }
+
+    // moves the published mark over every slot that is already written;
+    // if a slot is still in flight its writer will move the mark on later
+    private void publish() {
+        long mark = published.get();
+        while (mark < sequence.get() && slotAt(mark) != null) {
+            published.compareAndSet(mark, mark + 1);
+            mark = published.get();
+        }
+    }
+
+    private Chunk chunk(long slot) {
+        Chunk chunk = find(chunks, slot >>> CHUNK_BITS);
+        return chunk != null ? chunk : create(slot >>> CHUNK_BITS);
+    }
+
+    private Message slotAt(long slot) {
+        Chunk chunk = find(chunks, slot >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get((int) (slot & CHUNK_MASK));
+    }
+
+    // null if the chunk is not there (yet) or was released and its index reused
+    private static Chunk find(AtomicReferenceArray<Chunk> ring, long number) {
+        Chunk chunk = ring.get((int) number & (ring.length() - 1));
+        return chunk != null && chunk.number == number ? chunk : null;
+    }
+
+    // a new chunk is only needed every CHUNK_SIZE messages, so this may take the lock
+    private synchronized Chunk create(long number) {
+        AtomicReferenceArray<Chunk> ring = chunks;
+        Chunk chunk = find(ring, number);
+        if (chunk != null) {
+            return chunk;
+        }
+        // every retained chunk is at least the first one, they must all get their own index
+        long first = head.get() >>> CHUNK_BITS;
+        if (number - first >= ring.length()) {
+            ring = grow(ring, first, number);
+        }
+        chunk = new Chunk(number);
+        ring.set((int) number & (ring.length() - 1), chunk);
+        return chunk;
+    }
+
+    // caller holds the lock; readers and writers still holding the old ring find the same chunks in it
+    private AtomicReferenceArray<Chunk> grow(AtomicReferenceArray<Chunk> ring, long first, long number) {
+        int length = ring.length();
+        while (number - first >= length) {
+            if (length == MAX_CHUNKS) {
+                throw new IllegalStateException("Message log is full");
+            }
+            length <<= 1;
+        }
+        AtomicReferenceArray<Chunk> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < ring.length(); i++) {
+            Chunk chunk = ring.get(i);
+            if (chunk != null && chunk.number >= first) {
+                grown.set((int) chunk.number & (length - 1), chunk);
+            }
+        }
+        chunks = grown;
+        return grown;
+    }
+
+    private synchronized void release(long number) {
+        AtomicReferenceArray<Chunk> ring = chunks;
+        int index = (int) number & (ring.length() - 1);
+        Chunk chunk = ring.get(index);
+        if (chunk != null && chunk.number == number) {
+            ring.set(index, null);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MessageLog [firstId=" + firstId() + ", lastId=" + lastId() + ", size=" + size() + "]";
+    }
+
+    private static final class Chunk extends AtomicReferenceArray<Message> {
+
+        // slots number * CHUNK_SIZE up to (number + 1) * CHUNK_SIZE - 1
+        private final long number;
+
+        Chunk(long number) {
+            super(CHUNK_SIZE);
+            this.number = number;
+        }
+
+    }
+
+}
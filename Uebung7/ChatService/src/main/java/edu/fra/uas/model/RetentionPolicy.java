@@ -0,0 +1,51 @@
+package edu.fra.uas.model;
+
+/**
+ * Limits how much message history a room keeps in memory.
+ * A value of {@code 0} disables the corresponding limit.
+ */
+public class RetentionPolicy implements java.io.Serializable {
+
+    private int maxMessages;
+    private long maxAgeSeconds;
+    private long maxBytes;
+
+    public RetentionPolicy() {
+    }
+
+    public RetentionPolicy(int maxMessages, long maxAgeSeconds, long maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    public long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public void setMaxAgeSeconds(long maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy [maxMessages=" + maxMessages + ", maxAgeSeconds=" + maxAgeSeconds + ", maxBytes=" + maxBytes + "]";
+    }
+
+}
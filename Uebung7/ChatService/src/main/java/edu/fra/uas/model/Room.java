@@ -1,7 +1,7 @@
 package edu.fra.uas.model;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,16 +12,17 @@ public class Room implements java.io.Serializable {
 
     private Long id;
     private String name;
-    private Map<Long, Message> messages;
+    private MessageLog messages;
     private Map<Long, ChatUser> users;
+    private RetentionPolicy retention;
 
     public Room() {
         log.debug("Room created without values");
-        messages = new HashMap<>();
-        users = new HashMap<>();
+        messages = new MessageLog();
+        users = new ConcurrentHashMap<>();
     }
 
-    public Room(Long id, String name, Map<Long, Message> messages, Map<Long, ChatUser> users) {
+    public Room(Long id, String name, MessageLog messages, Map<Long, ChatUser> users) {
         log.debug("Room created with values + name: " + name);
         this.id = id;
         this.name = name;
@@ -45,11 +46,11 @@ public class Room implements java.io.Serializable {
         this.name = name;
     }
 
-    public Map<Long, Message> getMessages() {
+    public MessageLog getMessages() {
         return messages;
     }
 
-    public void setMessages(Map<Long, Message> messages) {
+    public void setMessages(MessageLog messages) {
         this.messages = messages;
     }
 
@@ -61,12 +62,20 @@ public class Room implements java.io.Serializable {
         this.users = users;
     }
 
+    public RetentionPolicy getRetention() {
+        return retention;
+    }
+
+    public void setRetention(RetentionPolicy retention) {
+        this.retention = retention;
+    }
+
     @Override
     public String toString() {
         return "Room{" +
                 "id=" + id +
                 ", name='" + name + '\'' +
-                ", messages=" + messages +
+                ", messages=" + messages.size() +
                 ", users=" + users +
                 '}';
     }
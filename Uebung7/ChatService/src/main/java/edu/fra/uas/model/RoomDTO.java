@@ -1,9 +1,25 @@
 package edu.fra.uas.model;
 
+import java.time.LocalDateTime;
+
 public class RoomDTO {
     
     private long id;
     private String name;
+    private int memberCount;
+    private long lastMessageId;
+    private LocalDateTime lastMessageTime;
+
+    public RoomDTO() {
+    }
+
+    public RoomDTO(long id, String name, int memberCount, long lastMessageId, LocalDateTime lastMessageTime) {
+        this.id = id;
+        this.name = name;
+        this.memberCount = memberCount;
+        this.lastMessageId = lastMessageId;
+        this.lastMessageTime = lastMessageTime;
+    }
 
     public void setId(long id) {
         this.id = id;
@@ -21,4 +37,28 @@ public class RoomDTO {
         return name;
     }
 
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    public void setMemberCount(int memberCount) {
+        this.memberCount = memberCount;
+    }
+
+    public long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(long lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    public LocalDateTime getLastMessageTime() {
+        return lastMessageTime;
+    }
+
+    public void setLastMessageTime(LocalDateTime lastMessageTime) {
+        this.lastMessageTime = lastMessageTime;
+    }
+
 }
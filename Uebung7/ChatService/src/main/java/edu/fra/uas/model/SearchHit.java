@@ -0,0 +1,32 @@
+package edu.fra.uas.model;
+
+public class SearchHit {
+
+    private long roomId;
+    private Message message;
+
+    public SearchHit() {
+    }
+
+    public SearchHit(long roomId, Message message) {
+        this.roomId = roomId;
+        this.message = message;
+    }
+
+    public long getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(long roomId) {
+        this.roomId = roomId;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+}
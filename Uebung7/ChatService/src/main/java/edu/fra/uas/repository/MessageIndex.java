@@ -0,0 +1,539 @@
+package edu.fra.uas.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+
+/**
+ * Incremental inverted index over the messages of all rooms.
+ * <p>
+ * Each room has its own sorted term dictionary. The postings of a term are the
+ * ids of the messages containing it, delta-encoded as variable-length longs in
+ * a byte array, in blocks that can be decoded on their own. Messages are indexed
+ * strictly in id order: whoever sends a message catches the index of the room up
+ * to the last visible message.
+ * <p>
+ * A search walks the postings of its terms from the newest block backwards and
+ * stops after the requested number of hits. Only the newest
+ * {@code chat.search.max-messages} messages of a room are searchable, older
+ * postings are dropped as new messages come in, archived or not.
+ */
+@Repository
+public class MessageIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageIndex.class);
+
+    private static final int MAX_TERM_LENGTH = 64;
+
+    @Value("${chat.search.max-messages:100000}")
+    private int maxMessages;
+
+    private final Map<Long, RoomIndex> rooms = new ConcurrentHashMap<>();
+
+    public MessageIndex() {
+    }
+
+    MessageIndex(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Indexes all messages of the room that are not indexed yet.
+     */
+    public void update(Room room) {
+        RoomIndex index = rooms.computeIfAbsent(room.getId(), id -> new RoomIndex(maxMessages));
+        index.catchUp(room);
+    }
+
+    /**
+     * Indexes the messages evicted from the log of the room, which only the archive still has.
+     * {@code archived} returns the archived messages after an id, page by page, and an empty
+     * page at the end. Called on recovery, before {@link #update} indexes the log.
+     */
+    public void recover(Room room, LongFunction<List<Message>> archived) {
+        RoomIndex index = rooms.computeIfAbsent(room.getId(), id -> new RoomIndex(maxMessages));
+        if (maxMessages > 0) {
+            // older messages would be dropped from the index right away
+            index.indexedUpTo = Math.max(index.indexedUpTo, room.getMessages().lastId() - maxMessages);
+        }
+        List<Message> page;
+        while (!(page = archived.apply(index.indexedUpTo)).isEmpty()) {
+            index.add(page);
+        }
+        log.debug("recovered index of room {} up to message {}", room.getId(), index.indexedUpTo);
+    }
+
+    public void remove(Long roomId) {
+        log.debug("remove index of room {}", roomId);
+        rooms.remove(roomId);
+    }
+
+    /**
+     * Returns the ids of the newest messages of the room matching the query, newest first.
+     * Phrases are verified against the message text, {@code loader} resolves an id to its message.
+     */
+    public List<Long> search(Long roomId, Query query, int limit, LongFunction<Message> loader) {
+        RoomIndex index = rooms.get(roomId);
+        if (index == null || query.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return index.search(query, limit, loader);
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // ##############################################################################################################
+    // Query
+    // ##############################################################################################################
+
+    /**
+     * Conjunction of terms ({@code chat}), prefixes ({@code cha*}) and phrases ({@code "hello world"}).
+     */
+    public static class Query {
+
+        private final List<String> terms = new ArrayList<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private final List<List<String>> phrases = new ArrayList<>();
+
+        public static Query parse(String text) {
+            Query query = new Query();
+            if (text == null) {
+                return query;
+            }
+            String[] parts = text.split("\"", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i % 2 == 1) {
+                    List<String> phrase = tokenize(parts[i]);
+                    if (phrase.size() == 1) {
+                        query.terms.add(phrase.get(0));
+                    } else if (!phrase.isEmpty()) {
+                        query.phrases.add(phrase);
+                    }
+                    continue;
+                }
+                for (String word : parts[i].trim().split("\\s+")) {
+                    boolean prefix = word.endsWith("*");
+                    for (String token : tokenize(word)) {
+                        if (prefix) {
+                            query.prefixes.add(token);
+                            prefix = false;
+                        } else {
+                            query.terms.add(token);
+                        }
+                    }
+                }
+            }
+            return query;
+        }
+
+        public boolean isEmpty() {
+            return terms.isEmpty() && prefixes.isEmpty() && phrases.isEmpty();
+        }
+
+        boolean matches(String text) {
+            if (phrases.isEmpty()) {
+                return true;
+            }
+            String tokens = " " + String.join(" ", tokenize(text)) + " ";
+            for (List<String> phrase : phrases) {
+                if (!tokens.contains(" " + String.join(" ", phrase) + " ")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    // ##############################################################################################################
+    // Index of one room
+    // ##############################################################################################################
+
+    private static class RoomIndex {
+
+        private final int maxMessages;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final TreeMap<String, Postings> terms = new TreeMap<>();
+        private final AtomicBoolean indexing = new AtomicBoolean();
+        private volatile long indexedUpTo;
+        // postings below this id are dropped
+        private long floor;
+
+        RoomIndex(int maxMessages) {
+            this.maxMessages = maxMessages;
+        }
+
+        void catchUp(Room room) {
+            // the thread holding the flag indexes for everybody; check again after
+            // releasing it, a message may have become visible in between
+            while (room.getMessages().lastId() > indexedUpTo && indexing.compareAndSet(false, true)) {
+                try {
+                    long upTo = room.getMessages().lastId();
+                    add(room.getMessages().since(indexedUpTo, (int) Math.min(upTo - indexedUpTo, Integer.MAX_VALUE)));
+                    indexedUpTo = upTo;
+                } finally {
+                    indexing.set(false);
+                }
+            }
+        }
+
+        // messages in id order, those indexed already are skipped by the postings
+        private void add(List<Message> messages) {
+            lock.writeLock().lock();
+            try {
+                for (Message message : messages) {
+                    for (String token : tokenize(message.getContent())) {
+                        terms.computeIfAbsent(token, t -> new Postings()).add(message.getId());
+                    }
+                }
+                if (!messages.isEmpty()) {
+                    trim(messages.get(messages.size() - 1).getId());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!messages.isEmpty()) {
+                indexedUpTo = Math.max(indexedUpTo, messages.get(messages.size() - 1).getId());
+            }
+        }
+
+        // caller holds the write lock; every term is rewritten, so that only happens
+        // after another quarter of maxMessages has been indexed
+        private void trim(long lastId) {
+            long wanted = lastId - maxMessages + 1;
+            if (maxMessages <= 0 || wanted - floor < Math.max(maxMessages / 4, 1)) {
+                return;
+            }
+            Iterator<Map.Entry<String, Postings>> entries = terms.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Postings> entry = entries.next();
+                Postings trimmed = entry.getValue().from(wanted);
+                if (trimmed == null) {
+                    entries.remove();
+                } else {
+                    entry.setValue(trimmed);
+                }
+            }
+            floor = wanted;
+        }
+
+        List<Long> search(Query query, int limit, LongFunction<Message> loader) {
+            List<Long> hits = new ArrayList<>();
+            long before = Long.MAX_VALUE;
+            while (hits.size() < limit) {
+                int wanted = limit - hits.size();
+                long[] candidates;
+                // phrases are verified without the lock, the message may have to be read from the archive
+                lock.readLock().lock();
+                try {
+                    candidates = candidates(query, before, wanted);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                for (long id : candidates) {
+                    if (query.phrases.isEmpty()) {
+                        hits.add(id);
+                        continue;
+                    }
+                    Message message = loader.apply(id);
+                    if (message != null && query.matches(message.getContent())) {
+                        hits.add(id);
+                    }
+                }
+                if (candidates.length < wanted) {
+                    break;
+                }
+                before = candidates[candidates.length - 1] - 1;
+            }
+            return hits;
+        }
+
+        // at most limit ids not above before that are in every clause, newest first
+        private long[] candidates(Query query, long before, int limit) {
+            List<Postings> single = new ArrayList<>();
+            for (String term : query.terms) {
+                single.add(terms.get(term));
+            }
+            for (List<String> phrase : query.phrases) {
+                for (String term : phrase) {
+                    single.add(terms.get(term));
+                }
+            }
+            if (single.contains(null)) {
+                return new long[0];
+            }
+            // the shortest list drives, the others are only probed
+            single.sort((a, b) -> Integer.compare(a.count, b.count));
+            List<Cursor> clauses = new ArrayList<>();
+            for (Postings postings : single) {
+                clauses.add(new PostingsCursor(postings));
+            }
+            for (String prefix : query.prefixes) {
+                List<Cursor> union = new ArrayList<>();
+                for (Postings postings : terms.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                    union.add(new PostingsCursor(postings));
+                }
+                clauses.add(new UnionCursor(union));
+            }
+            long[] ids = new long[Math.min(limit, 64)];
+            int count = 0;
+            long target = before;
+            search:
+            while (count < limit) {
+                long id = clauses.get(0).advance(target);
+                if (id < 0) {
+                    break;
+                }
+                for (int c = 1; c < clauses.size(); c++) {
+                    long other = clauses.get(c).advance(id);
+                    if (other < 0) {
+                        break search;
+                    }
+                    if (other < id) {
+                        // not in this clause, continue with the next id that is
+                        target = other;
+                        continue search;
+                    }
+                }
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, Math.min(ids.length * 2, limit));
+                }
+                ids[count++] = id;
+                target = id - 1;
+            }
+            return Arrays.copyOf(ids, count);
+        }
+
+    }
+
+    /**
+     * Walks ids from the newest to the oldest.
+     */
+    private interface Cursor {
+
+        /**
+         * Returns the greatest id not above {@code target} or {@code -1} if there is none;
+         * the targets of successive calls must not increase.
+         */
+        long advance(long target);
+
+    }
+
+    private static final class PostingsCursor implements Cursor {
+
+        private final Postings postings;
+        // the decoded block and the position of the current id in it
+        private int block;
+        private long[] ids = new long[0];
+        private int position = -1;
+
+        PostingsCursor(Postings postings) {
+            this.postings = postings;
+            this.block = postings.blocks();
+        }
+
+        @Override
+        public long advance(long target) {
+            while (true) {
+                while (position >= 0 && ids[position] > target) {
+                    position--;
+                }
+                if (position >= 0) {
+                    return ids[position];
+                }
+                // skips all blocks that start above the target
+                block = Math.min(block - 1, postings.blockOf(target));
+                if (block < 0) {
+                    block = 0;
+                    return -1;
+                }
+                ids = postings.block(block);
+                position = ids.length - 1;
+            }
+        }
+
+    }
+
+    private static final class UnionCursor implements Cursor {
+
+        private static final class Head {
+
+            private final Cursor cursor;
+            private long current;
+
+            Head(Cursor cursor) {
+                this.cursor = cursor;
+                this.current = cursor.advance(Long.MAX_VALUE);
+            }
+
+        }
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> Long.compare(b.current, a.current));
+
+        UnionCursor(List<Cursor> cursors) {
+            for (Cursor cursor : cursors) {
+                Head head = new Head(cursor);
+                if (head.current >= 0) {
+                    heads.add(head);
+                }
+            }
+        }
+
+        @Override
+        public long advance(long target) {
+            while (!heads.isEmpty() && heads.peek().current > target) {
+                Head head = heads.poll();
+                head.current = head.cursor.advance(target);
+                if (head.current >= 0) {
+                    heads.add(head);
+                }
+            }
+            return heads.isEmpty() ? -1 : heads.peek().current;
+        }
+
+    }
+
+    /**
+     * Ascending message ids stored as variable-length deltas. Every {@value #BLOCK_SIZE}
+     * ids start a block whose first id is stored in full, so a block can be decoded
+     * without the ones before it.
+     */
+    static class Postings {
+
+        static final int BLOCK_SIZE = 64;
+
+        private byte[] data = new byte[4];
+        private int length;
+        private int count;
+        private long last;
+        // first id and offset of every block
+        private long[] blockIds = new long[1];
+        private int[] blockOffsets = new int[1];
+
+        void add(long id) {
+            if (id <= last) {
+                return;
+            }
+            long delta = id - last;
+            if (count % BLOCK_SIZE == 0) {
+                int block = count / BLOCK_SIZE;
+                if (block == blockIds.length) {
+                    blockIds = Arrays.copyOf(blockIds, block * 2);
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                }
+                blockIds[block] = id;
+                blockOffsets[block] = length;
+                delta = id;
+            }
+            if (length + 10 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+            }
+            while ((delta & ~0x7FL) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            last = id;
+            count++;
+        }
+
+        int blocks() {
+            return (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+
+        /**
+         * Index of the last block whose first id is not above {@code id}, {@code -1} if there is none.
+         */
+        int blockOf(long id) {
+            int low = 0;
+            int high = blocks() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (blockIds[middle] <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+
+        long[] block(int block) {
+            long[] ids = new long[Math.min(BLOCK_SIZE, count - block * BLOCK_SIZE)];
+            long id = 0;
+            int position = blockOffsets[block];
+            for (int i = 0; i < ids.length; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += delta;
+                ids[i] = id;
+            }
+            return ids;
+        }
+
+        /**
+         * The ids from {@code floor} on, {@code null} if there are none.
+         */
+        Postings from(long floor) {
+            if (last < floor) {
+                return null;
+            }
+            if (blockIds[0] >= floor) {
+                return this;
+            }
+            Postings trimmed = new Postings();
+            for (int block = blockOf(floor); block < blocks(); block++) {
+                for (long id : block(block)) {
+                    if (id >= floor) {
+                        trimmed.add(id);
+                    }
+                }
+            }
+            return trimmed;
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package edu.fra.uas.repository;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import edu.fra.uas.model.Message;
+
+/**
+ * Binary encoding of the chat model shared by the journal, its snapshots and the message archive.
+ */
+public final class RecordCodec {
+
+    private RecordCodec() {
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeMessage(DataOutput out, Message message) throws IOException {
+        out.writeLong(message.getId());
+        out.writeLong(message.getUserId() == null ? -1 : message.getUserId());
+        LocalDateTime timeStamp = message.getTimeStamp();
+        out.writeLong(timeStamp == null ? Long.MIN_VALUE : timeStamp.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(timeStamp == null ? 0 : timeStamp.getNano());
+        writeString(out, message.getContent());
+    }
+
+    public static Message readMessage(DataInput in) throws IOException {
+        long id = in.readLong();
+        long userId = in.readLong();
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        String content = readString(in);
+        LocalDateTime timeStamp = seconds == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        return new Message(id, content, userId == -1 ? null : userId, timeStamp);
+    }
+
+}
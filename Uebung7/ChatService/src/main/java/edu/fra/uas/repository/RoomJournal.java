@@ -0,0 +1,627 @@
+package edu.fra.uas.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import edu.fra.uas.model.ChatUser;
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.MessageLog;
+import edu.fra.uas.model.RetentionPolicy;
+import edu.fra.uas.model.Room;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-ahead log of all changes to the rooms.
+ * <p>
+ * Records are appended to memory-mapped segment files and return their end
+ * position; {@link #awaitDurable} then returns right away ({@code never}), waits
+ * for a flusher thread that forces all pending records with one call
+ * ({@code batch}, group commit) or finds the segment forced by the append itself
+ * ({@code always}). Callers write a record under their own lock and wait after
+ * releasing it, so the lock is not held during the flush. A snapshot of all rooms
+ * bounds the part of the journal that has to be replayed on startup; older
+ * segments are deleted after it was written.
+ * <p>
+ * Every record is applied idempotently, so the snapshot may already contain
+ * changes that are replayed again.
+ */
+@Repository
+public class RoomJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomJournal.class);
+
+    public enum FsyncPolicy { NEVER, BATCH, ALWAYS }
+
+    private static final byte ROOM_PUT = 1;
+    private static final byte ROOM_DELETED = 2;
+    private static final byte USER_JOINED = 3;
+    private static final byte USER_LEFT = 4;
+    private static final byte MESSAGE = 5;
+    private static final byte RETENTION = 6;
+    private static final byte MESSAGES = 7;
+
+    // length and CRC32 of the payload
+    private static final int HEADER_SIZE = 8;
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    @Value("${chat.journal.dir:data/journal}")
+    private String directoryName;
+
+    @Value("${chat.journal.segment-size:67108864}")
+    private int segmentSize;
+
+    @Value("${chat.journal.fsync:batch}")
+    private String fsync;
+
+    private Path directory;
+    private FsyncPolicy policy;
+
+    // guarded by this
+    private Segment segment;
+    private long position;
+
+    private final Object flushLock = new Object();
+    // guarded by flushLock
+    private long flushRequested;
+    private long flushed;
+    private volatile boolean closed;
+    private Thread flusher;
+
+    public RoomJournal() {
+    }
+
+    public RoomJournal(Path directory, int segmentSize, FsyncPolicy policy) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.policy = policy;
+    }
+
+    @PostConstruct
+    public void init() {
+        directory = Paths.get(directoryName);
+        policy = FsyncPolicy.valueOf(fsync.trim().toUpperCase());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        closed = true;
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (segment != null) {
+                segment.buffer.force();
+                segment.channel.close();
+                segment = null;
+            }
+        }
+    }
+
+    // ##############################################################################################################
+    // Recovery
+    // ##############################################################################################################
+
+    /**
+     * Loads the latest snapshot and replays the journal behind it into the repository,
+     * then opens the journal for writing.
+     */
+    public synchronized void recover(Map<Long, Room> rooms) throws IOException {
+        Files.createDirectories(directory);
+        long start = readSnapshot(rooms);
+        long end = start;
+        Segment last = null;
+        List<Path> files = segmentFiles();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long base = baseOf(file);
+            long size = Files.size(file);
+            if (base + size <= start) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                buffer.position((int) Math.max(0, start - base));
+                boolean complete = replay(buffer, rooms);
+                end = base + buffer.position();
+                if (!complete) {
+                    // a torn record: everything behind it was never acknowledged
+                    log.warn("journal ends in segment {} at offset {}", file.getFileName(), buffer.position());
+                    for (Path later : files.subList(i + 1, files.size())) {
+                        Files.delete(later);
+                    }
+                    last = new Segment(file, base, buffer.position());
+                    break;
+                }
+                last = new Segment(file, base, buffer.position());
+            }
+        }
+        for (Room room : rooms.values()) {
+            room.getMessages().seal();
+        }
+        if (last == null || end - last.base >= last.size()) {
+            segment = Segment.create(directory, Math.max(end, last == null ? end : last.base + last.size()), segmentSize);
+        } else {
+            segment = last.openForWriting();
+        }
+        position = segment.base + segment.buffer.position();
+        flushed = position;
+        flushRequested = position;
+        if (policy == FsyncPolicy.BATCH) {
+            flusher = new Thread(this::flushLoop, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        log.info("recovered {} rooms from journal in {}, position {}", rooms.size(), directory.toAbsolutePath(), position);
+    }
+
+    private boolean replay(MappedByteBuffer buffer, Map<Long, Room> rooms) throws IOException {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int offset = buffer.position();
+            int length = buffer.getInt();
+            if (length == 0) {
+                buffer.position(offset);
+                return true;
+            }
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                buffer.position(offset);
+                return false;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(offset);
+                return false;
+            }
+            apply(new DataInputStream(new ByteArrayInputStream(payload)), rooms);
+        }
+        return true;
+    }
+
+    private void apply(DataInputStream in, Map<Long, Room> rooms) throws IOException {
+        byte type = in.readByte();
+        long roomId = in.readLong();
+        Room room = rooms.get(roomId);
+        switch (type) {
+            case ROOM_PUT:
+                String name = RecordCodec.readString(in);
+                if (room == null) {
+                    room = new Room();
+                    room.setId(roomId);
+                    rooms.put(roomId, room);
+                }
+                room.setName(name);
+                break;
+            case ROOM_DELETED:
+                rooms.remove(roomId);
+                break;
+            case USER_JOINED:
+                ChatUser user = new ChatUser(in.readLong(), RecordCodec.readString(in));
+                if (room != null) {
+                    room.getUsers().put(user.getId(), user);
+                }
+                break;
+            case USER_LEFT:
+                long userId = in.readLong();
+                if (room != null) {
+                    room.getUsers().remove(userId);
+                }
+                break;
+            case MESSAGE:
+                Message message = RecordCodec.readMessage(in);
+                if (room != null) {
+                    room.getMessages().restore(message);
+                }
+                break;
+            case MESSAGES:
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Message batched = RecordCodec.readMessage(in);
+                    if (room != null) {
+                        room.getMessages().restore(batched);
+                    }
+                }
+                break;
+            case RETENTION:
+                RetentionPolicy retention = new RetentionPolicy(in.readInt(), in.readLong(), in.readLong());
+                if (room != null) {
+                    room.setRetention(retention);
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // ##############################################################################################################
+    // Records
+    // ##############################################################################################################
+
+    public long roomPut(Room room) {
+        return append(ROOM_PUT, room.getId(), out -> RecordCodec.writeString(out, room.getName()));
+    }
+
+    public long roomDeleted(Long roomId) {
+        return append(ROOM_DELETED, roomId, out -> { });
+    }
+
+    public long userJoined(Long roomId, ChatUser user) {
+        return append(USER_JOINED, roomId, out -> {
+            out.writeLong(user.getId());
+            RecordCodec.writeString(out, user.getName());
+        });
+    }
+
+    public long userLeft(Long roomId, Long userId) {
+        return append(USER_LEFT, roomId, out -> out.writeLong(userId));
+    }
+
+    public long message(Long roomId, Message message) {
+        return append(MESSAGE, roomId, out -> RecordCodec.writeMessage(out, message));
+    }
+
+    /**
+     * Journals a batch of messages as one record, so it is replayed completely or not at all.
+     */
+    public long messages(Long roomId, List<Message> messages) {
+        return append(MESSAGES, roomId, out -> {
+            out.writeInt(messages.size());
+            for (Message message : messages) {
+                RecordCodec.writeMessage(out, message);
+            }
+        });
+    }
+
+    public long retention(Long roomId, RetentionPolicy retention) {
+        return append(RETENTION, roomId, out -> {
+            out.writeInt(retention.getMaxMessages());
+            out.writeLong(retention.getMaxAgeSeconds());
+            out.writeLong(retention.getMaxBytes());
+        });
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private long append(byte type, Long roomId, RecordWriter writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeLong(roomId);
+            writer.write(out);
+            return write(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to journal", e);
+        }
+    }
+
+    /**
+     * Appends one record and returns once it is as durable as the fsync policy demands.
+     */
+    public long append(byte[] payload) throws IOException {
+        long end = write(payload);
+        awaitFlushed(end);
+        return end;
+    }
+
+    /**
+     * Returns once all records up to the position are as durable as the fsync policy demands.
+     */
+    public void awaitDurable(long end) {
+        try {
+            awaitFlushed(end);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to journal", e);
+        }
+    }
+
+    // appends one record without waiting for the flush, returns its end position
+    private long write(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        long end;
+        synchronized (this) {
+            if (segment == null) {
+                throw new IllegalStateException("Journal is not open");
+            }
+            int needed = HEADER_SIZE + payload.length;
+            if (needed > segmentSize) {
+                throw new IllegalArgumentException("Journal record of " + needed + " bytes exceeds the segment size");
+            }
+            if (segment.buffer.remaining() < needed) {
+                roll();
+            }
+            segment.buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            position = segment.base + segment.buffer.position();
+            end = position;
+            if (policy == FsyncPolicy.ALWAYS) {
+                segment.buffer.force();
+            }
+        }
+        return end;
+    }
+
+    public synchronized long position() {
+        return position;
+    }
+
+    // caller holds the lock on this
+    private void roll() throws IOException {
+        Segment full = segment;
+        if (policy != FsyncPolicy.NEVER) {
+            full.buffer.force();
+        }
+        segment = Segment.create(directory, full.base + full.size(), segmentSize);
+        full.channel.close();
+        position = segment.base;
+    }
+
+    // ##############################################################################################################
+    // Group commit
+    // ##############################################################################################################
+
+    private void awaitFlushed(long end) throws IOException {
+        if (policy != FsyncPolicy.BATCH) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (end > flushRequested) {
+                flushRequested = end;
+                flushLock.notifyAll();
+            }
+            while (flushed < end && !closed) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the journal flush");
+                }
+            }
+        }
+    }
+
+    // forces everything written so far with one call, all appends that arrived
+    // while the previous force was running are committed together
+    private void flushLoop() {
+        while (!closed) {
+            synchronized (flushLock) {
+                while (!closed && flushRequested <= flushed) {
+                    try {
+                        flushLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            if (closed) {
+                return;
+            }
+            long target;
+            MappedByteBuffer buffer;
+            synchronized (this) {
+                target = position;
+                buffer = segment.buffer;
+            }
+            // older segments were forced when they were rolled
+            buffer.force();
+            synchronized (flushLock) {
+                flushed = Math.max(flushed, target);
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    // ##############################################################################################################
+    // Snapshots
+    // ##############################################################################################################
+
+    /**
+     * Writes a snapshot of all rooms and deletes the segments it makes obsolete.
+     * Changes must be applied in memory before they are journaled; the rooms are
+     * only taken after the snapshot position was read, then every record before
+     * the position is contained in them, a room created or deleted in between
+     * included.
+     */
+    public void snapshot(Supplier<? extends Iterable<Room>> rooms) throws IOException {
+        long start = position();
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(start);
+            for (Room room : rooms.get()) {
+                out.writeBoolean(true);
+                writeRoom(out, room);
+                count++;
+            }
+            out.writeBoolean(false);
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        List<Path> files = segmentFiles();
+        for (int i = 0; i + 1 < files.size(); i++) {
+            if (baseOf(files.get(i + 1)) <= start) {
+                Files.delete(files.get(i));
+            }
+        }
+        log.info("snapshot of {} rooms at journal position {}", count, start);
+    }
+
+    private void writeRoom(DataOutputStream out, Room room) throws IOException {
+        out.writeLong(room.getId());
+        RecordCodec.writeString(out, room.getName());
+        RetentionPolicy retention = room.getRetention();
+        out.writeBoolean(retention != null);
+        if (retention != null) {
+            out.writeInt(retention.getMaxMessages());
+            out.writeLong(retention.getMaxAgeSeconds());
+            out.writeLong(retention.getMaxBytes());
+        }
+        List<ChatUser> users = new ArrayList<>(room.getUsers().values());
+        out.writeInt(users.size());
+        for (ChatUser user : users) {
+            out.writeLong(user.getId());
+            RecordCodec.writeString(out, user.getName());
+        }
+        List<Message> messages = room.getMessages().snapshot();
+        // read after the messages: everything below is archived, everything above is in the list or still in flight
+        long firstId = room.getMessages().firstId();
+        out.writeLong(firstId);
+        int count = 0;
+        for (Message message : messages) {
+            if (message.getId() >= firstId) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (Message message : messages) {
+            if (message.getId() >= firstId) {
+                RecordCodec.writeMessage(out, message);
+            }
+        }
+    }
+
+    private long readSnapshot(Map<Long, Room> rooms) throws IOException {
+        Path file = directory.resolve(SNAPSHOT);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long start = in.readLong();
+            while (in.readBoolean()) {
+                Room room = new Room();
+                room.setId(in.readLong());
+                room.setName(RecordCodec.readString(in));
+                if (in.readBoolean()) {
+                    room.setRetention(new RetentionPolicy(in.readInt(), in.readLong(), in.readLong()));
+                }
+                int users = in.readInt();
+                for (int i = 0; i < users; i++) {
+                    ChatUser user = new ChatUser(in.readLong(), RecordCodec.readString(in));
+                    room.getUsers().put(user.getId(), user);
+                }
+                MessageLog messages = new MessageLog(in.readLong());
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    messages.restore(RecordCodec.readMessage(in));
+                }
+                room.setMessages(messages);
+                rooms.put(room.getId(), room);
+            }
+            return start;
+        }
+    }
+
+    // ##############################################################################################################
+    // Segments
+    // ##############################################################################################################
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long baseOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Segment {
+
+        final Path file;
+        final long base;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        // write offset of a segment that is only known from recovery
+        final int recovered;
+
+        Segment(Path file, long base, int recovered) {
+            this.file = file;
+            this.base = base;
+            this.channel = null;
+            this.buffer = null;
+            this.recovered = recovered;
+        }
+
+        private Segment(Path file, long base, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.base = base;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.recovered = 0;
+        }
+
+        static Segment create(Path directory, long base, int size) throws IOException {
+            Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(file, base, channel, buffer);
+        }
+
+        long size() throws IOException {
+            return channel != null ? buffer.capacity() : Files.size(file);
+        }
+
+        // continues the last segment behind its last complete record
+        Segment openForWriting() throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            // clear what a torn write may have left behind
+            for (int i = recovered; i < buffer.capacity(); i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+            buffer.position(recovered);
+            return new Segment(file, base, channel, buffer);
+        }
+
+    }
+
+}
@@ -1,12 +1,132 @@
 package edu.fra.uas.repository;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import edu.fra.uas.model.Room;
 
+/**
+ * Rooms split into stripes by room id.
+ * <p>
+ * Every stripe guards its part of the rooms with its own read-write lock and
+ * offers a second lock for changes inside a room (e.g. joins and leaves), so
+ * traffic in one room never blocks rooms of the other stripes.
+ */
 @Repository
-public class RoomRepository extends HashMap<Long, Room> {
+public class RoomRepository {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    public RoomRepository(@Value("${chat.rooms.stripes:16}") int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Allocates the id of a new room.
+     */
+    public long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    public Room get(Long id) {
+        Stripe stripe = stripe(id);
+        stripe.lock.readLock().lock();
+        try {
+            return stripe.rooms.get(id);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    public Room put(Long id, Room room) {
+        // rooms recovered from the journal must not get their ids again
+        nextId.accumulateAndGet(id + 1, Math::max);
+        Stripe stripe = stripe(id);
+        stripe.lock.writeLock().lock();
+        try {
+            return stripe.rooms.put(id, room);
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    public Room remove(Long id) {
+        Stripe stripe = stripe(id);
+        stripe.lock.writeLock().lock();
+        try {
+            return stripe.rooms.remove(id);
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copy of all rooms, taken stripe by stripe.
+     */
+    public List<Room> values() {
+        List<Room> rooms = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                rooms.addAll(stripe.rooms.values());
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return rooms;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                size += stripe.rooms.size();
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Lock that serialises changes inside the room with the given id.
+     */
+    public Lock lock(Long id) {
+        return stripe(id).roomLock;
+    }
+
+    private Stripe stripe(Long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 32) & mask];
+    }
+
+    private static class Stripe {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Room> rooms = new HashMap<>();
+        private final Lock roomLock = new ReentrantLock();
+
+    }
 
 }
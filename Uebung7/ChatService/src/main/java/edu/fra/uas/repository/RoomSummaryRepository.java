@@ -0,0 +1,66 @@
+package edu.fra.uas.repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.stereotype.Repository;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+import edu.fra.uas.model.RoomDTO;
+
+/**
+ * Read-optimised projection of all rooms, kept up to date on every write.
+ * <p>
+ * A summary is never changed after it was published, each update replaces
+ * it with a new one built from the current state of the room. Readers
+ * therefore get consistent summaries without locking and the room list is
+ * a plain copy of the projection, sorted by id.
+ */
+@Repository
+public class RoomSummaryRepository {
+
+    private final ConcurrentNavigableMap<Long, RoomDTO> summaries = new ConcurrentSkipListMap<>();
+
+    /**
+     * Adds or replaces the summary of a created, updated or recovered room.
+     */
+    public RoomDTO put(Room room) {
+        return summaries.compute(room.getId(), (id, previous) -> summarize(room, previous));
+    }
+
+    /**
+     * Rebuilds the summary after a change of members or messages. Does nothing
+     * if the room was deleted in the meantime.
+     */
+    public RoomDTO update(Room room) {
+        // the remapping retries with the current summary if another update won, so the
+        // summary installed last is built from a state after every finished change
+        return summaries.computeIfPresent(room.getId(), (id, previous) -> summarize(room, previous));
+    }
+
+    public RoomDTO get(Long id) {
+        return summaries.get(id);
+    }
+
+    public RoomDTO remove(Long id) {
+        return summaries.remove(id);
+    }
+
+    public List<RoomDTO> values() {
+        return new ArrayList<>(summaries.values());
+    }
+
+    private static RoomDTO summarize(Room room, RoomDTO previous) {
+        long lastMessageId = room.getMessages().lastId();
+        Message last = room.getMessages().get(lastMessageId);
+        // the newest message may already be evicted, its time is still known from before
+        LocalDateTime lastMessageTime = last != null ? last.getTimeStamp()
+                : previous != null && previous.getLastMessageId() == lastMessageId ? previous.getLastMessageTime() : null;
+        return new RoomDTO(room.getId(), room.getName(), room.getUsers().size(), lastMessageId, lastMessageTime);
+    }
+
+}
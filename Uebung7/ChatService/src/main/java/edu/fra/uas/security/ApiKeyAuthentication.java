@@ -8,10 +8,12 @@ import org.springframework.security.core.GrantedAuthority;
 public class ApiKeyAuthentication extends AbstractAuthenticationToken {
     
     private final String apiKey;
+    private final String clientId;
 
-    public ApiKeyAuthentication(String apiKey, Collection<? extends GrantedAuthority> authorities) {
+    public ApiKeyAuthentication(String apiKey, String clientId, Collection<? extends GrantedAuthority> authorities) {
         super(authorities);
         this.apiKey = apiKey;
+        this.clientId = clientId;
         setAuthenticated(true);
     }
 
@@ -24,5 +26,11 @@ public class ApiKeyAuthentication extends AbstractAuthenticationToken {
     public String getPrincipal() {
         return apiKey;
     }
+
+    // the default would be the key itself
+    @Override
+    public String getName() {
+        return clientId;
+    }
     
 }
@@ -0,0 +1,134 @@
+package edu.fra.uas.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * All API keys that are currently accepted.
+ * <p>
+ * The key of {@code authentication.token} is always valid. More keys can be put into
+ * the file {@code authentication.keys-file}, one per line; the file is checked
+ * periodically, so keys can be added and revoked without a restart. Only SHA-256
+ * digests of the keys are kept and a presented key is compared with all of them in
+ * constant time.
+ */
+@Component
+public class ApiKeyRegistry {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(ApiKeyRegistry.class);
+
+    @Value("${authentication.token}")
+    private String token;
+
+    @Value("${authentication.keys-file:}")
+    private String keysFile;
+
+    // replaced as a whole on rotation, never changed in place
+    private volatile List<byte[]> digests = List.of();
+    private FileTime loadedVersion;
+
+    public ApiKeyRegistry() {
+    }
+
+    public ApiKeyRegistry(String token, String keysFile) {
+        this.token = token;
+        this.keysFile = keysFile;
+        load();
+    }
+
+    @PostConstruct
+    public void load() {
+        List<byte[]> keys = new ArrayList<>();
+        if (token != null && !token.isEmpty()) {
+            keys.add(digest(token));
+        }
+        if (keysFile != null && !keysFile.isEmpty()) {
+            Path path = Path.of(keysFile);
+            try {
+                if (Files.exists(path)) {
+                    loadedVersion = Files.getLastModifiedTime(path);
+                    for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                        String key = line.trim();
+                        if (!key.isEmpty() && !key.startsWith("#")) {
+                            keys.add(digest(key));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // keep the keys that were valid so far rather than locking everybody out
+                log.error("could not read API keys from {}", keysFile, e);
+                return;
+            }
+        }
+        digests = List.copyOf(keys);
+        log.info("{} API keys loaded", keys.size());
+    }
+
+    @Scheduled(fixedDelayString = "${authentication.keys-reload-interval:10000}")
+    public void reloadIfChanged() {
+        if (keysFile == null || keysFile.isEmpty()) {
+            return;
+        }
+        try {
+            Path path = Path.of(keysFile);
+            FileTime version = Files.exists(path) ? Files.getLastModifiedTime(path) : null;
+            if (version != null && !version.equals(loadedVersion)) {
+                load();
+            }
+        } catch (IOException e) {
+            log.error("could not check API keys file {}", keysFile, e);
+        }
+    }
+
+    public boolean isValid(String apiKey) {
+        return apiKey != null && isValid(digest(apiKey));
+    }
+
+    /**
+     * Checks a key that was already hashed with {@link #digest(String)}.
+     */
+    public boolean isValid(byte[] presented) {
+        boolean valid = false;
+        // no early exit, the time taken does not depend on which key matched
+        for (byte[] digest : digests) {
+            valid |= MessageDigest.isEqual(digest, presented);
+        }
+        return valid;
+    }
+
+    public int size() {
+        return digests.size();
+    }
+
+    /**
+     * Name of the client owning the key, derived from its digest so the key itself
+     * never shows up in logs, rate limiter state and the like.
+     */
+    public static String clientId(byte[] digest) {
+        return "key:" + HexFormat.of().formatHex(digest, 0, 8);
+    }
+
+    static byte[] digest(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+}
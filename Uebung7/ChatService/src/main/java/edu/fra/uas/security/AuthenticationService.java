@@ -3,51 +3,65 @@ package edu.fra.uas.security;
 import java.util.Enumeration;
 
 import org.slf4j.Logger;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
-import org.springframework.stereotype.Component;
 
 import jakarta.servlet.http.HttpServletRequest;
 
-@Component
+/**
+ * Authenticates a request by its API key or its HTTP Basic credentials.
+ * Created by {@link SecurityConfig}.
+ */
 public class AuthenticationService {
 
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(AuthenticationService.class);
 
-    private static String AUTH_TOKEN_HEADER_NAME;
-    private static String AUTH_TOKEN;
+    private final String authTokenHeaderName;
+    private final ApiKeyRegistry apiKeyRegistry;
+    private final BasicCredentialCache basicCredentialCache;
 
-    @Value("${authentication.token.header.name}")
-    public void setAuthTokenHeaderName(String authTokenHeaderName) {
-        AUTH_TOKEN_HEADER_NAME = authTokenHeaderName;
+    public AuthenticationService(String authTokenHeaderName, ApiKeyRegistry apiKeyRegistry,
+                                 BasicCredentialCache basicCredentialCache) {
+        this.authTokenHeaderName = authTokenHeaderName;
+        this.apiKeyRegistry = apiKeyRegistry;
+        this.basicCredentialCache = basicCredentialCache;
     }
 
-    @Value("${authentication.token}")
-    public void setAuthToken(String authToken) {
-        AUTH_TOKEN = authToken;
-    }
-
-    public static Authentication getAuthentication(HttpServletRequest request) {
-        logRequest(request);
-        String apiKey = request.getHeader(AUTH_TOKEN_HEADER_NAME);
-        if(apiKey == null || !apiKey.equals(AUTH_TOKEN)) {
-            throw new BadCredentialsException("Invalid API Key");
+    /**
+     * Returns {@code null} if the request carries no credentials at all.
+     */
+    public Authentication getAuthentication(HttpServletRequest request) {
+        if (log.isDebugEnabled()) {
+            logRequest(request);
+        }
+        String apiKey = request.getHeader(authTokenHeaderName);
+        if (apiKey != null) {
+            byte[] digest = ApiKeyRegistry.digest(apiKey);
+            if (!apiKeyRegistry.isValid(digest)) {
+                throw new BadCredentialsException("Invalid API Key");
+            }
+            return new ApiKeyAuthentication(apiKey, ApiKeyRegistry.clientId(digest), AuthorityUtils.NO_AUTHORITIES);
+        }
+        String authorization = request.getHeader("Authorization");
+        if (authorization != null && authorization.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return basicCredentialCache.authenticate(authorization);
         }
-        return new ApiKeyAuthentication(apiKey, AuthorityUtils.NO_AUTHORITIES);
+        return null;
     }
     
     private static void logRequest(HttpServletRequest request) {
         Enumeration<String> headerNames = request.getHeaderNames();
-        String inReq = "\n--> Incomming request:\n" 
-                       + request.getMethod() + " " 
-                       + request.getRequestURI() + "\n";
+        StringBuilder inReq = new StringBuilder("\n--> Incomming request:\n")
+                .append(request.getMethod()).append(' ')
+                .append(request.getRequestURI()).append('\n');
         while (headerNames.hasMoreElements()) {
             String headerName = headerNames.nextElement();
-            inReq = inReq + headerName + " = " + request.getHeader(headerName) + "\n";
+            // never write credentials into the log
+            boolean secret = headerName.equalsIgnoreCase("Authorization");
+            inReq.append(headerName).append(" = ").append(secret ? "***" : request.getHeader(headerName)).append('\n');
         }
-        log.debug(inReq);
+        log.debug(inReq.toString());
     }
 
 }
@@ -0,0 +1,83 @@
+package edu.fra.uas.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Verified HTTP Basic credentials, so the password hash is checked once per
+ * credential and time to live instead of on every request.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of the whole header value; neither
+ * the password nor the header is kept. Failed attempts are never cached.
+ */
+public class BasicCredentialCache {
+
+    private final AuthenticationManager authenticationManager;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<String, Verified> verified = new ConcurrentHashMap<>();
+
+    public BasicCredentialCache(AuthenticationManager authenticationManager, long ttlMillis, int maxEntries) {
+        this.authenticationManager = authenticationManager;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Authenticates the value of an {@code Authorization: Basic ...} header.
+     */
+    public Authentication authenticate(String header) {
+        String key = Base64.getEncoder().encodeToString(ApiKeyRegistry.digest(header));
+        Verified entry = verified.get(key);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.expiresAt < 0) {
+            return entry.authentication;
+        }
+        Authentication authentication = authenticationManager.authenticate(decode(header));
+        if (verified.size() >= maxEntries) {
+            // crude but bounded: start over instead of tracking the least recently used entry
+            verified.clear();
+        }
+        verified.put(key, new Verified(authentication, now + ttlNanos));
+        return authentication;
+    }
+
+    public void clear() {
+        verified.clear();
+    }
+
+    private static UsernamePasswordAuthenticationToken decode(String header) {
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadCredentialsException("Invalid basic authentication token");
+        }
+        int colon = credentials.indexOf(':');
+        if (colon < 0) {
+            throw new BadCredentialsException("Invalid basic authentication token");
+        }
+        return UsernamePasswordAuthenticationToken.unauthenticated(credentials.substring(0, colon), credentials.substring(colon + 1));
+    }
+
+    private static final class Verified {
+
+        private final Authentication authentication;
+        private final long expiresAt;
+
+        Verified(Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
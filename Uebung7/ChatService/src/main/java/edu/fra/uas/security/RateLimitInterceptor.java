@@ -0,0 +1,69 @@
+package edu.fra.uas.security;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Applies the {@link RateLimiter} to every request that reached a controller.
+ * Routes are identified by the handler pattern, e.g. {@code /rooms/{id}}, so all
+ * rooms share one limit per client. A trusted client is limited per user of the path,
+ * see {@link RateLimiter#client}. Rejected requests get {@code 429 Too Many Requests}
+ * with a {@code Retry-After} header.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter, ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // the dispatch that completes an async request was already counted
+        if (!rateLimiter.isEnabled() || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern == null) {
+            return true;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String client = authentication != null ? authentication.getName() : request.getRemoteAddr();
+        Map<?, ?> variables = (Map<?, ?>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        Object userId = variables == null ? null : variables.get("userId");
+        client = rateLimiter.client(client, userId == null ? null : userId.toString());
+        long wait = rateLimiter.tryAcquire(request.getMethod(), pattern.toString(), client);
+        if (wait == 0) {
+            return true;
+        }
+        long seconds = Math.max(1, (wait + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.TOO_MANY_REQUESTS,
+                "Rate limit of " + request.getMethod() + " " + pattern + " exceeded, retry after " + seconds + " seconds");
+        pd.setInstance(URI.create(request.getRequestURI()));
+        pd.setTitle("Too many requests");
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", Long.toString(seconds));
+        response.setContentType(MediaType.APPLICATION_PROBLEM_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), pd);
+        return false;
+    }
+
+}
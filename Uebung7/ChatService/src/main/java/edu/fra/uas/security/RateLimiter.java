@@ -0,0 +1,354 @@
+package edu.fra.uas.security;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Per-client rate limits of the routes, implemented as generic cell rate algorithm (GCRA).
+ * <p>
+ * The whole state of a client on a route is its theoretical arrival time (TAT):
+ * the time at which its bucket would be empty again. A request is admitted if the
+ * TAT it would advance to lies no more than the burst ahead of now, the TAT is then
+ * updated with a single compare-and-set. Clients that have been idle long enough are
+ * indistinguishable from new ones and are dropped by {@link #sweep()}.
+ * <p>
+ * Limits are written as {@code <count>/<s|m|h|d>[:<burst>]}, e.g. {@code 20/s:40} or
+ * {@code 5000/d}; {@code chat.ratelimit.routes} overrides the default for single routes:
+ * <pre>
+ * chat.ratelimit.routes=POST /rooms/{id}/users/{userId}/messages=20/s:40, GET /rooms=50/s
+ * </pre>
+ * Clients listed in {@code chat.ratelimit.trusted-clients} act for many users, like the
+ * user service does; their requests on a route of one user, e.g.
+ * {@code /rooms/{id}/users/{userId}/messages}, are counted per user of the path.
+ * <p>
+ * If {@code chat.ratelimit.file} is set, the state is written there on every sweep and
+ * on shutdown and loaded on startup, so a restart does not refill all buckets. Times are
+ * taken from the wall clock once and advanced with {@link System#nanoTime()}.
+ */
+@Component
+public class RateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimiter.class);
+
+    private static final int FILE_VERSION = 1;
+
+    @Value("${chat.ratelimit.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${chat.ratelimit.default:100/s:200}")
+    private String defaultLimit = "100/s:200";
+
+    @Value("${chat.ratelimit.routes:}")
+    private String routeLimits = "";
+
+    @Value("${chat.ratelimit.trusted-clients:}")
+    private String trustedClients = "";
+
+    @Value("${chat.ratelimit.file:}")
+    private String file = "";
+
+    private final LongSupplier clock;
+
+    private Limit fallback;
+    private final Map<String, Limit> configured = new HashMap<>();
+    private final Set<String> trusted = new HashSet<>();
+    // pattern -> method -> route, filled on first use
+    private final Map<String, Map<String, Route>> routes = new ConcurrentHashMap<>();
+
+    public RateLimiter() {
+        long offset = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+        this.clock = () -> offset + System.nanoTime();
+    }
+
+    RateLimiter(String defaultLimit, String routeLimits, String file, LongSupplier clock) {
+        this(defaultLimit, routeLimits, "", file, clock);
+    }
+
+    RateLimiter(String defaultLimit, String routeLimits, String trustedClients, String file, LongSupplier clock) {
+        this.defaultLimit = defaultLimit;
+        this.routeLimits = routeLimits;
+        this.trustedClients = trustedClients;
+        this.file = file;
+        this.clock = clock;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        fallback = Limit.parse(defaultLimit);
+        configured.clear();
+        for (String entry : routeLimits.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf('=');
+            String route = entry.substring(0, separator).trim();
+            configured.put(route.replaceAll("\\s+", " "), Limit.parse(entry.substring(separator + 1)));
+        }
+        trusted.clear();
+        for (String client : trustedClients.split(",")) {
+            if (!client.isBlank()) {
+                trusted.add(client.trim());
+            }
+        }
+        log.info("rate limits: default={}, routes={}, trusted clients={}", fallback, configured, trusted);
+        if (!file.isEmpty()) {
+            load(Path.of(file));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!file.isEmpty()) {
+            save(Path.of(file));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the name a request is counted for: the client, or for a trusted client
+     * acting for the user with the id, the client and the user.
+     */
+    public String client(String client, String userId) {
+        return userId != null && trusted.contains(client) ? client + "/" + userId : client;
+    }
+
+    /**
+     * Admits a request of the client to the route, identified by its HTTP method and
+     * handler pattern. Returns 0 if the request may proceed, otherwise the nanoseconds
+     * until it would be admitted.
+     */
+    public long tryAcquire(String method, String pattern, String client) {
+        Route route = route(method, pattern);
+        if (route.limit == null) {
+            return 0;
+        }
+        AtomicLong tat = route.clients.get(client);
+        if (tat == null) {
+            tat = route.clients.computeIfAbsent(client, c -> new AtomicLong(Long.MIN_VALUE));
+        }
+        return route.limit.acquire(tat, clock.getAsLong());
+    }
+
+    /**
+     * Drops the clients whose bucket is full again and writes the state to the file, if any.
+     */
+    @Scheduled(fixedDelayString = "${chat.ratelimit.sweep-interval:10000}")
+    public void sweep() {
+        long now = clock.getAsLong();
+        int removed = 0;
+        for (Map<String, Route> methods : routes.values()) {
+            for (Route route : methods.values()) {
+                for (Map.Entry<String, AtomicLong> client : route.clients.entrySet()) {
+                    // a request admitted between the check and the removal is forgotten,
+                    // that costs the client at most one request of its next burst
+                    if (client.getValue().get() <= now && route.clients.remove(client.getKey(), client.getValue())) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        log.debug("sweep: {} idle clients removed", removed);
+        if (!file.isEmpty()) {
+            save(Path.of(file));
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Map<String, Route> methods : routes.values()) {
+            for (Route route : methods.values()) {
+                size += route.clients.size();
+            }
+        }
+        return size;
+    }
+
+    private Route route(String method, String pattern) {
+        Map<String, Route> methods = routes.get(pattern);
+        Route route = methods == null ? null : methods.get(method);
+        if (route == null) {
+            route = routes.computeIfAbsent(pattern, p -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(method, m -> new Route(configured.getOrDefault(m + " " + pattern, fallback)));
+        }
+        return route;
+    }
+
+    // ##############################################################################################################
+    // Persistence
+    // ##############################################################################################################
+
+    private void save(Path path) {
+        long now = clock.getAsLong();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        int count = 0;
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_VERSION);
+                for (Map.Entry<String, Map<String, Route>> methods : routes.entrySet()) {
+                    for (Map.Entry<String, Route> route : methods.getValue().entrySet()) {
+                        for (Map.Entry<String, AtomicLong> client : route.getValue().clients.entrySet()) {
+                            long tat = client.getValue().get();
+                            // full buckets need not be stored
+                            if (tat > now) {
+                                out.writeBoolean(true);
+                                out.writeUTF(route.getKey());
+                                out.writeUTF(methods.getKey());
+                                out.writeUTF(client.getKey());
+                                out.writeLong(tat);
+                                count++;
+                            }
+                        }
+                    }
+                }
+                out.writeBoolean(false);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("rate limiter state of {} clients written to {}", count, path);
+        } catch (IOException e) {
+            log.error("could not write rate limiter state to {}", path, e);
+        }
+    }
+
+    private void load(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        long now = clock.getAsLong();
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_VERSION) {
+                log.warn("ignoring rate limiter state {} of an unknown version", path);
+                return;
+            }
+            while (in.readBoolean()) {
+                String method = in.readUTF();
+                String pattern = in.readUTF();
+                String client = in.readUTF();
+                long tat = in.readLong();
+                Route route = route(method, pattern);
+                if (route.limit != null && tat > now) {
+                    route.clients.put(client, new AtomicLong(tat));
+                    count++;
+                }
+            }
+        } catch (EOFException e) {
+            log.warn("rate limiter state {} is truncated, {} clients restored", path, count);
+        } catch (IOException e) {
+            // the limits are a protection, not data: start with full buckets
+            log.error("could not read rate limiter state from {}", path, e);
+        }
+        log.info("rate limiter state of {} clients restored from {}", count, path);
+    }
+
+    // ##############################################################################################################
+    // Limits
+    // ##############################################################################################################
+
+    private static final class Route {
+
+        private final Limit limit;
+        private final Map<String, AtomicLong> clients = new ConcurrentHashMap<>();
+
+        Route(Limit limit) {
+            this.limit = limit;
+        }
+
+    }
+
+    static final class Limit {
+
+        private final String text;
+        // nanoseconds between two requests at the sustained rate
+        private final long interval;
+        // how far the TAT may run ahead of now
+        private final long tolerance;
+
+        private Limit(String text, long interval, long burst) {
+            this.text = text;
+            this.interval = interval;
+            this.tolerance = interval * burst;
+        }
+
+        /**
+         * Returns {@code null} for {@code 0} or {@code unlimited}.
+         */
+        static Limit parse(String text) {
+            String value = text.trim();
+            if (value.equals("0") || value.equalsIgnoreCase("unlimited")) {
+                return null;
+            }
+            try {
+                int slash = value.indexOf('/');
+                int colon = value.indexOf(':', slash);
+                long count = Long.parseLong(value.substring(0, slash).trim());
+                String unit = (colon < 0 ? value.substring(slash + 1) : value.substring(slash + 1, colon)).trim();
+                long burst = colon < 0 ? count : Long.parseLong(value.substring(colon + 1).trim());
+                long period = switch (unit) {
+                    case "s" -> TimeUnit.SECONDS.toNanos(1);
+                    case "m" -> TimeUnit.MINUTES.toNanos(1);
+                    case "h" -> TimeUnit.HOURS.toNanos(1);
+                    case "d" -> TimeUnit.DAYS.toNanos(1);
+                    default -> throw new IllegalArgumentException("unknown unit " + unit);
+                };
+                if (count <= 0 || burst <= 0) {
+                    throw new IllegalArgumentException("count and burst must be positive");
+                }
+                return new Limit(value, period / count, burst);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("invalid rate limit '" + text + "', expected <count>/<s|m|h|d>[:<burst>]", e);
+            }
+        }
+
+        long acquire(AtomicLong tat, long now) {
+            for (;;) {
+                long current = tat.get();
+                long next = Math.max(current, now) + interval;
+                long wait = next - now - tolerance;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+    }
+
+}
@@ -2,12 +2,20 @@ package edu.fra.uas.security;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.security.web.SecurityFilterChain;
 
 @Configuration
@@ -15,15 +23,53 @@ import org.springframework.security.web.SecurityFilterChain;
 public class SecurityConfig {    
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, AuthenticationService authenticationService,
+                                           @Value("${authentication.api-key.enabled:false}") boolean apiKeyEnabled) throws Exception {
         http.csrf(csrf -> csrf.disable());
         http.authorizeHttpRequests((authorize) -> authorize.anyRequest().fullyAuthenticated());
         http.httpBasic(withDefaults());
         
-        //http.sessionManagement((sessionManagement) -> sessionManagement.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
-        //http.addFilterBefore(new AuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
+        // with API keys enabled the AuthenticationFilter checks the credentials of every request,
+        // Basic ones included, and httpBasic only answers the challenge of unauthenticated ones
+        if (apiKeyEnabled) {
+            http.sessionManagement((sessionManagement) -> sessionManagement.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+            http.addFilterBefore(new AuthenticationFilter(authenticationService), BasicAuthenticationFilter.class);
+        }
         
         return http.build();
     }
 
+    @Bean
+    public PasswordEncoder passwordEncoder() {
+        return PasswordEncoderFactories.createDelegatingPasswordEncoder();
+    }
+
+    // the password from the properties is only kept as a hash
+    @Bean
+    public UserDetailsService userDetailsService(@Value("${spring.security.user.name}") String name,
+                                                 @Value("${spring.security.user.password}") String password,
+                                                 @Value("${spring.security.user.roles:USER}") String[] roles,
+                                                 PasswordEncoder passwordEncoder) {
+        return new InMemoryUserDetailsManager(User.withUsername(name)
+                .password(passwordEncoder.encode(password))
+                .roles(roles)
+                .build());
+    }
+
+    @Bean
+    public BasicCredentialCache basicCredentialCache(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+                                                     @Value("${authentication.basic-cache.ttl:300000}") long ttl,
+                                                     @Value("${authentication.basic-cache.max-entries:10000}") int maxEntries) {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(userDetailsService);
+        provider.setPasswordEncoder(passwordEncoder);
+        return new BasicCredentialCache(new ProviderManager(provider), ttl, maxEntries);
+    }
+
+    @Bean
+    public AuthenticationService authenticationService(@Value("${authentication.token.header.name}") String headerName,
+                                                       ApiKeyRegistry apiKeyRegistry, BasicCredentialCache basicCredentialCache) {
+        return new AuthenticationService(headerName, apiKeyRegistry, basicCredentialCache);
+    }
+
 }
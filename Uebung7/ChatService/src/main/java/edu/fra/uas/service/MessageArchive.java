@@ -0,0 +1,238 @@
+package edu.fra.uas.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.repository.RecordCodec;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Cold tier for messages evicted from the in-memory {@link edu.fra.uas.model.MessageLog}.
+ * <p>
+ * Every room gets one append-only file. A sparse index (every {@value #INDEX_INTERVAL}th
+ * message id to its file offset) stays in memory, so a page is read with one seek
+ * and a short scan.
+ */
+@Component
+public class MessageArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchive.class);
+
+    private static final int INDEX_INTERVAL = 128;
+
+    @Value("${chat.retention.archive-dir:data/archive}")
+    private String archiveDir;
+
+    private Path directory;
+
+    private final Map<Long, RoomArchive> rooms = new ConcurrentHashMap<>();
+
+    public MessageArchive() {
+    }
+
+    MessageArchive(String archiveDir) throws IOException {
+        this.archiveDir = archiveDir;
+        init();
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(archiveDir);
+        Files.createDirectories(directory);
+        log.debug("message archive in {}", directory.toAbsolutePath());
+    }
+
+    public void append(Long roomId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            archive(roomId).append(messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive messages of room " + roomId, e);
+        }
+    }
+
+    /**
+     * Returns at most {@code limit} archived messages with an id greater than {@code afterId}.
+     */
+    public List<Message> read(Long roomId, long afterId, int limit) {
+        try {
+            return archive(roomId).read(afterId, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archived messages of room " + roomId, e);
+        }
+    }
+
+    public void delete(Long roomId) {
+        // the deleted archive stays as tombstone, so a compactor still working through
+        // an older list of rooms cannot open it again; room ids are never reused
+        rooms.compute(roomId, (id, archive) -> {
+            if (archive == null) {
+                archive = new RoomArchive(file(id));
+            }
+            archive.delete();
+            return archive;
+        });
+    }
+
+    private Path file(Long roomId) {
+        return directory.resolve("room-" + roomId + ".archive");
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("could not delete archive {}: {}", file, e.getMessage());
+        }
+    }
+
+    private RoomArchive archive(Long roomId) {
+        return rooms.computeIfAbsent(roomId, id -> {
+            try {
+                return RoomArchive.open(file(id));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open archive of room " + id, e);
+            }
+        });
+    }
+
+    private static class RoomArchive {
+
+        private final Path file;
+        // message id -> offset of its record, for every INDEX_INTERVAL-th message
+        private final TreeMap<Long, Long> index = new TreeMap<>();
+        private long length;
+        private long lastId;
+        private boolean deleted;
+
+        RoomArchive(Path file) {
+            this.file = file;
+        }
+
+        static RoomArchive open(Path file) throws IOException {
+            RoomArchive archive = new RoomArchive(file);
+            if (Files.exists(file)) {
+                archive.load();
+            }
+            return archive;
+        }
+
+        // an archive left by an earlier run is scanned once to rebuild the index
+        private void load() throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                while (true) {
+                    long offset = length;
+                    Message message;
+                    try {
+                        message = RecordCodec.readMessage(in);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    length = offset + recordSize(message);
+                    addToIndex(message.getId(), offset);
+                    lastId = message.getId();
+                }
+            }
+            // cut off a record that was torn by a crash
+            if (Files.size(file) > length) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(length);
+                }
+            }
+        }
+
+        synchronized void append(List<Message> messages) throws IOException {
+            if (deleted) {
+                return;
+            }
+            try (FileOutputStream file = new FileOutputStream(this.file.toFile(), true);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                for (Message message : messages) {
+                    // messages replayed from the journal may already be archived
+                    if (message.getId() <= lastId) {
+                        continue;
+                    }
+                    addToIndex(message.getId(), length + out.size());
+                    RecordCodec.writeMessage(out, message);
+                    lastId = message.getId();
+                }
+                out.flush();
+                // the journal may drop these messages after the next snapshot
+                file.getFD().sync();
+                length += out.size();
+            }
+        }
+
+        synchronized List<Message> read(long afterId, int limit) throws IOException {
+            List<Message> messages = new ArrayList<>();
+            if (deleted || afterId >= lastId || limit <= 0) {
+                return messages;
+            }
+            Map.Entry<Long, Long> start = index.floorEntry(afterId + 1);
+            long offset = start == null ? 0 : start.getValue();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                channel.position(offset);
+                InputStream stream = new BufferedInputStream(Channels.newInputStream(channel));
+                DataInputStream in = new DataInputStream(stream);
+                while (messages.size() < limit) {
+                    Message message;
+                    try {
+                        message = RecordCodec.readMessage(in);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (message.getId() > afterId) {
+                        messages.add(message);
+                    }
+                }
+            }
+            return messages;
+        }
+
+        synchronized void delete() {
+            deleted = true;
+            index.clear();
+            MessageArchive.delete(file);
+        }
+
+        private void addToIndex(long id, long offset) {
+            if (id % INDEX_INTERVAL == 1 || index.isEmpty()) {
+                index.put(id, offset);
+            }
+        }
+
+        private static long recordSize(Message message) {
+            String content = message.getContent();
+            return 28 + 4 + (content == null ? 0 : content.getBytes(StandardCharsets.UTF_8).length);
+        }
+
+    }
+
+}
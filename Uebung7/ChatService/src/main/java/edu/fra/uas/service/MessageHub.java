@@ -0,0 +1,200 @@
+package edu.fra.uas.service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.MessageLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pushes the messages of a room to all Server-Sent Events subscribers.
+ * <p>
+ * Every subscriber has a cursor, the id of the last message sent to it. Publishing
+ * only wakes the subscribers of the room up; a sender thread then reads the messages
+ * after the cursor from the {@link MessageLog} of the room, which only returns the
+ * published prefix of the log. So every subscriber gets the messages in id order and
+ * without gaps, no matter in which order concurrent senders publish, and a client
+ * reconnecting with the id of the last event it has seen continues right after it.
+ * A subscriber that cannot keep up only falls behind, it never slows the room down.
+ */
+@Component
+public class MessageHub {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageHub.class);
+
+    @Value("${chat.push.batch-size:256}")
+    private int batchSize;
+
+    @Value("${chat.push.timeout:0}")
+    private long timeout;
+
+    @Value("${chat.push.sender-threads:4}")
+    private int senderThreads;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private ExecutorService sender;
+
+    public MessageHub() {
+    }
+
+    MessageHub(int batchSize, long timeout, int senderThreads) {
+        this.batchSize = batchSize;
+        this.timeout = timeout;
+        this.senderThreads = senderThreads;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger count = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "message-hub-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (Long roomId : subscribers.keySet()) {
+            close(roomId);
+        }
+        sender.shutdownNow();
+    }
+
+    /**
+     * Registers a new subscriber for the room and sends it all messages after {@code since}.
+     */
+    public SseEmitter subscribe(Long roomId, MessageLog messages, long since) {
+        return subscribe(roomId, messages, since, new SseEmitter(timeout));
+    }
+
+    SseEmitter subscribe(Long roomId, MessageLog messages, long since, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(roomId, messages, since, emitter);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        subscribers.computeIfAbsent(roomId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        // the backlog is read by the same drain as live messages
+        subscriber.wakeUp();
+        log.debug("subscribe: roomId={}, since={}, subscribers={}", roomId, since, getSubscriberCount(roomId));
+        return emitter;
+    }
+
+    /**
+     * Tells the subscribers of the room that its log has new messages. Must be called
+     * after every append, once the appended messages are visible in the log.
+     */
+    public void publish(Long roomId) {
+        Set<Subscriber> roomSubscribers = subscribers.get(roomId);
+        if (roomSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : roomSubscribers) {
+            subscriber.wakeUp();
+        }
+    }
+
+    /**
+     * Completes all subscriptions of a room, e.g. when the room is deleted.
+     */
+    public void close(Long roomId) {
+        Set<Subscriber> roomSubscribers = subscribers.remove(roomId);
+        if (roomSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : roomSubscribers) {
+            subscriber.closed = true;
+            subscriber.emitter.complete();
+        }
+    }
+
+    public int getSubscriberCount(Long roomId) {
+        Set<Subscriber> roomSubscribers = subscribers.get(roomId);
+        return roomSubscribers == null ? 0 : roomSubscribers.size();
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        Set<Subscriber> roomSubscribers = subscribers.get(subscriber.roomId);
+        if (roomSubscribers != null) {
+            roomSubscribers.remove(subscriber);
+        }
+    }
+
+    private class Subscriber {
+
+        private final Long roomId;
+        private final MessageLog messages;
+        private final SseEmitter emitter;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // id of the last message sent, only touched by the one running drain
+        private long cursor;
+        private volatile boolean closed;
+
+        Subscriber(Long roomId, MessageLog messages, long since, SseEmitter emitter) {
+            this.roomId = roomId;
+            this.messages = messages;
+            this.cursor = since;
+            this.emitter = emitter;
+        }
+
+        void wakeUp() {
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (!closed) {
+                // evicted messages are skipped, as by any other reader of the log
+                long from = Math.max(cursor, messages.firstId() - 1);
+                long last = messages.lastId();
+                if (last <= from) {
+                    draining.set(false);
+                    // a publish between the read and the reset found the drain still running
+                    // and did not start a new one, so look again before leaving
+                    if (messages.lastId() <= from || !draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                for (Message message : messages.since(from, batchSize)) {
+                    try {
+                        emitter.send(SseEmitter.event()
+                                .id(String.valueOf(message.getId()))
+                                .name("message")
+                                .data(message, MediaType.APPLICATION_JSON));
+                    } catch (IOException | IllegalStateException e) {
+                        log.debug("drop subscriber of room {} at message {}: {}", roomId, cursor, e.getMessage());
+                        remove(this);
+                        emitter.completeWithError(e);
+                        return;
+                    }
+                    cursor = message.getId();
+                }
+                // the slots of messages lost in a crash are not returned, step over them
+                cursor = Math.max(cursor, Math.min(last, from + batchSize));
+            }
+            draining.set(false);
+        }
+
+    }
+
+}
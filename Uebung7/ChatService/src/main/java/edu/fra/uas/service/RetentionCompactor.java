@@ -0,0 +1,84 @@
+package edu.fra.uas.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.MessageLog;
+import edu.fra.uas.model.RetentionPolicy;
+import edu.fra.uas.model.Room;
+
+/**
+ * Background job that enforces the retention policy of every room.
+ * Messages over the limits are moved from the room's {@link MessageLog}
+ * into the {@link MessageArchive}.
+ */
+@Component
+public class RetentionCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionCompactor.class);
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Value("${chat.retention.max-messages:10000}")
+    private int defaultMaxMessages;
+
+    @Value("${chat.retention.max-age-seconds:0}")
+    private long defaultMaxAgeSeconds;
+
+    @Value("${chat.retention.max-bytes:0}")
+    private long defaultMaxBytes;
+
+    @Scheduled(fixedDelayString = "${chat.retention.interval:60000}")
+    public void compact() {
+        for (Room room : roomService.getAll()) {
+            compact(room);
+        }
+    }
+
+    // only ever called from the scheduler thread, which MessageLog.evict requires
+    void compact(Room room) {
+        RetentionPolicy policy = room.getRetention() != null ? room.getRetention()
+                : new RetentionPolicy(defaultMaxMessages, defaultMaxAgeSeconds, defaultMaxBytes);
+        MessageLog messages = room.getMessages();
+        int count = 0;
+        if (policy.getMaxMessages() > 0) {
+            count = Math.max(count, messages.size() - policy.getMaxMessages());
+        }
+        if (policy.getMaxAgeSeconds() > 0 || policy.getMaxBytes() > 0) {
+            LocalDateTime oldest = LocalDateTime.now().minusSeconds(policy.getMaxAgeSeconds());
+            long bytes = messages.getBytes();
+            int scanned = 0;
+            for (Message message : messages) {
+                boolean tooOld = policy.getMaxAgeSeconds() > 0 && message.getTimeStamp().isBefore(oldest);
+                boolean tooBig = policy.getMaxBytes() > 0 && bytes > policy.getMaxBytes();
+                if (!tooOld && !tooBig) {
+                    break;
+                }
+                bytes -= MessageLog.sizeOf(message);
+                scanned++;
+            }
+            count = Math.max(count, scanned);
+        }
+        if (count <= 0) {
+            return;
+        }
+        // archive before evicting, so a concurrent reader finds every message in one of both tiers
+        List<Message> oldest = messages.since(messages.firstId() - 1, count);
+        messageArchive.append(room.getId(), oldest);
+        messages.evict(oldest.size());
+        log.debug("compact: roomId={}, archived={}, retained={}", room.getId(), oldest.size(), messages.size());
+    }
+
+}
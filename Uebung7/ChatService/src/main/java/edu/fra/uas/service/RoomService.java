@@ -1,38 +1,87 @@
 package edu.fra.uas.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import edu.fra.uas.model.Message;
+import edu.fra.uas.model.MessageLog;
+import edu.fra.uas.model.RetentionPolicy;
 import edu.fra.uas.model.Room;
 import edu.fra.uas.model.RoomDTO;
+import edu.fra.uas.model.SearchHit;
 import edu.fra.uas.model.ChatUser;
+import edu.fra.uas.repository.MessageIndex;
+import edu.fra.uas.repository.RoomJournal;
 import edu.fra.uas.repository.RoomRepository;
+import edu.fra.uas.repository.RoomSummaryRepository;
+import jakarta.annotation.PostConstruct;
 
 @Service
 public class RoomService {
 
     private static final Logger log = LoggerFactory.getLogger(RoomService.class);
 
+    private static final int ARCHIVE_PAGE_SIZE = 1000;
+
     @Autowired
     private RoomRepository roomRepository;
 
-    private long nextRoomId = 1;
+    @Autowired
+    private MessageHub messageHub;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private RoomJournal roomJournal;
+
+    @Autowired
+    private MessageIndex messageIndex;
+
+    @Autowired
+    private RoomSummaryRepository roomSummaryRepository;
 
-    private long nextMessageId = 1;
+    // every change is applied in memory first and journaled afterwards, see RoomJournal.snapshot
+    @PostConstruct
+    public void recover() throws IOException {
+        Map<Long, Room> rooms = new HashMap<>();
+        roomJournal.recover(rooms);
+        for (Room room : rooms.values()) {
+            roomRepository.put(room.getId(), room);
+            roomSummaryRepository.put(room);
+            // the log only has the messages not evicted yet, the older ones are searchable from the archive
+            messageIndex.recover(room, afterId -> messageArchive.read(room.getId(), afterId, ARCHIVE_PAGE_SIZE));
+            messageIndex.update(room);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${chat.journal.snapshot-interval:300000}",
+               fixedDelayString = "${chat.journal.snapshot-interval:300000}")
+    public void snapshot() throws IOException {
+        log.info("snapshot");
+        roomJournal.snapshot(roomRepository::values);
+    }
 
     public Room create(String name){
         log.info("createRoom: ", name);
         Room room = new Room();
-        room.setId(nextRoomId++);
+        room.setId(roomRepository.nextId());
         room.setName(name);
         roomRepository.put(room.getId(), room);
+        roomSummaryRepository.put(room);
+        roomJournal.awaitDurable(roomJournal.roomPut(room));
         return room;
     }
 
@@ -49,37 +98,51 @@ public class RoomService {
     public Room update(Room room){
         log.info("update room: {}", room);
         roomRepository.put(room.getId(), room);
+        roomSummaryRepository.put(room);
+        roomJournal.awaitDurable(roomJournal.roomPut(room));
         return room;
     }
 
     public Room delete(Long id){
         log.info("delete room: {}", id);
-        return roomRepository.remove(id);
+        Room room = roomRepository.remove(id);
+        roomSummaryRepository.remove(id);
+        if (room != null) {
+            roomJournal.awaitDurable(roomJournal.roomDeleted(id));
+        }
+        messageHub.close(id);
+        messageIndex.remove(id);
+        messageArchive.delete(id);
+        return room;
     }
 
     public List<RoomDTO> getAllDTO() {
         log.info("getAllRoomsDTO");
-        Iterable<Room> roomIter = getAll();
-        List<Room> roomsOrigList = new ArrayList<>();
-        for (Room room : roomIter) {
-            roomsOrigList.add(room);
-        }
-        List<RoomDTO> roomsTargetList = new ArrayList<>();
-        for (Room source : roomsOrigList) {
-            RoomDTO target = new RoomDTO();
-            BeanUtils.copyProperties(source, target);
-            roomsTargetList.add(target);
-        }
-        return roomsTargetList;
+        return roomSummaryRepository.values();
+    }
+
+    public RoomDTO getSummaryById(Long id) {
+        log.info("get room summary by id: {}", id);
+        return roomSummaryRepository.get(id);
     }
 
     public Room addUser(Long roomId, ChatUser user) {
         log.info("addUser: roomId={}, user={}", roomId, user);
         Room room = roomRepository.get(roomId);
-        if(room.getUsers().get(user.getId()) != null) {
-            return room;
+        // the lock of the room's stripe keeps joins and leaves of a room in the same order
+        // in memory and journal; the flush is awaited after unlocking, it may take a while
+        long position = 0;
+        Lock lock = roomRepository.lock(roomId);
+        lock.lock();
+        try {
+            if (room.getUsers().putIfAbsent(user.getId(), user) == null) {
+                roomSummaryRepository.update(room);
+                position = roomJournal.userJoined(roomId, user);
+            }
+        } finally {
+            lock.unlock();
         }
-        room.getUsers().put(user.getId(), user);
+        roomJournal.awaitDurable(position);
         return room;
     }
 
@@ -92,31 +155,126 @@ public class RoomService {
     public Room removeUser(Long roomId, Long userId) {
         log.info("removeUser: roomId={}, userId={}", roomId, userId);
         Room room = roomRepository.get(roomId);
-        if(room.getUsers().get(userId) == null) {
-            return room;
+        long position = 0;
+        Lock lock = roomRepository.lock(roomId);
+        lock.lock();
+        try {
+            if (room.getUsers().remove(userId) != null) {
+                roomSummaryRepository.update(room);
+                position = roomJournal.userLeft(roomId, userId);
+            }
+        } finally {
+            lock.unlock();
         }
-        room.getUsers().remove(userId);
+        roomJournal.awaitDurable(position);
         return room;
     }
 
     public Message sendMessage(Room room, Long userId, String text) {
         log.info("sendMessage: roomId={}, userId={}, text={}", room.getId(), userId, text);
         Message message = new Message();
-        message.setId(nextMessageId++);
         message.setContent(text);
         message.setUserId(userId);
         message.setTimeStamp(java.time.LocalDateTime.now());
-        room.getMessages().put(message.getId(), message);
+        room.getMessages().append(message);
+        roomJournal.awaitDurable(roomJournal.message(room.getId(), message));
+        roomSummaryRepository.update(room);
+        messageIndex.update(room);
+        messageHub.publish(room.getId());
         return message;
     }
 
+    /**
+     * Sends the texts as consecutive messages of the user; they get one range of ids
+     * and one journal record, subscribers receive them in order.
+     */
+    public List<Message> sendMessages(Room room, Long userId, List<String> texts) {
+        log.info("sendMessages: roomId={}, userId={}, count={}", room.getId(), userId, texts.size());
+        java.time.LocalDateTime now = java.time.LocalDateTime.now();
+        List<Message> messages = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            Message message = new Message();
+            message.setContent(text);
+            message.setUserId(userId);
+            message.setTimeStamp(now);
+            messages.add(message);
+        }
+        room.getMessages().appendAll(messages);
+        roomJournal.awaitDurable(roomJournal.messages(room.getId(), messages));
+        roomSummaryRepository.update(room);
+        messageIndex.update(room);
+        messageHub.publish(room.getId());
+        return messages;
+    }
+
     public List<Message> getMessages(Room room) {
         log.info("getMessages: roomId={}", room.getId());
+        return room.getMessages().values();
+    }
+
+    public List<Message> getMessages(Room room, long since, int limit) {
+        log.info("getMessages: roomId={}, since={}, limit={}", room.getId(), since, limit);
+        MessageLog messages = room.getMessages();
+        if (since + 1 >= messages.firstId()) {
+            return messages.since(since, limit);
+        }
+        // the page starts in the evicted history, continue in memory if it is not full yet
+        List<Message> page = messageArchive.read(room.getId(), since, limit);
+        if (page.size() < limit) {
+            long cursor = page.isEmpty() ? since : page.get(page.size() - 1).getId();
+            page.addAll(messages.since(Math.max(cursor, messages.firstId() - 1), limit - page.size()));
+        }
+        return page;
+    }
+
+    public List<Message> search(Room room, String text, int limit) {
+        log.info("search: roomId={}, text={}, limit={}", room.getId(), text, limit);
+        MessageIndex.Query query = MessageIndex.Query.parse(text);
         List<Message> messages = new ArrayList<>();
-        for (Message message : room.getMessages().values()) {
-            messages.add(message);
+        for (Long id : messageIndex.search(room.getId(), query, limit, id -> getMessage(room, id))) {
+            Message message = getMessage(room, id);
+            if (message != null) {
+                messages.add(message);
+            }
         }
         return messages;
     }
 
+    public List<SearchHit> searchAll(String text, int limit) {
+        log.info("searchAll: text={}, limit={}", text, limit);
+        List<SearchHit> hits = new ArrayList<>();
+        for (Room room : roomRepository.values()) {
+            for (Message message : search(room, text, limit)) {
+                hits.add(new SearchHit(room.getId(), message));
+            }
+        }
+        // every room delivers its newest hits, keep the newest of all
+        hits.sort(Comparator.comparing((SearchHit hit) -> hit.getMessage().getTimeStamp()).reversed());
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    private Message getMessage(Room room, long id) {
+        Message message = room.getMessages().get(id);
+        if (message == null && id < room.getMessages().firstId()) {
+            List<Message> archived = messageArchive.read(room.getId(), id - 1, 1);
+            if (!archived.isEmpty() && archived.get(0).getId() == id) {
+                message = archived.get(0);
+            }
+        }
+        return message;
+    }
+
+    public Room setRetention(Long roomId, RetentionPolicy retention) {
+        log.info("setRetention: roomId={}, retention={}", roomId, retention);
+        Room room = roomRepository.get(roomId);
+        room.setRetention(retention);
+        roomJournal.awaitDurable(roomJournal.retention(roomId, retention));
+        return room;
+    }
+
+    public SseEmitter subscribe(Room room, long since) {
+        log.info("subscribe: roomId={}, since={}", room.getId(), since);
+        return messageHub.subscribe(room.getId(), room.getMessages(), since);
+    }
+
 }
@@ -0,0 +1,172 @@
+package edu.fra.uas.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class MessageLogTest {
+
+    private static final int WRITERS = 200;
+    private static final int MESSAGES_PER_WRITER = 500;
+
+    @Test
+    void appendAssignsConsecutiveIds() {
+        MessageLog messages = new MessageLog();
+        for (int i = 1; i <= 3000; i++) {
+            Message message = messages.append(new Message(null, "text " + i, 1L, LocalDateTime.now()));
+            assertEquals(i, message.getId());
+        }
+        assertEquals(3000, messages.size());
+        assertEquals(3000, messages.lastId());
+        assertEquals("text 1500", messages.get(1500).getContent());
+        assertNull(messages.get(0));
+        assertNull(messages.get(3001));
+    }
+
+    @Test
+    void evictRemovesOldestMessages() {
+        MessageLog messages = new MessageLog();
+        for (int i = 1; i <= 2500; i++) {
+            messages.append(new Message(null, "text " + i, 1L, LocalDateTime.now()));
+        }
+        long bytes = messages.getBytes();
+        List<Message> evicted = messages.evict(2000);
+        assertEquals(2000, evicted.size());
+        assertEquals(2000, evicted.get(evicted.size() - 1).getId());
+        assertEquals(500, messages.size());
+        assertEquals(2001, messages.firstId());
+        assertTrue(messages.getBytes() < bytes);
+        assertNull(messages.get(2000));
+        assertEquals(2001, messages.values().get(0).getId());
+        assertEquals(2001, messages.since(10, 1).get(0).getId());
+        assertEquals(2501, messages.append(new Message(null, "next", 1L, LocalDateTime.now())).getId());
+    }
+
+    @Test
+    void evictedChunksAreReusedByNewMessages() {
+        // far beyond the ids a log without eviction could ever hold in memory
+        MessageLog messages = new MessageLog(1L << 40);
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 3000; i++) {
+                messages.append(new Message(null, "text " + i, 1L, LocalDateTime.now()));
+            }
+            messages.evict(messages.size() - 1000);
+            assertEquals(1000, messages.size());
+        }
+        long lastId = (1L << 40) + 50 * 3000 - 1;
+        assertEquals(lastId, messages.lastId());
+        assertEquals("text 2999", messages.get(lastId).getContent());
+        assertEquals(lastId - 999, messages.values().get(0).getId());
+        assertNull(messages.get(lastId - 1000));
+    }
+
+    @Test
+    void appendAllPublishesTheBatchAtOnce() throws Exception {
+        MessageLog messages = new MessageLog();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < 8; w++) {
+            final long userId = w;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int b = 0; b < 200; b++) {
+                    List<Message> batch = new ArrayList<>();
+                    for (int i = 0; i < 10; i++) {
+                        batch.add(new Message(null, userId + ":" + b + ":" + i, userId, LocalDateTime.now()));
+                    }
+                    messages.appendAll(batch);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        // a reader never sees a part of a batch: every visible prefix ends on a batch boundary
+        while (messages.size() < 8 * 200 * 10) {
+            List<Message> snapshot = messages.values();
+            if (!snapshot.isEmpty()) {
+                assertTrue(snapshot.get(snapshot.size() - 1).getContent().endsWith(":9"));
+            }
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        long expectedId = 1;
+        for (Message message : messages) {
+            assertEquals(expectedId++, message.getId());
+        }
+    }
+
+    @Test
+    void concurrentAppendsLoseNoMessage() throws Exception {
+        MessageLog messages = new MessageLog();
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // reader checks while writing that the visible prefix never has a gap
+        Future<Boolean> reader = executor.submit(() -> {
+            start.await();
+            long lastSeen = 0;
+            while (messages.size() < WRITERS * MESSAGES_PER_WRITER) {
+                List<Message> snapshot = messages.values();
+                for (int i = 0; i < snapshot.size(); i++) {
+                    if (snapshot.get(i).getId() != i + 1) {
+                        return false;
+                    }
+                }
+                if (snapshot.size() < lastSeen) {
+                    return false;
+                }
+                lastSeen = snapshot.size();
+            }
+            return true;
+        });
+
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final long userId = w;
+            writers.add(executor.submit(() -> {
+                start.await();
+                long previousId = 0;
+                for (int i = 0; i < MESSAGES_PER_WRITER; i++) {
+                    Message message = messages.append(new Message(null, userId + ":" + i, userId, LocalDateTime.now()));
+                    if (message.getId() <= previousId) {
+                        throw new IllegalStateException("ids are not monotonic for writer " + userId);
+                    }
+                    previousId = message.getId();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        assertTrue(reader.get(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(WRITERS * MESSAGES_PER_WRITER, messages.size());
+        Set<String> contents = new HashSet<>();
+        long expectedId = 1;
+        for (Message message : messages) {
+            assertEquals(expectedId++, message.getId());
+            contents.add(message.getContent());
+        }
+        assertEquals(WRITERS * MESSAGES_PER_WRITER, contents.size());
+    }
+
+}
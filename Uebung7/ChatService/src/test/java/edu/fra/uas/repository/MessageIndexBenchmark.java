@@ -0,0 +1,81 @@
+package edu.fra.uas.repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+
+/**
+ * Compares indexed search with a linear scan over the messages of one room.
+ * Run with {@code java -cp ... edu.fra.uas.repository.MessageIndexBenchmark}.
+ */
+public class MessageIndexBenchmark {
+
+    private static final String[] WORDS = {
+        "hello", "world", "chat", "room", "message", "spring", "boot", "java", "server", "client",
+        "angular", "rest", "api", "user", "service", "token", "stream", "index", "search", "query"
+    };
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        for (int size : new int[] { 10_000, 100_000, 1_000_000 }) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) {
+        Random random = new Random(42);
+        Room room = new Room();
+        room.setId(1L);
+        MessageIndex index = new MessageIndex();
+        for (int i = 0; i < size; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 8; w++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(500)).append(' ');
+            }
+            room.getMessages().append(new Message(null, text.toString(), 1L, LocalDateTime.now()));
+        }
+        long start = System.nanoTime();
+        index.update(room);
+        long indexing = System.nanoTime() - start;
+
+        String[] queries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = WORDS[random.nextInt(WORDS.length)] + random.nextInt(500);
+        }
+
+        int found = 0;
+        start = System.nanoTime();
+        for (String query : queries) {
+            found += index.search(room.getId(), MessageIndex.Query.parse(query), 20, id -> room.getMessages().get(id)).size();
+        }
+        long indexed = System.nanoTime() - start;
+
+        int scanned = 0;
+        start = System.nanoTime();
+        for (String query : queries) {
+            scanned += linearScan(room, query, 20).size();
+        }
+        long linear = System.nanoTime() - start;
+
+        System.out.printf("%,9d messages: indexing %,8d ms, indexed %,10.1f us/query, linear scan %,10.1f us/query (%d/%d hits)%n",
+                size, indexing / 1_000_000, indexed / 1000.0 / QUERIES, linear / 1000.0 / QUERIES, found, scanned);
+    }
+
+    // what a search without the index has to do: tokenize every message, newest first
+    private static List<Message> linearScan(Room room, String term, int limit) {
+        List<Message> messages = room.getMessages().values();
+        List<Message> hits = new ArrayList<>();
+        for (int i = messages.size() - 1; i >= 0 && hits.size() < limit; i--) {
+            if (MessageIndex.tokenize(messages.get(i).getContent()).contains(term)) {
+                hits.add(messages.get(i));
+            }
+        }
+        return hits;
+    }
+
+}
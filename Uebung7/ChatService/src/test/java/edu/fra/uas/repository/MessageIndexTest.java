@@ -0,0 +1,107 @@
+package edu.fra.uas.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+
+class MessageIndexTest {
+
+    private MessageIndex index;
+    private Room room;
+
+    @BeforeEach
+    void setUp() {
+        index = new MessageIndex();
+        room = new Room();
+        room.setId(1L);
+        send("Hello World");
+        send("hello there, world peace");
+        send("Chatting about the world");
+        send("nothing to see");
+        send("WORLD hello");
+    }
+
+    @Test
+    void findsTermsNewestFirst() {
+        assertEquals(List.of(5L, 2L, 1L), search("hello world"));
+        assertEquals(List.of(5L, 3L, 2L, 1L), search("World"));
+        assertEquals(List.of(5L), search("world", 1));
+    }
+
+    @Test
+    void findsPrefixes() {
+        assertEquals(List.of(3L), search("chat*"));
+        assertEquals(List.of(5L, 2L, 1L), search("hel* wor*"));
+    }
+
+    @Test
+    void verifiesPhrases() {
+        assertEquals(List.of(1L), search("\"hello world\""));
+        assertEquals(List.of(5L), search("\"world hello\""));
+        assertTrue(search("\"peace world\"").isEmpty());
+    }
+
+    @Test
+    void indexesNewMessagesIncrementally() {
+        assertTrue(search("unicorn").isEmpty());
+        send("a unicorn appears");
+        assertEquals(List.of(6L), search("unicorn"));
+    }
+
+    @Test
+    void walksPostingsNewestFirstAcrossBlocks() {
+        for (int i = 6; i <= 1000; i++) {
+            send((i % 2 == 0 ? "even" : "odd") + (i % 3 == 0 ? " three" : "") + (i % 10 == 0 ? " \"ten thousand\"" : ""));
+        }
+        assertEquals(List.of(996L, 990L, 984L, 978L, 972L), search("even three", 5));
+        assertEquals(List.of(996L, 990L, 984L), search("thr* ev*", 3));
+        assertEquals(List.of(990L, 960L, 930L), search("three \"ten thousand\"", 3));
+        assertEquals(List.of(1000L, 990L), search("\"ten thousand\"", 2));
+    }
+
+    @Test
+    void verifiesPhrasesUntilEnoughMatch() {
+        for (int i = 6; i <= 500; i++) {
+            send(i % 100 == 0 ? "world hello" : "hello world");
+        }
+        // the newest candidates of the terms all fail the phrase
+        assertEquals(List.of(500L, 400L, 300L), search("\"world hello\"", 3));
+    }
+
+    @Test
+    void dropsMessagesOlderThanTheNewestMaxMessages() {
+        index = new MessageIndex(8);
+        for (int i = 6; i <= 40; i++) {
+            send("message " + i);
+        }
+        List<Long> hits = search("message", 100);
+        for (long id = 33; id <= 40; id++) {
+            assertTrue(hits.contains(id));
+        }
+        // dropped in steps of a quarter of the maximum
+        assertTrue(hits.stream().allMatch(id -> id > 30));
+        assertTrue(search("hello").isEmpty());
+    }
+
+    private void send(String text) {
+        room.getMessages().append(new Message(null, text, 1L, LocalDateTime.now()));
+        index.update(room);
+    }
+
+    private List<Long> search(String text) {
+        return search(text, 10);
+    }
+
+    private List<Long> search(String text, int limit) {
+        return index.search(room.getId(), MessageIndex.Query.parse(text), limit, id -> room.getMessages().get(id));
+    }
+
+}
@@ -0,0 +1,60 @@
+package edu.fra.uas.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+
+/**
+ * Measures journal appends per second for every fsync policy.
+ * Run with {@code java -cp ... edu.fra.uas.repository.RoomJournalBenchmark [threads] [appends per thread]}.
+ */
+public class RoomJournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int appends = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        for (RoomJournal.FsyncPolicy policy : RoomJournal.FsyncPolicy.values()) {
+            double rate = run(policy, threads, appends);
+            System.out.printf("%-6s %3d threads: %,12.0f appends/s%n", policy, threads, rate);
+        }
+    }
+
+    private static double run(RoomJournal.FsyncPolicy policy, int threads, int appends) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("journal-benchmark");
+        RoomJournal journal = new RoomJournal(directory, 64 * 1024 * 1024, policy);
+        journal.recover(new HashMap<>());
+        Room room = new Room();
+        room.setId(1L);
+        room.setName("benchmark");
+        journal.roomPut(room);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < appends; i++) {
+                    Message message = room.getMessages().append(new Message(null, "benchmark message " + i, 1L, LocalDateTime.now()));
+                    journal.awaitDurable(journal.message(room.getId(), message));
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        journal.close();
+        return (double) threads * appends / (elapsed / 1_000_000_000.0);
+    }
+
+}
@@ -0,0 +1,177 @@
+package edu.fra.uas.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.fra.uas.model.ChatUser;
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+
+class RoomJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRoomsUsersAndMessages() throws IOException {
+        Map<Long, Room> rooms = new HashMap<>();
+        RoomJournal journal = open(rooms);
+        Room room = createRoom(rooms, journal, 1L, "room1");
+        createRoom(rooms, journal, 2L, "room2");
+        ChatUser user = new ChatUser(7L, "user7");
+        room.getUsers().put(user.getId(), user);
+        journal.userJoined(room.getId(), user);
+        // enough messages to roll over several segments
+        for (int i = 1; i <= 200; i++) {
+            sendMessage(room, journal, "message " + i);
+        }
+        rooms.remove(2L);
+        journal.roomDeleted(2L);
+        journal.close();
+
+        Map<Long, Room> recovered = new HashMap<>();
+        open(recovered).close();
+        assertEquals(1, recovered.size());
+        Room recoveredRoom = recovered.get(1L);
+        assertEquals("room1", recoveredRoom.getName());
+        assertEquals("user7", recoveredRoom.getUsers().get(7L).getName());
+        assertEquals(200, recoveredRoom.getMessages().size());
+        assertEquals("message 200", recoveredRoom.getMessages().get(200).getContent());
+    }
+
+    @Test
+    void replaysMessageBatches() throws IOException {
+        Map<Long, Room> rooms = new HashMap<>();
+        RoomJournal journal = open(rooms);
+        Room room = createRoom(rooms, journal, 1L, "room1");
+        sendMessage(room, journal, "single");
+        List<Message> batch = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            batch.add(new Message(null, "batched " + i, 1L, LocalDateTime.now()));
+        }
+        room.getMessages().appendAll(batch);
+        journal.messages(room.getId(), batch);
+        journal.close();
+
+        Map<Long, Room> recovered = new HashMap<>();
+        open(recovered).close();
+        assertEquals(21, recovered.get(1L).getMessages().size());
+        assertEquals("batched 20", recovered.get(1L).getMessages().get(21).getContent());
+    }
+
+    @Test
+    void snapshotDropsOldSegmentsAndKeepsState() throws IOException {
+        Map<Long, Room> rooms = new HashMap<>();
+        RoomJournal journal = open(rooms);
+        Room room = createRoom(rooms, journal, 1L, "room1");
+        for (int i = 1; i <= 200; i++) {
+            sendMessage(room, journal, "message " + i);
+        }
+        assertTrue(countSegments() > 1);
+        journal.snapshot(rooms::values);
+        assertEquals(1, countSegments());
+        for (int i = 201; i <= 210; i++) {
+            sendMessage(room, journal, "message " + i);
+        }
+        journal.close();
+
+        Map<Long, Room> recovered = new HashMap<>();
+        RoomJournal reopened = open(recovered);
+        assertEquals(210, recovered.get(1L).getMessages().size());
+        // the recovered room continues with the next id
+        Message next = sendMessage(recovered.get(1L), reopened, "message 211");
+        assertEquals(211, next.getId());
+        reopened.close();
+    }
+
+    @Test
+    void roomsCreatedAndDeletedDuringTheSnapshotAreRecovered() throws IOException {
+        Map<Long, Room> rooms = new HashMap<>();
+        RoomJournal journal = open(rooms);
+        createRoom(rooms, journal, 1L, "room1");
+        createRoom(rooms, journal, 2L, "room2");
+        journal.snapshot(() -> {
+            // changed after the snapshot position was read, before the rooms are copied
+            createRoom(rooms, journal, 3L, "room3");
+            rooms.remove(2L);
+            journal.roomDeleted(2L);
+            return new ArrayList<>(rooms.values());
+        });
+        journal.close();
+
+        Map<Long, Room> recovered = new HashMap<>();
+        open(recovered).close();
+        assertEquals(List.of(1L, 3L), recovered.keySet().stream().sorted().toList());
+    }
+
+    @Test
+    void ignoresTornRecordAtTheEnd() throws IOException {
+        Map<Long, Room> rooms = new HashMap<>();
+        RoomJournal journal = open(rooms);
+        Room room = createRoom(rooms, journal, 1L, "room1");
+        sendMessage(room, journal, "complete");
+        long position = journal.position();
+        journal.close();
+
+        // a record header whose payload never made it to disk
+        Path segment;
+        try (var files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".journal")).findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[(int) position] = 0;
+        bytes[(int) position + 3] = 42;
+        bytes[(int) position + 4] = 1;
+        Files.write(segment, bytes);
+
+        Map<Long, Room> recovered = new HashMap<>();
+        RoomJournal reopened = open(recovered);
+        assertEquals(1, recovered.get(1L).getMessages().size());
+        assertNull(recovered.get(1L).getMessages().get(2));
+        assertEquals(position, reopened.position());
+        reopened.close();
+    }
+
+    private RoomJournal open(Map<Long, Room> rooms) throws IOException {
+        RoomJournal journal = new RoomJournal(directory, SEGMENT_SIZE, RoomJournal.FsyncPolicy.BATCH);
+        journal.recover(rooms);
+        return journal;
+    }
+
+    private static Room createRoom(Map<Long, Room> rooms, RoomJournal journal, Long id, String name) {
+        Room room = new Room();
+        room.setId(id);
+        room.setName(name);
+        rooms.put(id, room);
+        journal.roomPut(room);
+        return room;
+    }
+
+    private static Message sendMessage(Room room, RoomJournal journal, String text) {
+        Message message = room.getMessages().append(new Message(null, text, 7L, LocalDateTime.now()));
+        journal.message(room.getId(), message);
+        return message;
+    }
+
+    private long countSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".journal")).count();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package edu.fra.uas.repository;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+import edu.fra.uas.model.ChatUser;
+import edu.fra.uas.model.Room;
+
+/**
+ * Join/leave throughput with 1 to 64 threads, spread over many rooms and concentrated on one room.
+ * Run with {@code java -cp ... edu.fra.uas.repository.RoomRepositoryBenchmark}.
+ */
+public class RoomRepositoryBenchmark {
+
+    private static final int ROOMS = 256;
+    private static final int OPERATIONS = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            double spread = run(threads, ROOMS);
+            double single = run(threads, 1);
+            System.out.printf("%2d threads: %,12.0f ops/s over %d rooms, %,12.0f ops/s in one room%n", threads, spread, ROOMS, single);
+        }
+    }
+
+    private static double run(int threads, int rooms) throws InterruptedException {
+        RoomRepository repository = new RoomRepository(16);
+        for (int r = 0; r < rooms; r++) {
+            Room room = new Room();
+            room.setId(repository.nextId());
+            repository.put(room.getId(), room);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        int perThread = OPERATIONS / threads;
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    long roomId = 1 + (offset + i) % rooms;
+                    long userId = i % 100;
+                    Room room = repository.get(roomId);
+                    Lock lock = repository.lock(roomId);
+                    lock.lock();
+                    try {
+                        if (room.getUsers().putIfAbsent(userId, new ChatUser(userId, "user")) != null) {
+                            room.getUsers().remove(userId);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return (double) perThread * threads / (elapsed / 1_000_000_000.0);
+    }
+
+}
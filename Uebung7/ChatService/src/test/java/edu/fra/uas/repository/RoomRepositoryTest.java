@@ -0,0 +1,99 @@
+package edu.fra.uas.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.jupiter.api.Test;
+
+import edu.fra.uas.model.ChatUser;
+import edu.fra.uas.model.Room;
+
+class RoomRepositoryTest {
+
+    private static final int THREADS = 32;
+
+    @Test
+    void concurrentCreatesGetUniqueIds() throws Exception {
+        RoomRepository repository = new RoomRepository(8);
+        List<Long> ids = runConcurrently(() -> {
+            List<Long> created = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Room room = new Room();
+                room.setId(repository.nextId());
+                repository.put(room.getId(), room);
+                created.add(room.getId());
+            }
+            return created;
+        });
+        assertEquals(THREADS * 8, new HashSet<>(ids).size());
+        assertEquals(THREADS * 8, repository.size());
+        assertEquals(THREADS * 8, repository.values().size());
+    }
+
+    @Test
+    void recoveredIdsAreNotAllocatedAgain() {
+        RoomRepository repository = new RoomRepository(4);
+        Room room = new Room();
+        room.setId(41L);
+        repository.put(room.getId(), room);
+        assertEquals(42L, repository.nextId());
+        repository.remove(41L);
+        assertNull(repository.get(41L));
+    }
+
+    @Test
+    void joinAndLeaveStormKeepsMembershipConsistent() throws Exception {
+        RoomRepository repository = new RoomRepository(16);
+        Room room = new Room();
+        room.setId(repository.nextId());
+        repository.put(room.getId(), room);
+        AtomicInteger joins = new AtomicInteger();
+        AtomicInteger leaves = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < 2000; i++) {
+                long userId = i % 50;
+                Lock lock = repository.lock(room.getId());
+                lock.lock();
+                try {
+                    if (i % 3 == 0) {
+                        if (room.getUsers().remove(userId) != null) {
+                            leaves.incrementAndGet();
+                        }
+                    } else if (room.getUsers().putIfAbsent(userId, new ChatUser(userId, "user" + userId)) == null) {
+                        joins.incrementAndGet();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return List.<Long>of();
+        });
+        // every successful join is either still a member or was counted as leave
+        assertEquals(joins.get() - leaves.get(), room.getUsers().size());
+    }
+
+    private static List<Long> runConcurrently(Callable<List<Long>> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(task));
+        }
+        List<Long> results = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            results.addAll(future.get());
+        }
+        executor.shutdown();
+        return results;
+    }
+
+}
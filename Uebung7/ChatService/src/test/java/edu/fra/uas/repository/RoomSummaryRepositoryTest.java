@@ -0,0 +1,61 @@
+package edu.fra.uas.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import edu.fra.uas.model.ChatUser;
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+import edu.fra.uas.model.RoomDTO;
+
+class RoomSummaryRepositoryTest {
+
+    @Test
+    void summaryFollowsMembersAndMessages() {
+        RoomSummaryRepository summaries = new RoomSummaryRepository();
+        Room room = new Room();
+        room.setId(2L);
+        room.setName("Lobby");
+        summaries.put(room);
+
+        room.getUsers().put(1L, new ChatUser(1L, "Alice"));
+        LocalDateTime time = LocalDateTime.now();
+        room.getMessages().append(new Message(null, "hello", 1L, time));
+        summaries.update(room);
+
+        RoomDTO summary = summaries.get(2L);
+        assertEquals("Lobby", summary.getName());
+        assertEquals(1, summary.getMemberCount());
+        assertEquals(1, summary.getLastMessageId());
+        assertEquals(time, summary.getLastMessageTime());
+
+        // the time of the newest message survives its eviction
+        room.getMessages().evict(1);
+        summaries.update(room);
+        assertEquals(time, summaries.get(2L).getLastMessageTime());
+    }
+
+    @Test
+    void listIsSortedAndDeletedRoomsStayDeleted() {
+        RoomSummaryRepository summaries = new RoomSummaryRepository();
+        for (long id : new long[] {3, 1, 2}) {
+            Room room = new Room();
+            room.setId(id);
+            summaries.put(room);
+        }
+        assertEquals(1, summaries.values().get(0).getId());
+        assertEquals(3, summaries.values().get(2).getId());
+
+        Room deleted = new Room();
+        deleted.setId(2L);
+        summaries.remove(2L);
+        summaries.update(deleted);
+        assertNull(summaries.get(2L));
+        assertEquals(2, summaries.values().size());
+    }
+
+}
@@ -0,0 +1,40 @@
+package edu.fra.uas.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ApiKeyRegistryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keysCanBeRotatedWithoutRestart() throws IOException {
+        Path file = directory.resolve("api-keys");
+        Files.writeString(file, "# keys of the bots\nkey-one\nkey-two\n");
+        ApiKeyRegistry registry = new ApiKeyRegistry("plainTextToken", file.toString());
+        assertEquals(3, registry.size());
+        assertTrue(registry.isValid("plainTextToken"));
+        assertTrue(registry.isValid("key-two"));
+        assertFalse(registry.isValid("key-three"));
+        assertFalse(registry.isValid(null));
+
+        // revoke key-one, add key-three
+        Files.writeString(file, "key-two\nkey-three\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        registry.reloadIfChanged();
+        assertFalse(registry.isValid("key-one"));
+        assertTrue(registry.isValid("key-three"));
+        assertTrue(registry.isValid("plainTextToken"));
+    }
+
+}
@@ -0,0 +1,88 @@
+package edu.fra.uas.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Enumeration;
+
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+/**
+ * Time per request spent in the AuthenticationFilter, for API keys and Basic auth.
+ * The old path (header log built eagerly, {@code String.equals}) is measured for comparison.
+ * Run with {@code java -cp ... edu.fra.uas.security.AuthenticationBenchmark}.
+ */
+public class AuthenticationBenchmark {
+
+    private static final int ITERATIONS = 500_000;
+
+    public static void main(String[] args) throws Exception {
+        PasswordEncoder passwordEncoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(User.withUsername("user")
+                .password(passwordEncoder.encode("plainTextPassword")).roles("USER").build());
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(users);
+        provider.setPasswordEncoder(passwordEncoder);
+        ApiKeyRegistry registry = new ApiKeyRegistry("plainTextToken", "");
+        BasicCredentialCache cache = new BasicCredentialCache(new ProviderManager(provider), 300_000, 10_000);
+        AuthenticationFilter filter = new AuthenticationFilter(new AuthenticationService("X-API-KEY", registry, cache));
+        BasicCredentialCache noCache = new BasicCredentialCache(new ProviderManager(provider), 0, 10_000);
+        AuthenticationFilter uncachedFilter = new AuthenticationFilter(new AuthenticationService("X-API-KEY", registry, noCache));
+
+        MockHttpServletRequest apiKeyRequest = request();
+        apiKeyRequest.addHeader("X-API-KEY", "plainTextToken");
+        MockHttpServletRequest basicRequest = request();
+        basicRequest.addHeader("Authorization", "Basic "
+                + Base64.getEncoder().encodeToString("user:plainTextPassword".getBytes(StandardCharsets.UTF_8)));
+
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("round %d%n", round + 1);
+            report("old api key check", ITERATIONS, () -> legacy(apiKeyRequest));
+            report("api key", ITERATIONS, () -> filter.doFilter(apiKeyRequest, new MockHttpServletResponse(), new MockFilterChain()));
+            report("basic, cached", ITERATIONS, () -> filter.doFilter(basicRequest, new MockHttpServletResponse(), new MockFilterChain()));
+            report("basic, hashed", 50, () -> uncachedFilter.doFilter(basicRequest, new MockHttpServletResponse(), new MockFilterChain()));
+        }
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rooms");
+        request.addHeader("Accept", "application/json");
+        request.addHeader("User-Agent", "benchmark");
+        request.addHeader("Host", "localhost:9090");
+        return request;
+    }
+
+    // what AuthenticationService did per request before
+    private static boolean legacy(MockHttpServletRequest request) {
+        Enumeration<String> headerNames = request.getHeaderNames();
+        String inReq = "\n--> Incomming request:\n" + request.getMethod() + " " + request.getRequestURI() + "\n";
+        while (headerNames.hasMoreElements()) {
+            String headerName = headerNames.nextElement();
+            inReq = inReq + headerName + " = " + request.getHeader(headerName) + "\n";
+        }
+        return inReq.length() > 0 && "plainTextToken".equals(request.getHeader("X-API-KEY"));
+    }
+
+    private static void report(String name, int iterations, Task task) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+            SecurityContextHolder.clearContext();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  %-20s %,12.0f ns/request%n", name, (double) elapsed / iterations);
+    }
+
+    private interface Task {
+        Object run() throws Exception;
+    }
+
+}
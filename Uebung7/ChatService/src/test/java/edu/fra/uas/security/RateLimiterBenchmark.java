@@ -0,0 +1,89 @@
+package edu.fra.uas.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Overhead of {@link RateLimiter#tryAcquire} per request: flat out with one and with
+ * many threads, and paced at 50,000 requests per second spread over the threads.
+ * Run with {@code java -cp ... edu.fra.uas.security.RateLimiterBenchmark}.
+ */
+public class RateLimiterBenchmark {
+
+    private static final String[] PATTERNS = {
+        "/rooms", "/rooms/{id}", "/rooms/{id}/users/{userId}/messages", "/rooms/{id}/messages"
+    };
+    private static final int CLIENTS = 1000;
+    private static final int THREADS = 8;
+
+    public static void main(String[] args) throws InterruptedException {
+        RateLimiter limiter = new RateLimiter("1000000/s", "POST /rooms/{id}/users/{userId}/messages=20/s:40", "", System::nanoTime);
+        String[] clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "key:" + Integer.toHexString(0x10000000 + i);
+        }
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("round %d%n", round + 1);
+            report("1 thread, 1 client", run(limiter, 1, 1, clients, 5_000_000, 0));
+            report(THREADS + " threads, 1 client", run(limiter, THREADS, 1, clients, 2_000_000, 0));
+            report(THREADS + " threads, " + CLIENTS + " clients", run(limiter, THREADS, CLIENTS, clients, 2_000_000, 0));
+            // 50k req/s in total: every thread sends one request every THREADS * 20 microseconds
+            report("50k req/s, " + CLIENTS + " clients", run(limiter, THREADS, CLIENTS, clients, 50_000 / THREADS, THREADS * 20_000));
+        }
+    }
+
+    /**
+     * Returns the nanoseconds spent inside tryAcquire per call.
+     */
+    private static double run(RateLimiter limiter, int threads, int clientCount, String[] clients,
+                              int calls, long pacingNanos) throws InterruptedException {
+        AtomicLong spent = new AtomicLong();
+        AtomicLong blackhole = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                long total = 0;
+                long sum = 0;
+                long next = System.nanoTime();
+                if (pacingNanos == 0) {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < calls; i++) {
+                        String client = clients[(seed * 31 + i) % clientCount];
+                        sum += limiter.tryAcquire("GET", PATTERNS[i & 3], client);
+                    }
+                    total = System.nanoTime() - start;
+                } else {
+                    for (int i = 0; i < calls; i++) {
+                        next += pacingNanos;
+                        LockSupport.parkNanos(next - System.nanoTime());
+                        String client = clients[(seed * 31 + i) % clientCount];
+                        long start = System.nanoTime();
+                        sum += limiter.tryAcquire("GET", PATTERNS[i & 3], client);
+                        total += System.nanoTime() - start;
+                    }
+                }
+                spent.addAndGet(total);
+                blackhole.addAndGet(sum);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (blackhole.get() == 42) {
+            System.out.println();
+        }
+        return (double) spent.get() / ((long) calls * threads);
+    }
+
+    private static void report(String name, double nanos) {
+        System.out.printf("  %-28s %8.1f ns/request%s%n", name, nanos,
+                nanos < TimeUnit.MICROSECONDS.toNanos(1) ? "" : "  (over 1 us)");
+    }
+
+}
@@ -0,0 +1,132 @@
+package edu.fra.uas.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RateLimiterTest {
+
+    private static final String SEND = "/rooms/{id}/users/{userId}/messages";
+    private static final String BATCH = SEND + "/batch";
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toNanos(1));
+
+    @Test
+    void admitsTheBurstThenTheSustainedRate() {
+        RateLimiter limiter = new RateLimiter("10/s:5", "", "", now::get);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("GET", "/rooms", "alice"));
+        }
+        long wait = limiter.tryAcquire("GET", "/rooms", "alice");
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait);
+        // other clients and routes have their own buckets
+        assertEquals(0, limiter.tryAcquire("GET", "/rooms", "bob"));
+        assertEquals(0, limiter.tryAcquire("GET", "/rooms/{id}", "alice"));
+
+        now.addAndGet(wait);
+        assertEquals(0, limiter.tryAcquire("GET", "/rooms", "alice"));
+        assertTrue(limiter.tryAcquire("GET", "/rooms", "alice") > 0);
+    }
+
+    @Test
+    void routesOverrideTheDefault() {
+        RateLimiter limiter = new RateLimiter("100/s", "POST " + SEND + "=1/m, GET /rooms=0", "", now::get);
+        assertEquals(0, limiter.tryAcquire("POST", SEND, "alice"));
+        assertEquals(TimeUnit.MINUTES.toNanos(1), limiter.tryAcquire("POST", SEND, "alice"));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.tryAcquire("GET", "/rooms", "alice"));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter("10/week", "", "", now::get));
+    }
+
+    @Test
+    void concurrentRequestsNeverExceedTheBurst() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter("1/h:1000", "", "", now::get);
+        AtomicInteger admitted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (limiter.tryAcquire("POST", SEND, "alice") == 0) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, admitted.get());
+    }
+
+    @Test
+    void trustedClientIsLimitedPerUserOfItsBatchedSends() {
+        // the limits of application.properties
+        RateLimiter limiter = new RateLimiter("100/s:200", "POST " + SEND + "=20/s:40, POST " + BATCH + "=20/s:40",
+                "user", "", now::get);
+        // the user service sends for 50 users, each sending 20 messages a second that
+        // its batcher merges into 10 batches, for 5 seconds
+        for (int tick = 0; tick < 50; tick++) {
+            for (int user = 1; user <= 50; user++) {
+                assertEquals(0, limiter.tryAcquire("POST", BATCH, limiter.client("user", Integer.toString(user))));
+            }
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        // a single user is still limited, the others are not affected
+        String flooding = limiter.client("user", "1");
+        int admitted = 0;
+        while (limiter.tryAcquire("POST", BATCH, flooding) == 0) {
+            admitted++;
+        }
+        assertEquals(40, admitted);
+        assertEquals(0, limiter.tryAcquire("POST", BATCH, limiter.client("user", "2")));
+
+        // other clients cannot spread their requests over users
+        assertEquals("alice", limiter.client("alice", "1"));
+    }
+
+    @Test
+    void sweepDropsIdleClients() {
+        RateLimiter limiter = new RateLimiter("10/s:5", "", "", now::get);
+        limiter.tryAcquire("GET", "/rooms", "alice");
+        limiter.tryAcquire("GET", "/rooms", "bob");
+        limiter.sweep();
+        assertEquals(2, limiter.size());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.sweep();
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void stateSurvivesARestart() {
+        String file = directory.resolve("ratelimit.bin").toString();
+        RateLimiter limiter = new RateLimiter("10/s:5", "", file, now::get);
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire("POST", SEND, "alice");
+        }
+        limiter.tryAcquire("POST", SEND, "bob");
+        limiter.close();
+
+        RateLimiter restarted = new RateLimiter("10/s:5", "", file, now::get);
+        assertEquals(2, restarted.size());
+        assertTrue(restarted.tryAcquire("POST", SEND, "alice") > 0);
+        assertEquals(0, restarted.tryAcquire("POST", SEND, "bob"));
+    }
+
+}
@@ -0,0 +1,79 @@
+package edu.fra.uas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.Room;
+import edu.fra.uas.repository.MessageIndex;
+
+class MessageArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void archivedMessagesAreSearchableAfterRestart() throws IOException {
+        MessageArchive archive = new MessageArchive(directory.toString());
+        Room room = new Room();
+        room.setId(1L);
+        for (int i = 1; i <= 10; i++) {
+            room.getMessages().append(new Message(null, (i % 2 == 0 ? "even " : "odd ") + i, 1L, LocalDateTime.now()));
+        }
+        // as RetentionCompactor does it
+        List<Message> oldest = room.getMessages().since(0, 6);
+        archive.append(room.getId(), oldest);
+        room.getMessages().evict(oldest.size());
+
+        // after the restart the log starts at message 7, the archive is opened again
+        MessageArchive reopened = new MessageArchive(directory.toString());
+        MessageIndex index = new MessageIndex();
+        index.recover(room, afterId -> reopened.read(room.getId(), afterId, 4));
+        index.update(room);
+
+        assertEquals(List.of(10L, 8L, 6L, 4L, 2L), search(index, room, "even"));
+        assertEquals(List.of(9L, 7L, 5L, 3L, 1L), search(index, room, "odd"));
+        assertEquals(List.of(3L), search(index, room, "3"));
+    }
+
+    @Test
+    void deleteRemovesTheArchiveFile() throws IOException {
+        MessageArchive archive = new MessageArchive(directory.toString());
+        archive.append(2L, List.of(new Message(1L, "archived", 1L, LocalDateTime.now())));
+        archive.append(3L, List.of(new Message(1L, "archived", 1L, LocalDateTime.now())));
+
+        archive.delete(2L);
+        assertFalse(Files.exists(directory.resolve("room-2.archive")));
+        assertTrue(archive.read(2L, 0, 10).isEmpty());
+
+        // an archive left by an earlier run and not opened in this one
+        new MessageArchive(directory.toString()).delete(3L);
+        assertFalse(Files.exists(directory.resolve("room-3.archive")));
+    }
+
+    @Test
+    void appendAfterDeleteDoesNotCreateTheArchiveAgain() throws IOException {
+        MessageArchive archive = new MessageArchive(directory.toString());
+        archive.delete(4L);
+
+        // a compactor that took the room before it was deleted
+        archive.append(4L, List.of(new Message(1L, "late", 1L, LocalDateTime.now())));
+        assertFalse(Files.exists(directory.resolve("room-4.archive")));
+        assertTrue(archive.read(4L, 0, 10).isEmpty());
+    }
+
+    private static List<Long> search(MessageIndex index, Room room, String text) {
+        return index.search(room.getId(), MessageIndex.Query.parse(text), 10, id -> room.getMessages().get(id));
+    }
+
+}
@@ -0,0 +1,162 @@
+package edu.fra.uas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import edu.fra.uas.model.Message;
+import edu.fra.uas.model.MessageLog;
+
+class MessageHubTest {
+
+    private static final long ROOM = 1L;
+    private static final int SENDERS = 8;
+    private static final int MESSAGES_PER_SENDER = 2000;
+
+    private final MessageHub hub = new MessageHub(16, 0, 4);
+
+    @AfterEach
+    void tearDown() {
+        hub.destroy();
+    }
+
+    @Test
+    void concurrentSendersArePushedInIdOrder() throws Exception {
+        MessageLog messages = new MessageLog();
+        RecordingEmitter first = new RecordingEmitter(Integer.MAX_VALUE);
+        RecordingEmitter second = new RecordingEmitter(Integer.MAX_VALUE);
+        hub.subscribe(ROOM, messages, 0, first);
+
+        send(messages, () -> {
+            // a subscriber joining while the senders run must not lose a message
+            hub.subscribe(ROOM, messages, 0, second);
+        });
+
+        int total = SENDERS * MESSAGES_PER_SENDER;
+        assertEquals(total, first.await(total).size());
+        assertIds(first.ids(), 1, total);
+        assertIds(second.await(total), 1, total);
+    }
+
+    @Test
+    void reconnectWithLastEventIdContinuesWithoutGap() throws Exception {
+        MessageLog messages = new MessageLog();
+        // the connection breaks after 3000 events
+        RecordingEmitter broken = new RecordingEmitter(3000);
+        hub.subscribe(ROOM, messages, 0, broken);
+
+        send(messages, () -> { });
+
+        int total = SENDERS * MESSAGES_PER_SENDER;
+        List<Long> seen = broken.await(3000);
+        assertIds(seen, 1, 3000);
+        assertTrue(broken.failed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, hub.getSubscriberCount(ROOM));
+
+        RecordingEmitter reconnected = new RecordingEmitter(Integer.MAX_VALUE);
+        hub.subscribe(ROOM, messages, seen.get(seen.size() - 1), reconnected);
+        assertIds(reconnected.await(total - 3000), 3001, total);
+    }
+
+    // appends from SENDERS threads, each publishing after its own append as RoomService does
+    private void send(MessageLog messages, Runnable halfway) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < SENDERS; t++) {
+            long userId = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int i = 0;
+                while (i < MESSAGES_PER_SENDER) {
+                    if (i % 10 == 0) {
+                        messages.appendAll(List.of(message(userId, i), message(userId, i + 1)));
+                        i += 2;
+                    } else {
+                        messages.append(message(userId, i++));
+                    }
+                    hub.publish(ROOM);
+                    if (userId == 0 && i == MESSAGES_PER_SENDER / 2) {
+                        halfway.run();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static Message message(long userId, int i) {
+        return new Message(null, "message " + i + " of " + userId, userId, LocalDateTime.now());
+    }
+
+    private static void assertIds(List<Long> ids, long first, long last) {
+        assertEquals(last - first + 1, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(first + i, ids.get(i));
+        }
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final int failAfter;
+        private final List<Long> ids = new ArrayList<>();
+        private final CountDownLatch failed = new CountDownLatch(1);
+
+        RecordingEmitter(int failAfter) {
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            synchronized (ids) {
+                if (ids.size() == failAfter) {
+                    failed.countDown();
+                    throw new IOException("connection reset");
+                }
+                for (DataWithMediaType part : builder.build()) {
+                    if (part.getData() instanceof Message message) {
+                        ids.add(message.getId());
+                    }
+                }
+                ids.notifyAll();
+            }
+        }
+
+        List<Long> ids() {
+            synchronized (ids) {
+                return new ArrayList<>(ids);
+            }
+        }
+
+        List<Long> await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            synchronized (ids) {
+                while (ids.size() < count && System.nanoTime() < deadline) {
+                    ids.wait(100);
+                }
+                return new ArrayList<>(ids);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package edu.fra.uas.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import edu.fra.uas.service.Deadline;
+
+/**
+ * One connection-pooled HTTP client for all calls to the chat service.
+ * Connections are kept alive and reused instead of opening a socket per request.
+ */
+@Configuration
+public class ChatClientConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatClientConfig.class);
+
+    @Value("${chatservice.pool.max-total:200}")
+    private int maxTotal;
+
+    @Value("${chatservice.pool.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${chatservice.pool.connect-timeout:2000}")
+    private long connectTimeout;
+
+    @Value("${chatservice.pool.read-timeout:5000}")
+    private long readTimeout;
+
+    @Value("${chatservice.pool.keep-alive:30000}")
+    private long keepAlive;
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient chatHttpClient() {
+        log.debug("chat http client: maxTotal={}, maxPerRoute={}, connectTimeout={}, readTimeout={}, keepAlive={}",
+                maxTotal, maxPerRoute, connectTimeout, readTimeout, keepAlive);
+        return createHttpClient(maxTotal, maxPerRoute, connectTimeout, readTimeout, keepAlive);
+    }
+
+    @Bean
+    public RestTemplate chatRestTemplate(CloseableHttpClient chatHttpClient) {
+        return createRestTemplate(chatHttpClient, readTimeout);
+    }
+
+    public static RestTemplate createRestTemplate(CloseableHttpClient httpClient, long readTimeout) {
+        // Apache HttpClient also handles PATCH, which the standard JDK HTTP client does not
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setHttpContextFactory((method, uri) -> deadlineContext(readTimeout));
+        return new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Limits leasing a connection and reading the response to the time left until the
+     * {@link Deadline} of the call; {@code null} keeps the defaults if there is no deadline.
+     */
+    static HttpContext deadlineContext(long readTimeout) {
+        long remaining = Deadline.remainingMillis();
+        if (remaining < 0) {
+            return null;
+        }
+        Timeout timeout = Timeout.ofMilliseconds(Math.max(1, Math.min(remaining, readTimeout)));
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout)
+                .setResponseTimeout(timeout)
+                .build());
+        return context;
+    }
+
+    public static CloseableHttpClient createHttpClient(int maxTotal, int maxPerRoute, long connectTimeout,
+                                                       long readTimeout, long keepAlive) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                        // check connections idle for a while before reuse, the server may have closed them
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // waiting for a free connection of the pool counts as connecting
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeout))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .build())
+                .setKeepAliveStrategy((response, context) -> TimeValue.ofMilliseconds(keepAlive))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAlive))
+                .build();
+    }
+
+}
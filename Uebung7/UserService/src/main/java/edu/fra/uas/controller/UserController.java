@@ -3,6 +3,8 @@ package edu.fra.uas.controller;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,11 +20,17 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import edu.fra.uas.model.User;
+import edu.fra.uas.repository.DuplicateEmailException;
+import edu.fra.uas.service.ChatCache;
+import edu.fra.uas.service.ChatGateway;
+import edu.fra.uas.service.ChatResilience;
 import edu.fra.uas.service.ChatService;
+import edu.fra.uas.service.MessageBatcher;
 import edu.fra.uas.service.UserService;
 
 @RestController
@@ -36,6 +44,18 @@ public class UserController {
     @Autowired
     private ChatService chatService;
 
+    @Autowired
+    private ChatGateway chatGateway;
+
+    @Autowired
+    private ChatResilience chatResilience;
+
+    @Autowired
+    private ChatCache chatCache;
+
+    @Autowired
+    private MessageBatcher messageBatcher;
+
     @GetMapping(value = "/users", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
@@ -100,7 +120,14 @@ public class UserController {
             pd.setTitle("JSON Object Error");
             return ResponseEntity.unprocessableEntity().body(pd);
         }
-        user = userService.createUser(user);
+        try {
+            user = userService.createUser(user);
+        } catch (DuplicateEmailException e) {
+            ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+            pd.setInstance(URI.create("/users"));
+            pd.setTitle("Duplicate Email");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(pd);
+        }
         HttpHeaders headers = new HttpHeaders();
         headers.setLocation(URI.create("/users/" + user.getId()));
         return new ResponseEntity<User>(user, headers, HttpStatus.CREATED);
@@ -146,12 +173,17 @@ public class UserController {
             pd.setTitle("JSON Object Error");
             return ResponseEntity.unprocessableEntity().body(pd);
         }
-        user.setRole(newUser.getRole());
-        user.setFirstName(newUser.getFirstName());
-        user.setLastName(newUser.getLastName());
-        user.setEmail(newUser.getEmail());
-        user.setPassword(newUser.getPassword());
-        user = userService.updateUser(user);
+        // a copy, the stored user stays unchanged if the update is rejected
+        User changed = new User(user.getId(), newUser.getRole(), newUser.getFirstName(),
+                newUser.getLastName(), newUser.getEmail(), newUser.getPassword());
+        try {
+            user = userService.updateUser(changed);
+        } catch (DuplicateEmailException e) {
+            ProblemDetail pd = ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+            pd.setInstance(URI.create("/users/" + userId));
+            pd.setTitle("Duplicate Email");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(pd);
+        }
         HttpHeaders headers = new HttpHeaders();
         headers.setLocation(URI.create("/users/" + user.getId()));
         return new ResponseEntity<User>(user, headers,  HttpStatus.OK);
@@ -173,137 +205,195 @@ public class UserController {
     // ChatService integration
     // ##############################################################################################################
 
+    @GetMapping(value = "/chatservice/resilience",
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<Map<String, Map<String, Object>>> resilienceMetrics() {
+        log.debug("resilienceMetrics() is called");
+        return new ResponseEntity<>(chatResilience.metrics(), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/chatservice/cache",
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> cacheMetrics() {
+        log.debug("cacheMetrics() is called");
+        return new ResponseEntity<>(chatCache.metrics(), HttpStatus.OK);
+    }
+
     @GetMapping(value = "/users/{id}/chatrooms", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> getRooms(@PathVariable("id") Long userId) {
+    public CompletableFuture<ResponseEntity<?>> getRooms(@PathVariable("id") Long userId) {
         log.debug("getRooms() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.getAllRooms();
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.NO_CONTENT)) {
-            return new ResponseEntity<>("No rooms found", HttpStatus.NO_CONTENT);
-        }        
-        return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = chatService.getAllRooms();
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.NO_CONTENT)) {
+                return new ResponseEntity<>("No rooms found", HttpStatus.NO_CONTENT);
+            }        
+            return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        });
     }
 
     @GetMapping(value = "/users/{id}/chatrooms/{roomId}", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> findRoom(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId) {
+    public CompletableFuture<ResponseEntity<?>> findRoom(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId) {
         log.debug("findRoom() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.getRoomById(roomId);
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
-            return response;
-        }        
-        return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = chatService.getRoomById(roomId);
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                return response;
+            }        
+            return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        });
     }
 
     @PostMapping(value = "/users/{id}/chatrooms", 
                  consumes = MediaType.APPLICATION_JSON_VALUE, 
                  produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> createRoom(@PathVariable("id") Long userId, @RequestBody String name) {
+    public CompletableFuture<ResponseEntity<?>> createRoom(@PathVariable("id") Long userId, @RequestBody String name) {
         log.debug("createRoom() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.createRoom(name);
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.CREATED)) {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setLocation(URI.create("/users/" + userId + "/chatrooms/"));
-            return new ResponseEntity<>(response.getBody(), headers, HttpStatus.CREATED);
-        } else {
-            return new ResponseEntity<>(response.getBody(), HttpStatus.UNPROCESSABLE_ENTITY);
-        }
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = chatService.createRoom(name);
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.CREATED)) {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setLocation(URI.create("/users/" + userId + "/chatrooms/"));
+                return new ResponseEntity<>(response.getBody(), headers, HttpStatus.CREATED);
+            } else {
+                return new ResponseEntity<>(response.getBody(), HttpStatus.UNPROCESSABLE_ENTITY);
+            }
+        });
     }
 
     @DeleteMapping(value = "/users/{id}/chatrooms/{roomId}", 
                    produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> deleteRoom(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId) {
+    public CompletableFuture<ResponseEntity<?>> deleteRoom(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId) {
         log.debug("deleteRoom() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.deleteRoom(roomId);
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
-            return response;
-        }        
-        return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = chatService.deleteRoom(roomId);
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                return response;
+            }        
+            return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        });
     }
 
     @PutMapping(value = "/users/{id}/chatrooms", 
                 consumes = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> joinRoom(@PathVariable("id") Long userId, @RequestBody Long roomId) {
+    public CompletableFuture<ResponseEntity<?>> joinRoom(@PathVariable("id") Long userId, @RequestBody Long roomId) {
         log.debug("joinRoom() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.joinRoom(roomId, user);
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
-            return response;
-        }        
-        return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = chatService.joinRoom(roomId, user);
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                return response;
+            }        
+            return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        });
     }
 
     @PatchMapping(value = "/users/{id}/chatrooms/{roomId}", 
                    produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> leaveRoom(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId) {
+    public CompletableFuture<ResponseEntity<?>> leaveRoom(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId) {
         log.debug("leaveRoom() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.leaveRoom(roomId, userId);
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
-            return response;
-        }        
-        return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = chatService.leaveRoom(roomId, userId);
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                return response;
+            }        
+            return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        });
     }
 
     @PostMapping(value = "/users/{id}/chatrooms/{roomId}/messages", 
                  consumes = MediaType.APPLICATION_JSON_VALUE, 
                  produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> sendMessage(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId, @RequestBody String text) {
+    public CompletableFuture<ResponseEntity<?>> sendMessage(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId, @RequestBody String text) {
         log.debug("sendMessage() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.sendMessage(roomId, userId, text);
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
-            return response;
-        }        
-        return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = messageBatcher.send(roomId, userId, text);
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                return response;
+            }        
+            return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        });
     }
 
     @GetMapping(value = "/users/{id}/chatrooms/{roomId}/messages", 
                 produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<?> getMessages(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId) {
+    public CompletableFuture<ResponseEntity<?>> getMessages(@PathVariable("id") Long userId, @PathVariable("roomId") Long roomId,
+                                                            @RequestParam(value = "since", required = false) Long since,
+                                                            @RequestParam(value = "limit", required = false) Integer limit) {
         log.debug("getMessages() is called");
-        User user = userService.getUserById(userId);
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
-        ResponseEntity<?> response = chatService.getAllMessages(roomId, userId);
-        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
-           return response;
-        }        
-        return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        return chatGateway.call(() -> {
+            User user = userService.getUserById(userId);
+            if (user == null) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity<?> response = chatService.getAllMessages(roomId, userId, since, limit);
+            if (response.getStatusCode().is5xxServerError()) {
+                return response;
+            }
+            if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+               return response;
+            }        
+            return new ResponseEntity<>(response.getBody(), HttpStatus.OK);
+        });
     }
 
 }
\ No newline at end of file
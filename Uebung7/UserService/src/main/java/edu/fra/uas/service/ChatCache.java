@@ -0,0 +1,150 @@
+package edu.fra.uas.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+/**
+ * Size-bounded cache of the read-only calls to the chat service with a time to live.
+ * <p>
+ * Concurrent requests for the same key share one call: the first one loads, the
+ * others wait for its result. Only successful responses are kept. Entries are
+ * invalidated by the mutating calls; a load that is still running when its entry
+ * is invalidated is handed to its waiters but not kept.
+ */
+@Service
+public class ChatCache {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(ChatCache.class);
+
+    @Value("${chatservice.cache.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${chatservice.cache.ttl:2000}")
+    long ttl = 2000;
+
+    @Value("${chatservice.cache.max-entries:1000}")
+    int maxEntries = 1000;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // least recently used first
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public ResponseEntity<?> get(String key, Supplier<ResponseEntity<?>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry entry;
+        boolean load = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || entry.isExpired()) {
+                entry = new Entry();
+                entries.put(key, entry);
+                load = true;
+                misses.increment();
+            } else if (entry.response.isDone()) {
+                hits.increment();
+            } else {
+                coalesced.increment();
+            }
+        }
+        if (load) {
+            try {
+                ResponseEntity<?> response = loader.get();
+                entry.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+                entry.response.complete(response);
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    remove(key, entry);
+                }
+                return response;
+            } catch (RuntimeException e) {
+                remove(key, entry);
+                entry.response.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return entry.response.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Invalidates every key that starts with the prefix.
+     */
+    public void invalidatePrefix(String prefix) {
+        synchronized (entries) {
+            Iterator<String> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(prefix)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        long hitCount = hits.sum();
+        long coalescedCount = coalesced.sum();
+        long missCount = misses.sum();
+        long total = hitCount + coalescedCount + missCount;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (entries) {
+            metrics.put("size", entries.size());
+        }
+        metrics.put("hits", hitCount);
+        metrics.put("coalesced", coalescedCount);
+        metrics.put("misses", missCount);
+        // a request that joined a running load did not cause an upstream call either
+        metrics.put("hitRatio", total == 0 ? 0.0 : (double) (hitCount + coalescedCount) / total);
+        return metrics;
+    }
+
+    private void remove(String key, Entry entry) {
+        synchronized (entries) {
+            if (entries.get(key) == entry) {
+                entries.remove(key);
+            }
+        }
+        log.debug("response for {} is not cached", key);
+    }
+
+    private static class Entry {
+
+        private final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        // set before the response is completed, only read once it is
+        private volatile long expiresAt;
+
+        boolean isExpired() {
+            return response.isDone() && System.nanoTime() - expiresAt > 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package edu.fra.uas.service;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Decides on which threads the proxy calls to the chat service run.
+ * <ul>
+ * <li>{@code blocking}: on the request thread of Tomcat, as before.</li>
+ * <li>{@code async}: on a bounded pool of platform threads, the request thread is released while waiting.</li>
+ * <li>{@code virtual}: on one virtual thread per call, so thousands of waiting calls need only a few
+ *     platform threads. Requires Java 21, otherwise {@code async} is used.</li>
+ * </ul>
+ * The controller returns the {@link CompletableFuture} and Spring MVC completes the request asynchronously.
+ */
+@Service
+public class ChatGateway {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(ChatGateway.class);
+
+    public enum Mode { BLOCKING, ASYNC, VIRTUAL }
+
+    @Value("${chatservice.gateway.mode:blocking}")
+    private String configuredMode;
+
+    @Value("${chatservice.gateway.threads:200}")
+    private int threads;
+
+    private Mode mode = Mode.BLOCKING;
+    private ExecutorService executor;
+
+    public ChatGateway() {
+    }
+
+    public ChatGateway(Mode mode, int threads) {
+        this.configuredMode = mode.name();
+        this.threads = threads;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        mode = Mode.valueOf(configuredMode.trim().toUpperCase(Locale.ROOT));
+        if (mode == Mode.VIRTUAL) {
+            executor = newVirtualThreadExecutor();
+            if (executor == null) {
+                log.warn("virtual threads need Java 21, running chat gateway in async mode");
+                mode = Mode.ASYNC;
+            }
+        }
+        if (mode == Mode.ASYNC) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "chat-gateway-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.debug("chat gateway mode: {}", mode);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Runs the blocking call according to the mode.
+     */
+    public <T> CompletableFuture<T> call(Supplier<T> call) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(call.get());
+        }
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    // looked up reflectively, the module is still compiled for Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+}
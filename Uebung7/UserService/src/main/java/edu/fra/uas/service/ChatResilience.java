@@ -0,0 +1,330 @@
+package edu.fra.uas.service;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import edu.fra.uas.model.ApiError;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Protects the UserService from a slow or failing chat service.
+ * <ul>
+ * <li>Every call gets a {@link Deadline}, which also bounds the HTTP request.</li>
+ * <li>A bulkhead limits the number of calls in flight.</li>
+ * <li>Every endpoint has its own circuit breaker. It opens after consecutive failures,
+ *     rejects calls while open and lets trial calls through when half-open.</li>
+ * <li>Idempotent GETs can be hedged: if there is no answer after a delay, the request
+ *     is sent a second time and the first answer wins.</li>
+ * </ul>
+ * Calls that are rejected or fail are answered with an {@link ApiError} instead of an exception.
+ */
+@Service
+public class ChatResilience {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(ChatResilience.class);
+
+    @Value("${chatservice.resilience.timeout:3000}")
+    long timeout;
+
+    @Value("${chatservice.resilience.breaker.failure-threshold:5}")
+    int failureThreshold;
+
+    @Value("${chatservice.resilience.breaker.open-duration:10000}")
+    long openDuration;
+
+    @Value("${chatservice.resilience.breaker.half-open-calls:1}")
+    int halfOpenCalls;
+
+    @Value("${chatservice.resilience.bulkhead.max-concurrent:50}")
+    int maxConcurrent;
+
+    @Value("${chatservice.resilience.bulkhead.max-wait:100}")
+    long maxWait;
+
+    @Value("${chatservice.resilience.hedge.enabled:false}")
+    boolean hedgeEnabled;
+
+    @Value("${chatservice.resilience.hedge.delay:150}")
+    long hedgeDelay;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private Semaphore bulkhead;
+    private ExecutorService hedgeExecutor;
+
+    @PostConstruct
+    void init() {
+        bulkhead = new Semaphore(maxConcurrent);
+        AtomicInteger count = new AtomicInteger();
+        hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "chat-hedge-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        hedgeExecutor.shutdown();
+    }
+
+    public ResponseEntity<?> execute(String name, Supplier<ResponseEntity<?>> call) {
+        return execute(name, false, call);
+    }
+
+    /**
+     * Runs the call to the named endpoint; {@code idempotent} calls may be hedged.
+     * A {@link HttpClientErrorException} is an answer of the chat service and passed on.
+     */
+    public ResponseEntity<?> execute(String name, boolean idempotent, Supplier<ResponseEntity<?>> call) {
+        Endpoint endpoint = endpoints.computeIfAbsent(name, Endpoint::new);
+        if (!endpoint.tryAcquire()) {
+            endpoint.rejectedOpen.increment();
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "Chat service circuit of " + name + " is open");
+        }
+        endpoint.calls.increment();
+        return Deadline.within(TimeUnit.MILLISECONDS.toNanos(timeout), () -> {
+            try {
+                ResponseEntity<?> response = idempotent && hedgeEnabled ? hedged(endpoint, call) : attempt(call);
+                endpoint.onSuccess();
+                return response;
+            } catch (HttpClientErrorException e) {
+                endpoint.onSuccess();
+                throw e;
+            } catch (BulkheadFullException e) {
+                endpoint.onIgnored();
+                endpoint.rejectedBulkhead.increment();
+                return error(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent calls to the chat service");
+            } catch (RuntimeException e) {
+                endpoint.onFailure();
+                if (isTimeout(e)) {
+                    endpoint.timeouts.increment();
+                    log.debug("call to {} timed out", name);
+                    return error(HttpStatus.GATEWAY_TIMEOUT, "Chat service did not answer in time");
+                }
+                log.debug("call to {} failed: {}", name, e.toString());
+                return error(HttpStatus.SERVICE_UNAVAILABLE, "Chat service is not available");
+            }
+        });
+    }
+
+    /**
+     * State and counters of every endpoint called so far.
+     */
+    public Map<String, Map<String, Object>> metrics() {
+        Map<String, Map<String, Object>> metrics = new TreeMap<>();
+        for (Endpoint endpoint : endpoints.values()) {
+            metrics.put(endpoint.name, endpoint.metrics());
+        }
+        return metrics;
+    }
+
+    public State getState(String name) {
+        Endpoint endpoint = endpoints.get(name);
+        return endpoint == null ? State.CLOSED : endpoint.state();
+    }
+
+    private ResponseEntity<?> attempt(Supplier<ResponseEntity<?>> call) {
+        if (Deadline.remainingMillis() == 0) {
+            throw new DeadlineExceededException();
+        }
+        try {
+            long wait = Math.min(maxWait, Math.max(0, Deadline.remainingMillis()));
+            if (!bulkhead.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                throw new BulkheadFullException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException();
+        }
+        try {
+            return call.get();
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private ResponseEntity<?> hedged(Endpoint endpoint, Supplier<ResponseEntity<?>> call) {
+        // the attempts run on other threads, they take the deadline of this one along
+        long deadline = Deadline.current();
+        Supplier<ResponseEntity<?>> task = () -> Deadline.at(deadline, () -> attempt(call));
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(task, hedgeExecutor);
+        try {
+            return first.get(Math.min(hedgeDelay, Deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("no answer of {} after {} ms, hedging", endpoint.name, hedgeDelay);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        endpoint.hedges.increment();
+        CompletableFuture<ResponseEntity<?>> second = CompletableFuture.supplyAsync(task, hedgeExecutor);
+        try {
+            return firstAnswer(first, second).get(Deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // completes with the first response or client error, fails only if both attempts failed
+    private static CompletableFuture<ResponseEntity<?>> firstAnswer(CompletableFuture<ResponseEntity<?>> first,
+                                                                    CompletableFuture<ResponseEntity<?>> second) {
+        CompletableFuture<ResponseEntity<?>> answer = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (CompletableFuture<ResponseEntity<?>> attempt : List.of(first, second)) {
+            attempt.whenComplete((response, e) -> {
+                if (e == null) {
+                    answer.complete(response);
+                } else if (e.getCause() instanceof HttpClientErrorException || failed.incrementAndGet() == 2) {
+                    answer.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        }
+        return answer;
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        return e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException || cause instanceof DeadlineExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        ApiError apiError = new ApiError(status, message);
+        return new ResponseEntity<>(apiError, apiError.getStatus());
+    }
+
+    // ##############################################################################################################
+    // Circuit breaker of one endpoint
+    // ##############################################################################################################
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private class Endpoint {
+
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder rejectedOpen = new LongAdder();
+        private final LongAdder rejectedBulkhead = new LongAdder();
+
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private int trials;
+        private long openedAt;
+        private long opened;
+        private long halfOpened;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < TimeUnit.MILLISECONDS.toNanos(openDuration)) {
+                    return false;
+                }
+                log.info("circuit of {} is half-open", name);
+                state = State.HALF_OPEN;
+                trials = 0;
+                halfOpened++;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trials >= halfOpenCalls) {
+                    return false;
+                }
+                trials++;
+            }
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            if (state == State.HALF_OPEN) {
+                log.info("circuit of {} is closed", name);
+                state = State.CLOSED;
+            }
+        }
+
+        synchronized void onFailure() {
+            failures.increment();
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                log.warn("circuit of {} is open after {} failures", name, consecutiveFailures);
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                opened++;
+            }
+        }
+
+        // the call never reached the chat service, give a trial slot back
+        synchronized void onIgnored() {
+            if (state == State.HALF_OPEN && trials > 0) {
+                trials--;
+            }
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized Map<String, Object> metrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("state", state);
+            metrics.put("calls", calls.sum());
+            metrics.put("failures", failures.sum());
+            metrics.put("timeouts", timeouts.sum());
+            metrics.put("hedges", hedges.sum());
+            metrics.put("rejectedOpen", rejectedOpen.sum());
+            metrics.put("rejectedBulkhead", rejectedBulkhead.sum());
+            metrics.put("opened", opened);
+            metrics.put("halfOpened", halfOpened);
+            return metrics;
+        }
+
+    }
+
+    private static class BulkheadFullException extends RuntimeException {
+    }
+
+    private static class DeadlineExceededException extends RuntimeException {
+    }
+
+}
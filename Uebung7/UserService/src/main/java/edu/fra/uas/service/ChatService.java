@@ -1,8 +1,11 @@
 package edu.fra.uas.service;
 
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
 
 import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -10,16 +13,14 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import org.apache.tomcat.util.codec.binary.Base64;
-
 import edu.fra.uas.model.ApiError;
 import edu.fra.uas.model.ChatUser;
 import edu.fra.uas.model.User;
+import jakarta.annotation.PostConstruct;
 
 @Service
 public class ChatService {
@@ -39,12 +40,26 @@ public class ChatService {
     @Value("${authentication.token}")
     String authenticationToken;
 
-    private HttpHeaders addAuthorizationHeader(HttpHeaders headers) {
-        byte[] plainCredsBytes = plainCreds.getBytes();
-        byte[] base64CredsBytes = Base64.encodeBase64(plainCredsBytes, false);
-        String base64Creds = new String(base64CredsBytes);
+    // shared, connection-pooled client, see ChatClientConfig
+    @Autowired
+    RestTemplate restTemplate;
+
+    @Autowired
+    ChatResilience chatResilience;
+
+    @Autowired
+    ChatCache chatCache;
 
-        headers.add("Authorization", "Basic " + base64Creds);
+    // the credentials do not change, so the header is encoded only once
+    private String authorization;
+
+    @PostConstruct
+    void init() {
+        authorization = "Basic " + Base64.getEncoder().encodeToString(plainCreds.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private HttpHeaders addAuthorizationHeader(HttpHeaders headers) {
+        headers.add("Authorization", authorization);
 
         //headers.add(authenticationTokenHeaderName, authenticationToken);
 
@@ -55,47 +70,48 @@ public class ChatService {
     // get all rooms                    GET     /rooms
     public ResponseEntity<?> getAllRooms() {
         log.debug("forward request to " + apiUrl + "/rooms");
-        RestTemplate restTemplate = new RestTemplate();
-        String url = apiUrl + "/rooms";
+        return chatCache.get("rooms", () -> {
+            String url = apiUrl + "/rooms";
 
-        HttpHeaders headers = new HttpHeaders();
-        addAuthorizationHeader(headers);
-        HttpEntity<String> request = new HttpEntity<String>(headers);
+            HttpHeaders headers = new HttpHeaders();
+            addAuthorizationHeader(headers);
+            HttpEntity<String> request = new HttpEntity<String>(headers);
 
-        ResponseEntity<?> response;
-        try{
-            response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
-        } catch (HttpClientErrorException e) {
-            ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
-            response = new ResponseEntity<>(apiError, apiError.getStatus());
-        }
-        return response;
+            ResponseEntity<?> response;
+            try{
+                response = chatResilience.execute("getAllRooms", true, () -> restTemplate.exchange(url, HttpMethod.GET, request, String.class));
+            } catch (HttpClientErrorException e) {
+                ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
+                response = new ResponseEntity<>(apiError, apiError.getStatus());
+            }
+            return response;
+        });
     }
 
     // get room by id                   GET     /rooms/{id}
     public ResponseEntity<?> getRoomById(Long id) {
         log.debug("forward request to " + apiUrl + "/rooms/" + id);
-        RestTemplate restTemplate = new RestTemplate();
-        String url = apiUrl + "/rooms/" + id;
+        return chatCache.get("rooms/" + id, () -> {
+            String url = apiUrl + "/rooms/" + id;
 
-        HttpHeaders headers = new HttpHeaders();
-        addAuthorizationHeader(headers);
-        HttpEntity<String> request = new HttpEntity<String>(headers);
+            HttpHeaders headers = new HttpHeaders();
+            addAuthorizationHeader(headers);
+            HttpEntity<String> request = new HttpEntity<String>(headers);
 
-        ResponseEntity<?> response;
-        try{
-            response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
-        } catch (HttpClientErrorException e) {
-            ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
-            response = new ResponseEntity<>(apiError, apiError.getStatus());
-        }
-        return response;
+            ResponseEntity<?> response;
+            try{
+                response = chatResilience.execute("getRoomById", true, () -> restTemplate.exchange(url, HttpMethod.GET, request, String.class));
+            } catch (HttpClientErrorException e) {
+                ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
+                response = new ResponseEntity<>(apiError, apiError.getStatus());
+            }
+            return response;
+        });
     }
     
     // create a new room                POST    /rooms
     public ResponseEntity<?> createRoom(String name) {
         log.debug("forward request to " + apiUrl + "/rooms");
-        RestTemplate restTemplate = new RestTemplate();
         String url = apiUrl + "/rooms";
 
         HttpHeaders headers = new HttpHeaders();
@@ -105,18 +121,20 @@ public class ChatService {
 
         ResponseEntity<?> response;
         try{
-            response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
+            response = chatResilience.execute("createRoom", () -> restTemplate.exchange(url, HttpMethod.POST, request, String.class));
         } catch (HttpClientErrorException e) {
             ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
             response = new ResponseEntity<>(apiError, apiError.getStatus());
         }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            chatCache.invalidate("rooms");
+        }
         return response;
     }
     
     // delete a room                    DELETE  /rooms/{id}
     public ResponseEntity<?> deleteRoom(Long id) {
         log.debug("forward request to " + apiUrl + "/rooms/" + id);
-        RestTemplate restTemplate = new RestTemplate();
         String url = apiUrl + "/rooms/" + id;
         
         HttpHeaders headers = new HttpHeaders();
@@ -125,18 +143,22 @@ public class ChatService {
 
         ResponseEntity<?> response;
         try{
-            response = restTemplate.exchange(url, HttpMethod.DELETE, request, String.class);
+            response = chatResilience.execute("deleteRoom", () -> restTemplate.exchange(url, HttpMethod.DELETE, request, String.class));
         } catch (HttpClientErrorException e) {
             ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
             response = new ResponseEntity<>(apiError, apiError.getStatus());
         }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            chatCache.invalidate("rooms");
+            chatCache.invalidate("rooms/" + id);
+            chatCache.invalidatePrefix("rooms/" + id + "/");
+        }
         return response;
     }
     
     // join a room                      PUT     /rooms/{id}
     public ResponseEntity<?> joinRoom(Long id, User user) {
         log.debug("forward request to " + apiUrl + "/rooms/" + id);
-        RestTemplate restTemplate = new RestTemplate();
         String url = apiUrl + "/rooms/" + id;
 
         HttpHeaders headers = new HttpHeaders();
@@ -147,44 +169,46 @@ public class ChatService {
 
         ResponseEntity<?> response;
         try{
-            response = restTemplate.exchange(url, HttpMethod.PUT, request, String.class);
+            response = chatResilience.execute("joinRoom", () -> restTemplate.exchange(url, HttpMethod.PUT, request, String.class));
         } catch (HttpClientErrorException e) {
             ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
             response = new ResponseEntity<>(apiError, apiError.getStatus());
         }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            chatCache.invalidate("rooms");
+            chatCache.invalidate("rooms/" + id);
+        }
         return response;
     }
     
     // leave a room                     PATCH  /rooms/{id}/users/{userId}
     public ResponseEntity<?> leaveRoom(Long roomId, Long userId) {
         log.debug("forward request to " + apiUrl + "/rooms/" + roomId + "/users/" + userId);
-        RestTemplate restTemplate = new RestTemplate();
         String url = apiUrl + "/rooms/" + roomId + "/users/" + userId;
 
         HttpHeaders headers = new HttpHeaders();
         addAuthorizationHeader(headers);
         HttpEntity<String> request = new HttpEntity<String>(headers);
 
-        // Needed to send PATCH cause of a bug in standard JDK HTTP
-        org.apache.hc.client5.http.classic.HttpClient httpClient = HttpClientBuilder.create().build();
-        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
-        restTemplate.setRequestFactory(requestFactory);
-
         ResponseEntity<?> response;
         try{
-            response = restTemplate.exchange(url, HttpMethod.PATCH, request, String.class);
+            response = chatResilience.execute("leaveRoom", () -> restTemplate.exchange(url, HttpMethod.PATCH, request, String.class));
             //response = restTemplate.exchange(url, HttpMethod.PUT, null, String.class);
         } catch (HttpClientErrorException e) {
             ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
             response = new ResponseEntity<>(apiError, apiError.getStatus());
         }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            chatCache.invalidate("rooms");
+            chatCache.invalidate("rooms/" + roomId);
+            chatCache.invalidatePrefix("rooms/" + roomId + "/users/" + userId + "/");
+        }
         return response;
     }
     
     // send a message                   POST    /rooms/{id}/users/{userId}/messages
     public ResponseEntity<?> sendMessage(Long id, Long userId, String text) {
         log.debug("forward request to " + apiUrl + "/rooms/" + id + "/users/" + userId + "/messages");
-        RestTemplate restTemplate = new RestTemplate();
         String url = apiUrl + "/rooms/" + id + "/users/" + userId + "/messages";
 
         HttpHeaders headers = new HttpHeaders();
@@ -194,32 +218,74 @@ public class ChatService {
 
         ResponseEntity<?> response;
         try{
-            response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
+            response = chatResilience.execute("sendMessage", () -> restTemplate.exchange(url, HttpMethod.POST, request, String.class));
         } catch (HttpClientErrorException e) {
             ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
             response = new ResponseEntity<>(apiError, apiError.getStatus());
         }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            chatCache.invalidate("rooms");
+            chatCache.invalidate("rooms/" + id);
+            chatCache.invalidatePrefix("rooms/" + id + "/");
+        }
         return response;
     }
     
-    // get all messages of a room       GET     /rooms/{id}/users/{userId}/messages
-    public ResponseEntity<?> getAllMessages(Long id, Long userId) {
-        log.debug("forward request to " + apiUrl + "/rooms/" + id + "/users/" + userId + "/messages");
-        RestTemplate restTemplate = new RestTemplate();
-        String url = apiUrl + "/rooms/" + id + "/users/" + userId + "/messages";
+    // send many messages               POST    /rooms/{id}/users/{userId}/messages/batch
+    public ResponseEntity<?> sendMessages(Long id, Long userId, List<String> texts) {
+        log.debug("forward request to " + apiUrl + "/rooms/" + id + "/users/" + userId + "/messages/batch");
+        String url = apiUrl + "/rooms/" + id + "/users/" + userId + "/messages/batch";
 
         HttpHeaders headers = new HttpHeaders();
         addAuthorizationHeader(headers);
-        HttpEntity<String> request = new HttpEntity<String>(headers);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<List<String>> request = new HttpEntity<List<String>>(texts, headers);
 
         ResponseEntity<?> response;
         try{
-            response = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
+            response = chatResilience.execute("sendMessages", () -> restTemplate.exchange(url, HttpMethod.POST, request, String.class));
         } catch (HttpClientErrorException e) {
             ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
             response = new ResponseEntity<>(apiError, apiError.getStatus());
         }
+        if (response.getStatusCode().is2xxSuccessful()) {
+            chatCache.invalidate("rooms");
+            chatCache.invalidate("rooms/" + id);
+            chatCache.invalidatePrefix("rooms/" + id + "/");
+        }
         return response;
     }
+
+    // get all messages of a room       GET     /rooms/{id}/users/{userId}/messages
+    public ResponseEntity<?> getAllMessages(Long id, Long userId) {
+        return getAllMessages(id, userId, null, null);
+    }
+
+    // get new messages of a room       GET     /rooms/{id}/users/{userId}/messages?since={since}&limit={limit}
+    public ResponseEntity<?> getAllMessages(Long id, Long userId, Long since, Integer limit) {
+        log.debug("forward request to " + apiUrl + "/rooms/" + id + "/users/" + userId + "/messages");
+        return chatCache.get("rooms/" + id + "/users/" + userId + "/messages?since=" + since + "&limit=" + limit, () -> {
+            String path = apiUrl + "/rooms/" + id + "/users/" + userId + "/messages";
+            if (since != null || limit != null) {
+                path = path + "?" + (since != null ? "since=" + since : "")
+                        + (since != null && limit != null ? "&" : "")
+                        + (limit != null ? "limit=" + limit : "");
+            }
+            String url = path;
+
+            HttpHeaders headers = new HttpHeaders();
+            addAuthorizationHeader(headers);
+            HttpEntity<String> request = new HttpEntity<String>(headers);
+
+            ResponseEntity<?> response;
+            try{
+                response = chatResilience.execute("getAllMessages", () -> restTemplate.exchange(url, HttpMethod.GET, request, String.class));
+            } catch (HttpClientErrorException e) {
+                ApiError apiError = new ApiError(HttpStatus.NOT_FOUND, e.getResponseBodyAsString());
+                response = new ResponseEntity<>(apiError, apiError.getStatus());
+            }
+            return response;
+        });
+    }
     
 }
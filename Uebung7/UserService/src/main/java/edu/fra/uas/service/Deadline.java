@@ -0,0 +1,62 @@
+package edu.fra.uas.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Point in time by which the current proxy call to the chat service must be finished.
+ * <p>
+ * The deadline is bound to the thread running the call. Waiting for the bulkhead,
+ * leasing a pooled connection and reading the response all use the remaining time,
+ * see ChatResilience and ChatClientConfig.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private Deadline() {
+    }
+
+    /**
+     * Runs the call with a deadline {@code nanos} from now, or with the deadline already set on this thread.
+     */
+    public static <T> T within(long nanos, Supplier<T> call) {
+        Long deadline = CURRENT.get();
+        return deadline != null ? call.get() : at(System.nanoTime() + nanos, call);
+    }
+
+    /**
+     * Runs the call with the given deadline, e.g. one taken over from another thread.
+     */
+    public static <T> T at(long deadline, Supplier<T> call) {
+        Long previous = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The deadline of this thread as {@link System#nanoTime()}, {@code null} if there is none.
+     */
+    public static Long current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Remaining milliseconds, {@code -1} if there is no deadline and {@code 0} if it has passed.
+     */
+    public static long remainingMillis() {
+        Long deadline = CURRENT.get();
+        if (deadline == null) {
+            return -1;
+        }
+        return Math.max(0, (deadline - System.nanoTime()) / 1_000_000);
+    }
+
+}
@@ -0,0 +1,247 @@
+package edu.fra.uas.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.fra.uas.model.ApiError;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Coalesces the messages a user sends to a room while an earlier send of the user to
+ * the room is still on its way into one request to the batch endpoint of the chat service.
+ * <p>
+ * A send with nothing in flight goes out right away. Sends arriving meanwhile are queued
+ * and go out together, at most {@code max-size} per request, as soon as the request in
+ * flight returns. Every sender still gets the response for its own message, with the
+ * status and headers of the chat service's response. Only sends that are concurrent
+ * anyway end up in the same batch, so a client that waits for each response keeps the
+ * order of its messages.
+ * <p>
+ * A queued send waits at most the resilience timeout for its batch, and a user and room
+ * with {@code max-queued} sends waiting already is answered with 503 right away.
+ */
+@Service
+public class MessageBatcher {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MessageBatcher.class);
+
+    @Autowired
+    ChatService chatService;
+
+    @Value("${chatservice.batch.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${chatservice.batch.max-size:100}")
+    int maxSize = 100;
+
+    @Value("${chatservice.batch.max-queued:1000}")
+    int maxQueued = 1000;
+
+    @Value("${chatservice.resilience.timeout:3000}")
+    long timeout = 3000;
+
+    // every user and room has at most one batch in flight, so few threads suffice
+    @Value("${chatservice.batch.threads:8}")
+    int threads = 8;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // user and room -> sends waiting for the request in flight; no entry, nothing in flight
+    private final Map<Key, Queue<Send>> inFlight = new ConcurrentHashMap<>();
+    private ExecutorService senders;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger count = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(threads, runnable -> daemon(runnable, "chat-batch-" + count.incrementAndGet()));
+    }
+
+    @PreDestroy
+    void close() {
+        senders.shutdown();
+    }
+
+    public ResponseEntity<?> send(Long roomId, Long userId, String text) {
+        if (!enabled) {
+            return chatService.sendMessage(roomId, userId, text);
+        }
+        Key key = new Key(roomId, userId);
+        Send send = new Send(text);
+        boolean[] first = new boolean[1];
+        boolean[] full = new boolean[1];
+        inFlight.compute(key, (k, waiting) -> {
+            if (waiting == null) {
+                first[0] = true;
+                return new ArrayDeque<>();
+            }
+            if (waiting.size() >= maxQueued) {
+                full[0] = true;
+            } else {
+                waiting.add(send);
+            }
+            return waiting;
+        });
+        if (full[0]) {
+            log.debug("{} messages to room {} are waiting already", maxQueued, roomId);
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "Too many messages waiting for the chat service");
+        }
+        if (first[0]) {
+            try {
+                return chatService.sendMessage(roomId, userId, text);
+            } finally {
+                next(key);
+            }
+        }
+        return Deadline.within(TimeUnit.MILLISECONDS.toNanos(timeout), () -> await(key, send));
+    }
+
+    private ResponseEntity<?> await(Key key, Send send) {
+        try {
+            return send.result.get(Deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // a send still queued is taken back, its sender no longer waits for it
+            inFlight.computeIfPresent(key, (k, waiting) -> {
+                waiting.remove(send);
+                return waiting;
+            });
+            return error(HttpStatus.GATEWAY_TIMEOUT, "Chat service did not answer in time");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // sends what was queued while the previous request was in flight
+    private void next(Key key) {
+        List<Send> batch = new ArrayList<>();
+        inFlight.compute(key, (k, waiting) -> {
+            if (waiting.isEmpty()) {
+                return null;
+            }
+            while (!waiting.isEmpty() && batch.size() < maxSize) {
+                batch.add(waiting.poll());
+            }
+            return waiting;
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            senders.execute(() -> {
+                try {
+                    flush(key, batch);
+                } finally {
+                    next(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shut down, fail the rest of the queue as well
+            batch.forEach(send -> send.result.completeExceptionally(e));
+            next(key);
+        }
+    }
+
+    private void flush(Key key, List<Send> batch) {
+        log.debug("send batch of {} messages to room {}", batch.size(), key.roomId);
+        try {
+            ResponseEntity<?> response = batch.size() == 1
+                    ? chatService.sendMessage(key.roomId, key.userId, batch.get(0).text)
+                    : chatService.sendMessages(key.roomId, key.userId, texts(batch));
+            if (batch.size() == 1 || !response.getStatusCode().is2xxSuccessful()) {
+                // a failed batch fails for every sender in the same way
+                batch.forEach(send -> send.result.complete(response));
+                return;
+            }
+            JsonNode messages = objectMapper.readTree(String.valueOf(response.getBody()));
+            // the length belongs to the whole batch, the other headers apply to each message
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(response.getHeaders());
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(new ResponseEntity<>(messages.get(i).toString(), headers, response.getStatusCode()));
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            batch.forEach(send -> send.result.completeExceptionally(e));
+        }
+    }
+
+    private static List<String> texts(List<Send> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Send send : batch) {
+            texts.add(send.text);
+        }
+        return texts;
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        ApiError apiError = new ApiError(status, message);
+        return new ResponseEntity<>(apiError, apiError.getStatus());
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static final class Key {
+
+        private final Long roomId;
+        private final Long userId;
+
+        Key(Long roomId, Long userId) {
+            this.roomId = roomId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && roomId.equals(key.roomId) && userId.equals(key.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(roomId, userId);
+        }
+
+    }
+
+    private static final class Send {
+
+        private final String text;
+        private final CompletableFuture<ResponseEntity<?>> result = new CompletableFuture<>();
+
+        Send(String text) {
+            this.text = text;
+        }
+
+    }
+
+}
@@ -1,11 +1,13 @@
 package edu.fra.uas.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import edu.fra.uas.model.User;
@@ -22,11 +24,17 @@ public class UserService {
 
     @Autowired
     private UserRepository userRepository;
-    
-    private long nextUserId = 1;
+
+    // the journal only has to be replayed from the last snapshot on
+    @Scheduled(initialDelayString = "${users.journal.snapshot-interval:300000}",
+               fixedDelayString = "${users.journal.snapshot-interval:300000}")
+    public void snapshot() throws IOException {
+        log.debug("snapshot");
+        userRepository.snapshot();
+    }
 
     public User createUser(User user) {
-        user.setId(nextUserId++);
+        user.setId(userRepository.nextId());
         log.debug("createUser: " + user);
         userRepository.put(user.getId(), user);
         return userRepository.get(user.getId());
@@ -42,6 +50,16 @@ public class UserService {
         return userRepository.get(id);
     }
 
+    public User getUserByEmail(String email) {
+        log.debug("getUserByEmail: " + email);
+        return userRepository.findByEmail(email);
+    }
+
+    public List<User> getUsersByRole(String role) {
+        log.debug("getUsersByRole: " + role);
+        return userRepository.findByRole(role);
+    }
+
     public User updateUser(User user) {
         log.debug("updateUser: " + user);
         userRepository.put(user.getId(), user);
@@ -0,0 +1,101 @@
+package edu.fra.uas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+class ChatCacheTest {
+
+    @Test
+    void concurrentIdenticalGetsShareOneCall() throws Exception {
+        ChatCache cache = new ChatCache();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(500);
+        List<Future<ResponseEntity<?>>> responses = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            responses.add(executor.submit(() -> {
+                start.await();
+                return cache.get("rooms", () -> {
+                    calls.incrementAndGet();
+                    sleep(200);
+                    return new ResponseEntity<>("[]", HttpStatus.OK);
+                });
+            }));
+        }
+        start.countDown();
+        ResponseEntity<?> first = responses.get(0).get();
+        for (Future<ResponseEntity<?>> response : responses) {
+            assertSame(first, response.get());
+        }
+        executor.shutdown();
+        assertEquals(1, calls.get());
+        assertEquals(1L, cache.metrics().get("misses"));
+        assertEquals(499.0 / 500, (double) cache.metrics().get("hitRatio"), 0.0001);
+    }
+
+    @Test
+    void entriesExpireAndAreInvalidated() {
+        ChatCache cache = new ChatCache();
+        cache.ttl = 50;
+        AtomicInteger calls = new AtomicInteger();
+        cache.get("rooms/1", () -> ok(calls));
+        cache.get("rooms/1", () -> ok(calls));
+        assertEquals(1, calls.get());
+        sleep(80);
+        cache.get("rooms/1", () -> ok(calls));
+        assertEquals(2, calls.get());
+
+        cache.get("rooms/1/users/2/messages", () -> ok(calls));
+        cache.get("rooms/12/users/2/messages", () -> ok(calls));
+        cache.invalidatePrefix("rooms/1/");
+        cache.get("rooms/1/users/2/messages", () -> ok(calls));
+        cache.get("rooms/12/users/2/messages", () -> ok(calls));
+        assertEquals(5, calls.get());
+    }
+
+    @Test
+    void errorsAreNotCachedAndSizeIsBounded() {
+        ChatCache cache = new ChatCache();
+        cache.maxEntries = 2;
+        AtomicInteger calls = new AtomicInteger();
+        cache.get("rooms/1", () -> {
+            calls.incrementAndGet();
+            return new ResponseEntity<>("down", HttpStatus.SERVICE_UNAVAILABLE);
+        });
+        cache.get("rooms/1", () -> ok(calls));
+        assertEquals(2, calls.get());
+
+        cache.get("rooms/2", () -> ok(calls));
+        cache.get("rooms/3", () -> ok(calls));
+        assertEquals(2, cache.metrics().get("size"));
+        // rooms/1 was the least recently used entry
+        cache.get("rooms/1", () -> ok(calls));
+        assertEquals(5, calls.get());
+    }
+
+    private static ResponseEntity<?> ok(AtomicInteger calls) {
+        calls.incrementAndGet();
+        return new ResponseEntity<>("{}", HttpStatus.OK);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package edu.fra.uas.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Many concurrent proxy calls, each blocked for the round trip to the chat service, in every gateway mode.
+ * Reports the wall time and the peak number of live platform threads.
+ * Run with {@code java -cp ... edu.fra.uas.service.ChatGatewayBenchmark [calls] [latencyMillis]}.
+ */
+public class ChatGatewayBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        for (ChatGateway.Mode mode : new ChatGateway.Mode[] {ChatGateway.Mode.ASYNC, ChatGateway.Mode.VIRTUAL}) {
+            run(mode, calls, latency);
+        }
+        System.exit(0);
+    }
+
+    private static void run(ChatGateway.Mode mode, int calls, long latency) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        // 200 is the default size of the Tomcat request thread pool, the limit of blocking mode
+        ChatGateway gateway = new ChatGateway(mode, 200);
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> futures = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            futures.add(gateway.call(() -> {
+                try {
+                    // stands in for the blocking HTTP round trip
+                    Thread.sleep(latency);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return System.nanoTime();
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        long elapsed = System.nanoTime() - start;
+        gateway.close();
+        System.out.printf("%-8s (ran as %-7s) %,6d calls of %d ms: %,8.0f ms wall, %,6.0f calls/s, peak %d platform threads%n",
+                mode, gateway.getMode(), calls, latency, elapsed / 1_000_000.0,
+                calls / (elapsed / 1_000_000_000.0), threads.getPeakThreadCount());
+    }
+
+}
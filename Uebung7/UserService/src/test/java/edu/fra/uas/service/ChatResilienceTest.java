@@ -0,0 +1,160 @@
+package edu.fra.uas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.sun.net.httpserver.HttpServer;
+
+import edu.fra.uas.config.ChatClientConfig;
+
+/**
+ * Calls a local stub of the chat service whose latency can be changed per request.
+ */
+class ChatResilienceTest {
+
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private ExecutorService serverThreads;
+    private final AtomicInteger requests = new AtomicInteger();
+    // latency of the next requests, the first one can be made slower than the rest
+    private final AtomicLong firstLatency = new AtomicLong();
+    private final AtomicLong latency = new AtomicLong();
+
+    private ChatResilience resilience;
+    private ChatService chatService;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 100);
+        server.createContext("/rooms", exchange -> {
+            int request = requests.incrementAndGet();
+            try {
+                Thread.sleep(request == 1 ? firstLatency.get() : latency.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            } catch (IOException e) {
+                // the client gave up
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+
+        resilience = new ChatResilience();
+        resilience.timeout = 300;
+        resilience.failureThreshold = 3;
+        resilience.openDuration = 200;
+        resilience.halfOpenCalls = 1;
+        resilience.maxConcurrent = 50;
+        resilience.maxWait = 10;
+        resilience.hedgeEnabled = false;
+        resilience.hedgeDelay = 50;
+        resilience.init();
+
+        httpClient = ChatClientConfig.createHttpClient(100, 100, 1000, 5000, 30000);
+        chatService = new ChatService();
+        chatService.apiUrl = "http://localhost:" + server.getAddress().getPort();
+        chatService.plainCreds = "user:plainTextPassword";
+        chatService.restTemplate = ChatClientConfig.createRestTemplate(httpClient, 5000);
+        chatService.chatResilience = resilience;
+        chatService.chatCache = new ChatCache();
+        chatService.chatCache.enabled = false;
+        chatService.init();
+    }
+
+    @AfterEach
+    void stopStub() throws Exception {
+        resilience.close();
+        httpClient.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void slowServiceOpensTheCircuitAndRecovers() throws Exception {
+        latency.set(1000);
+        firstLatency.set(1000);
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            ResponseEntity<?> response = chatService.getRoomById(1L);
+            assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+            // the deadline ends the call, not the read timeout of the pool
+            assertTrue(System.nanoTime() - start < 800_000_000L);
+        }
+        assertEquals(ChatResilience.State.OPEN, resilience.getState("getRoomById"));
+
+        // while open the chat service is not called at all
+        int before = requests.get();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, chatService.getRoomById(1L).getStatusCode());
+        assertEquals(before, requests.get());
+
+        // after the open duration a trial call closes the circuit again
+        latency.set(0);
+        Thread.sleep(250);
+        assertEquals(HttpStatus.OK, chatService.getRoomById(1L).getStatusCode());
+        assertEquals(ChatResilience.State.CLOSED, resilience.getState("getRoomById"));
+        assertEquals(1L, resilience.metrics().get("getRoomById").get("halfOpened"));
+    }
+
+    @Test
+    void hedgedGetIsAnsweredByTheSecondRequest() {
+        resilience.hedgeEnabled = true;
+        firstLatency.set(1000);
+        latency.set(0);
+        long start = System.nanoTime();
+        ResponseEntity<?> response = chatService.getAllRooms();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(System.nanoTime() - start < 250_000_000L);
+        assertEquals(1L, resilience.metrics().get("getAllRooms").get("hedges"));
+    }
+
+    @Test
+    void bulkheadRejectsCallsOverTheLimit() throws Exception {
+        resilience.close();
+        resilience.maxConcurrent = 2;
+        resilience.init();
+        latency.set(200);
+        firstLatency.set(200);
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        List<Future<ResponseEntity<?>>> responses = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            responses.add(callers.submit(() -> chatService.getAllRooms()));
+        }
+        int rejected = 0;
+        for (Future<ResponseEntity<?>> response : responses) {
+            if (response.get().getStatusCode().isSameCodeAs(HttpStatus.SERVICE_UNAVAILABLE)) {
+                rejected++;
+            }
+        }
+        callers.shutdown();
+        assertEquals(4, rejected);
+        assertEquals(4L, resilience.metrics().get("getAllRooms").get("rejectedBulkhead"));
+        // a full bulkhead says nothing about the health of the chat service
+        assertEquals(ChatResilience.State.CLOSED, resilience.getState("getAllRooms"));
+    }
+
+}
@@ -0,0 +1,122 @@
+package edu.fra.uas.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpServer;
+
+import edu.fra.uas.config.ChatClientConfig;
+
+/**
+ * Load test of the calls to the chat service against a local stub server.
+ * It compares a new client per call, as before, with the shared pooled client.
+ * Run with {@code java -cp ... edu.fra.uas.service.ChatServiceBenchmark [threads] [requests]}.
+ */
+public class ChatServiceBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/rooms", exchange -> {
+            byte[] body = "[{\"id\":1,\"name\":\"Lobby\"}]".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(32));
+        server.start();
+        String url = "http://localhost:" + server.getAddress().getPort();
+
+        // before: new RestTemplate with its own HttpClient and a freshly encoded header per call
+        Call perCall = () -> {
+            try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
+                RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+                HttpHeaders headers = new HttpHeaders();
+                headers.add("Authorization", "Basic " + Base64.getEncoder()
+                        .encodeToString("user:plainTextPassword".getBytes(StandardCharsets.UTF_8)));
+                restTemplate.exchange(url + "/rooms", HttpMethod.GET, new HttpEntity<String>(headers), String.class);
+            }
+        };
+
+        // after: the shared pooled client
+        ChatService chatService = new ChatService();
+        chatService.apiUrl = url;
+        chatService.plainCreds = "user:plainTextPassword";
+        chatService.init();
+        try (CloseableHttpClient httpClient = ChatClientConfig.createHttpClient(200, 50, 2000, 5000, 30000)) {
+            chatService.restTemplate = ChatClientConfig.createRestTemplate(httpClient, 5000);
+            ChatResilience resilience = new ChatResilience();
+            resilience.timeout = 3000;
+            resilience.failureThreshold = 5;
+            resilience.openDuration = 10000;
+            resilience.halfOpenCalls = 1;
+            resilience.maxConcurrent = 200;
+            resilience.maxWait = 100;
+            resilience.init();
+            chatService.chatResilience = resilience;
+            // every call has to reach the stub
+            chatService.chatCache = new ChatCache();
+            chatService.chatCache.enabled = false;
+            Call pooled = chatService::getAllRooms;
+
+            run("warm-up", pooled, threads, requests / 4);
+            run("new client per call", perCall, threads, requests);
+            run("pooled client", pooled, threads, requests);
+        }
+        server.stop(0);
+        System.exit(0);
+    }
+
+    private static void run(String name, Call call, int threads, int requests) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        Future<?>[] workers = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    long begin = System.nanoTime();
+                    call.run();
+                    latencies[i] = System.nanoTime() - begin;
+                }
+                return null;
+            });
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        Arrays.sort(latencies);
+        System.out.printf("%-20s %,10.0f req/s   p50 %6.2f ms   p99 %6.2f ms%n", name,
+                requests / (elapsed / 1_000_000_000.0),
+                latencies[requests / 2] / 1_000_000.0,
+                latencies[(int) (requests * 0.99)] / 1_000_000.0);
+    }
+
+    private interface Call {
+        void run() throws IOException;
+    }
+
+}
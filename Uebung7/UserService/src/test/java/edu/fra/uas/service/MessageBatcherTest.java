@@ -0,0 +1,212 @@
+package edu.fra.uas.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+class MessageBatcherTest {
+
+    private static final long ROUND_TRIP = 20;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private MessageBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        batcher = new MessageBatcher();
+        batcher.maxSize = 50;
+        batcher.threads = 2;
+        // answers like the chat service: one message object per text, after a round trip
+        batcher.chatService = new ChatService() {
+            @Override
+            public ResponseEntity<?> sendMessage(Long id, Long userId, String text) {
+                requests.incrementAndGet();
+                pause();
+                return new ResponseEntity<>(message(text), json(), HttpStatus.OK);
+            }
+
+            @Override
+            public ResponseEntity<?> sendMessages(Long id, Long userId, List<String> texts) {
+                requests.incrementAndGet();
+                pause();
+                List<String> messages = new ArrayList<>();
+                for (String text : texts) {
+                    messages.add(message(text));
+                }
+                return new ResponseEntity<>("[" + String.join(",", messages) + "]", json(), HttpStatus.OK);
+            }
+        };
+        batcher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    void sendWithNothingInFlightGoesOutAtOnce() {
+        long start = System.nanoTime();
+        ResponseEntity<?> response = batcher.send(1L, 2L, "alone");
+        assertTrue(String.valueOf(response.getBody()).contains("\"content\":\"alone\""));
+        assertEquals(1, requests.get());
+        // one round trip, no window to wait for
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(ROUND_TRIP * 5));
+    }
+
+    @Test
+    void concurrentSendsAreCoalesced() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(100);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ResponseEntity<?>>> responses = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String text = "text " + i;
+            responses.add(executor.submit(() -> {
+                start.await();
+                return batcher.send(1L, 2L, text);
+            }));
+        }
+        start.countDown();
+        Set<String> bodies = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            ResponseEntity<?> response = responses.get(i).get();
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            // the headers of the chat service's response apply to each message
+            assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+            // every sender gets its own message back
+            assertTrue(String.valueOf(response.getBody()).contains("\"content\":\"text " + i + "\""));
+            bodies.add(String.valueOf(response.getBody()));
+        }
+        executor.shutdown();
+        assertEquals(100, bodies.size());
+        assertTrue(requests.get() <= 10, "requests: " + requests.get());
+    }
+
+    @Test
+    void failedBatchIsReportedToEverySender() throws Exception {
+        batcher.chatService = new ChatService() {
+            @Override
+            public ResponseEntity<?> sendMessage(Long id, Long userId, String text) {
+                return new ResponseEntity<>("Room was not found", HttpStatus.NOT_FOUND);
+            }
+
+            @Override
+            public ResponseEntity<?> sendMessages(Long id, Long userId, List<String> texts) {
+                return new ResponseEntity<>("Room was not found", HttpStatus.NOT_FOUND);
+            }
+        };
+        batcher.maxSize = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<ResponseEntity<?>> first = executor.submit(() -> batcher.send(9L, 2L, "a"));
+        Future<ResponseEntity<?>> second = executor.submit(() -> batcher.send(9L, 2L, "b"));
+        assertEquals(HttpStatus.NOT_FOUND, first.get().getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, second.get().getStatusCode());
+        executor.shutdown();
+    }
+
+    @Test
+    void queuedSendGivesUpWhenTheChatServiceStalls() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        batcher.chatService = new ChatService() {
+            @Override
+            public ResponseEntity<?> sendMessage(Long id, Long userId, String text) {
+                requests.incrementAndGet();
+                try {
+                    stalled.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ResponseEntity<>(message(text), json(), HttpStatus.OK);
+            }
+        };
+        batcher.timeout = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        Future<ResponseEntity<?>> first = executor.submit(() -> batcher.send(1L, 2L, "stuck"));
+        while (requests.get() == 0) {
+            Thread.sleep(1);
+        }
+        ResponseEntity<?> queued = batcher.send(1L, 2L, "queued");
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, queued.getStatusCode());
+        stalled.countDown();
+        assertEquals(HttpStatus.OK, first.get(5, TimeUnit.SECONDS).getStatusCode());
+        executor.shutdown();
+        // the send that gave up was taken back and never reached the chat service
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void sendIsRejectedWhenTooManyAreQueued() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        batcher.chatService = new ChatService() {
+            @Override
+            public ResponseEntity<?> sendMessage(Long id, Long userId, String text) {
+                requests.incrementAndGet();
+                try {
+                    stalled.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ResponseEntity<>(message(text), json(), HttpStatus.OK);
+            }
+        };
+        batcher.maxQueued = 1;
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        Future<ResponseEntity<?>> first = executor.submit(() -> batcher.send(1L, 2L, "in flight"));
+        while (requests.get() == 0) {
+            Thread.sleep(1);
+        }
+        Future<ResponseEntity<?>> a = executor.submit(() -> batcher.send(1L, 2L, "a"));
+        Future<ResponseEntity<?>> b = executor.submit(() -> batcher.send(1L, 2L, "b"));
+        // one of them is queued, the other finds the queue full and is answered at once
+        while (!a.isDone() && !b.isDone()) {
+            Thread.sleep(1);
+        }
+        Future<ResponseEntity<?>> rejected = a.isDone() ? a : b;
+        Future<ResponseEntity<?>> queued = a.isDone() ? b : a;
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.get().getStatusCode());
+        assertFalse(queued.isDone());
+        stalled.countDown();
+        assertEquals(HttpStatus.OK, first.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(HttpStatus.OK, queued.get(5, TimeUnit.SECONDS).getStatusCode());
+        executor.shutdown();
+    }
+
+    private static HttpHeaders json() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(ROUND_TRIP);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String message(String text) {
+        return "{\"id\":" + nextId.incrementAndGet() + ",\"content\":\"" + text + "\"}";
+    }
+
+}
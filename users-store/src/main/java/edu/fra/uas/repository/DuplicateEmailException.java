@@ -0,0 +1,12 @@
+package edu.fra.uas.repository;
+
+/**
+ * Thrown if a user is stored with an email address that another user already has.
+ */
+public class DuplicateEmailException extends RuntimeException {
+
+    public DuplicateEmailException(String email) {
+        super("Email " + email + " is already in use");
+    }
+
+}
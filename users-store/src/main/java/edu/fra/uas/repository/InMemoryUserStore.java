@@ -0,0 +1,51 @@
+package edu.fra.uas.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import edu.fra.uas.model.User;
+
+/**
+ * Stores nothing: the users live only as long as the process ({@code users.store=memory}).
+ */
+@Repository
+@ConditionalOnProperty(name = "users.store", havingValue = "memory")
+public class InMemoryUserStore implements UserStore {
+
+    @Override
+    public List<User> recover() {
+        return List.of();
+    }
+
+    @Override
+    public long highestId() {
+        return 0;
+    }
+
+    @Override
+    public long put(long id, User user) {
+        return 0;
+    }
+
+    @Override
+    public long remove(long id) {
+        return 0;
+    }
+
+    @Override
+    public void awaitDurable(long position) {
+    }
+
+    @Override
+    public long checkpoint() {
+        return 0;
+    }
+
+    @Override
+    public void snapshot(long position, Collection<User> users) {
+    }
+
+}
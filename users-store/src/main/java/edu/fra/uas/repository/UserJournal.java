@@ -0,0 +1,545 @@
+package edu.fra.uas.repository;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import edu.fra.uas.model.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Append-only journal of all user changes with compact snapshots ({@code users.store=journal}).
+ * <p>
+ * Each put or remove is appended to the current segment file as one record:
+ * length, CRC32 and payload. Depending on the fsync policy a change is durable
+ * right away ({@code always}), after the next group commit of a flusher thread
+ * ({@code batch}) or whenever the OS writes it ({@code never}).
+ * <p>
+ * A checkpoint starts a new segment; the snapshot written for it holds all users
+ * in independent chunks, so they are encoded and decoded in parallel, and replaces
+ * the segments before it. Recovery loads the snapshot, replays the segments behind
+ * it and cuts off a torn record at the end.
+ */
+@Repository
+@ConditionalOnProperty(name = "users.store", havingValue = "journal", matchIfMissing = true)
+public class UserJournal implements UserStore {
+
+    private static final Logger log = LoggerFactory.getLogger(UserJournal.class);
+
+    public enum FsyncPolicy { NEVER, BATCH, ALWAYS }
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    // length and CRC32 of the payload
+    private static final int HEADER_SIZE = 8;
+    private static final int SNAPSHOT_MAGIC = 0x55534e50;
+    private static final int SNAPSHOT_VERSION = 1;
+    // magic, version, journal position, highest id, number of chunks
+    private static final int SNAPSHOT_HEADER_SIZE = 28;
+    private static final int CHUNK_SIZE = 8192;
+    private static final String SNAPSHOT = "users.snapshot";
+    private static final String SEGMENT_PREFIX = "users-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    @Value("${users.journal.dir:data/users}")
+    private String directoryName;
+
+    @Value("${users.journal.fsync:batch}")
+    private String fsync;
+
+    private Path directory;
+    private FsyncPolicy policy;
+
+    // guarded by this
+    private FileChannel channel;
+    private long base;
+    private long position;
+    // highest id ever written, removed users included
+    private long highestId;
+
+    private final Object flushLock = new Object();
+    // guarded by flushLock
+    private long flushRequested;
+    private long flushed;
+    private volatile boolean closed;
+    private Thread flusher;
+
+    public UserJournal() {
+    }
+
+    public UserJournal(Path directory, FsyncPolicy policy) {
+        this.directory = directory;
+        this.policy = policy;
+    }
+
+    @PostConstruct
+    public void init() {
+        directory = Paths.get(directoryName);
+        policy = FsyncPolicy.valueOf(fsync.trim().toUpperCase());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        closed = true;
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    // ##############################################################################################################
+    // Recovery
+    // ##############################################################################################################
+
+    @Override
+    public synchronized long highestId() {
+        return highestId;
+    }
+
+    @Override
+    public synchronized List<User> recover() throws IOException {
+        Files.createDirectories(directory);
+        Map<Long, User> users = new HashMap<>();
+        long start = readSnapshot(users);
+        Path last = null;
+        long lastBase = start;
+        int lastLength = 0;
+        List<Path> files = segmentFiles();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long fileBase = baseOf(file);
+            long size = Files.size(file);
+            if (fileBase + size <= start && i + 1 < files.size()) {
+                continue;
+            }
+            int end;
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                end = replay(buffer, (int) Math.max(0, start - fileBase), users);
+            }
+            last = file;
+            lastBase = fileBase;
+            lastLength = end;
+            if (end < size) {
+                // a torn record: everything behind it was never acknowledged
+                log.warn("user journal ends in segment {} at offset {}", file.getFileName(), end);
+                for (Path later : files.subList(i + 1, files.size())) {
+                    Files.delete(later);
+                }
+                break;
+            }
+        }
+        if (last == null) {
+            last = segmentFile(start);
+            lastBase = start;
+        }
+        channel = FileChannel.open(last, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(lastLength);
+        channel.position(lastLength);
+        base = lastBase;
+        position = lastBase + lastLength;
+        flushed = position;
+        flushRequested = position;
+        if (policy == FsyncPolicy.BATCH) {
+            flusher = new Thread(this::flushLoop, "user-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        log.info("recovered {} users from {}, position {}", users.size(), directory.toAbsolutePath(), position);
+        return new ArrayList<>(users.values());
+    }
+
+    /**
+     * Applies the complete records from the offset on and returns the end of the last one.
+     * Records are located one after the other, but checked and decoded in parallel.
+     */
+    private int replay(ByteBuffer buffer, int offset, Map<Long, User> users) {
+        List<int[]> records = new ArrayList<>();
+        int end = offset;
+        while (buffer.limit() - end >= HEADER_SIZE) {
+            int length = buffer.getInt(end);
+            if (length <= 0 || length > buffer.limit() - end - HEADER_SIZE) {
+                break;
+            }
+            records.add(new int[] { end, length });
+            end += HEADER_SIZE + length;
+        }
+        Record[] decoded = IntStream.range(0, records.size()).parallel()
+                .mapToObj(i -> decodeRecord(buffer, records.get(i)[0], records.get(i)[1]))
+                .toArray(Record[]::new);
+        for (int i = 0; i < decoded.length; i++) {
+            Record record = decoded[i];
+            if (record == null) {
+                return records.get(i)[0];
+            }
+            highestId = Math.max(highestId, record.id);
+            if (record.user != null) {
+                users.put(record.id, record.user);
+            } else {
+                users.remove(record.id);
+            }
+        }
+        return end;
+    }
+
+    // null if the checksum does not match
+    private static Record decodeRecord(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer payload = buffer.slice(offset + HEADER_SIZE, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        byte type = payload.get();
+        long id = payload.getLong();
+        return new Record(id, type == PUT ? readUser(payload, id) : null);
+    }
+
+    private record Record(long id, User user) {
+    }
+
+    // ##############################################################################################################
+    // Records
+    // ##############################################################################################################
+
+    @Override
+    public long put(long id, User user) {
+        return append(PUT, id, user);
+    }
+
+    @Override
+    public long remove(long id) {
+        return append(REMOVE, id, null);
+    }
+
+    @Override
+    public void awaitDurable(long end) {
+        if (policy != FsyncPolicy.BATCH) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (end > flushRequested) {
+                flushRequested = end;
+                flushLock.notifyAll();
+            }
+            while (flushed < end && !closed) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for the journal flush"));
+                }
+            }
+        }
+    }
+
+    private long append(byte type, long id, User user) {
+        ByteBuffer record = encode(type, id, user);
+        try {
+            synchronized (this) {
+                if (channel == null) {
+                    throw new IllegalStateException("User journal is not open");
+                }
+                int size = record.remaining();
+                highestId = Math.max(highestId, id);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                position += size;
+                if (policy == FsyncPolicy.ALWAYS) {
+                    channel.force(false);
+                }
+                return position;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to user journal", e);
+        }
+    }
+
+    private static ByteBuffer encode(byte type, long id, User user) {
+        int capacity = 256;
+        while (true) {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(capacity);
+                buffer.position(HEADER_SIZE);
+                buffer.put(type).putLong(id);
+                if (user != null) {
+                    writeUser(buffer, user);
+                }
+                int length = buffer.position() - HEADER_SIZE;
+                CRC32 crc = new CRC32();
+                crc.update(buffer.array(), HEADER_SIZE, length);
+                buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                capacity *= 4;
+            }
+        }
+    }
+
+    // ##############################################################################################################
+    // Group commit
+    // ##############################################################################################################
+
+    // forces everything written so far with one call, all changes that arrived
+    // while the previous force was running are committed together
+    private void flushLoop() {
+        while (!closed) {
+            synchronized (flushLock) {
+                while (!closed && flushRequested <= flushed) {
+                    try {
+                        flushLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            if (closed) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = position;
+                current = channel;
+            }
+            try {
+                current.force(false);
+            } catch (ClosedChannelException e) {
+                // rolled over by a checkpoint, which forced the segment before closing it
+            } catch (IOException e) {
+                log.error("could not force user journal", e);
+                continue;
+            }
+            synchronized (flushLock) {
+                flushed = Math.max(flushed, target);
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    // ##############################################################################################################
+    // Snapshots
+    // ##############################################################################################################
+
+    @Override
+    public synchronized long checkpoint() throws IOException {
+        if (position == base) {
+            return position;
+        }
+        channel.force(false);
+        channel.close();
+        base = position;
+        channel = FileChannel.open(segmentFile(base), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return position;
+    }
+
+    /**
+     * Writes the users as the state at the position and deletes the segments before it.
+     */
+    @Override
+    public void snapshot(long start, Collection<User> users) throws IOException {
+        List<User> list = new ArrayList<>(users);
+        int chunks = (list.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        ByteBuffer[] encoded = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> encodeChunk(list.subList(c * CHUNK_SIZE, Math.min(list.size(), (c + 1) * CHUNK_SIZE))))
+                .toArray(ByteBuffer[]::new);
+        long highest;
+        synchronized (this) {
+            highest = highestId;
+        }
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE).putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION)
+                    .putLong(start).putLong(highest).putInt(chunks).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (ByteBuffer chunk : encoded) {
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+            }
+            out.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path file : segmentFiles()) {
+            if (baseOf(file) < start) {
+                Files.delete(file);
+            }
+        }
+        log.info("snapshot of {} users at journal position {}", list.size(), start);
+    }
+
+    private static ByteBuffer encodeChunk(List<User> users) {
+        int capacity = 64 * users.size() + 64;
+        while (true) {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(capacity);
+                buffer.position(HEADER_SIZE);
+                buffer.putInt(users.size());
+                for (User user : users) {
+                    buffer.putLong(user.getId());
+                    writeUser(buffer, user);
+                }
+                int length = buffer.position() - HEADER_SIZE;
+                CRC32 crc = new CRC32();
+                crc.update(buffer.array(), HEADER_SIZE, length);
+                buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                capacity *= 2;
+            }
+        }
+    }
+
+    private long readSnapshot(Map<Long, User> users) throws IOException {
+        Path file = directory.resolve(SNAPSHOT);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (buffer.getInt(0) != SNAPSHOT_MAGIC || buffer.getInt(4) != SNAPSHOT_VERSION) {
+                throw new IOException("Unknown user snapshot format in " + file);
+            }
+            long start = buffer.getLong(8);
+            highestId = buffer.getLong(16);
+            int chunks = buffer.getInt(24);
+            int[] offsets = new int[chunks];
+            int offset = SNAPSHOT_HEADER_SIZE;
+            for (int c = 0; c < chunks; c++) {
+                offsets[c] = offset;
+                offset += HEADER_SIZE + buffer.getInt(offset);
+            }
+            List<List<User>> decoded = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> decodeChunk(buffer, offsets[c]))
+                    .collect(Collectors.toList());
+            for (List<User> chunk : decoded) {
+                if (chunk == null) {
+                    // snapshots are written completely before they replace the old one
+                    throw new IOException("Corrupt user snapshot " + file);
+                }
+                for (User user : chunk) {
+                    users.put(user.getId(), user);
+                }
+            }
+            return start;
+        }
+    }
+
+    private static List<User> decodeChunk(ByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        ByteBuffer payload = buffer.slice(offset + HEADER_SIZE, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        int count = payload.getInt();
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(readUser(payload, payload.getLong()));
+        }
+        return users;
+    }
+
+    // ##############################################################################################################
+    // Encoding
+    // ##############################################################################################################
+
+    private static void writeUser(ByteBuffer buffer, User user) {
+        writeString(buffer, user.getRole());
+        writeString(buffer, user.getFirstName());
+        writeString(buffer, user.getLastName());
+        writeString(buffer, user.getEmail());
+        writeString(buffer, user.getPassword());
+    }
+
+    private static User readUser(ByteBuffer buffer, long id) {
+        return new User(id, readString(buffer), readString(buffer), readString(buffer), readString(buffer), readString(buffer));
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ##############################################################################################################
+    // Segments
+    // ##############################################################################################################
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long baseOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+}
@@ -0,0 +1,284 @@
+package edu.fra.uas.repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import edu.fra.uas.model.User;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Thread-safe store of all users with a unique index on the email address and
+ * an index on the role.
+ * <p>
+ * Reads never block. Writes are serialized, they check the unique index and update
+ * the users and both indexes together; a user becomes visible in the indexes only
+ * after it was stored and disappears from them before it is removed. The indexed
+ * email and role of every user are kept separately, so a stored user that is
+ * changed in place before it is put again is still re-indexed correctly.
+ * <p>
+ * Besides the hash map the users are kept sorted by id, so pages of users can be
+ * read from any id on without copying or sorting all of them.
+ * <p>
+ * Every user and the users as a whole have a {@link Version} that is advanced with each
+ * change under the same lock, so a change can be made on the condition that the user
+ * still has the version the caller has seen. A version is stored after the change it
+ * belongs to; readers that read the version before the user never get an older user.
+ * <p>
+ * Every change is passed on to the {@link UserStore} in the order it was applied;
+ * a write returns once the store has made it durable.
+ */
+@Repository
+public class UserRepository {
+
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, User> byId = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> byEmail = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> byRole = new ConcurrentHashMap<>();
+    // changed only while holding the lock on this
+    private final Map<Long, Keys> indexed = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, Version> versions = new ConcurrentHashMap<>();
+    // stamps start above those of earlier runs unless these made more than 1000 changes
+    // per millisecond of uptime; changed only while holding the lock on this
+    private long stamp = System.currentTimeMillis() * 1000;
+    private volatile Version version = new Version(stamp, System.currentTimeMillis());
+
+    @Autowired
+    private UserStore store = new InMemoryUserStore();
+
+    public UserRepository() {
+    }
+
+    public UserRepository(UserStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Loads the users of the store; they are indexed in parallel, they were unique when stored.
+     */
+    @PostConstruct
+    public synchronized void recover() throws IOException {
+        List<User> recovered = store.recover();
+        Version initial = version;
+        recovered.parallelStream().forEach(user -> {
+            index(user.getId(), user, new Keys(normalize(user.getEmail()), user.getRole()));
+            versions.put(user.getId(), initial);
+        });
+        nextId.accumulateAndGet(store.highestId() + 1, Math::max);
+    }
+
+    /**
+     * Hands all users to the store, so it can drop what it recorded before.
+     */
+    public void snapshot() throws IOException {
+        long position;
+        List<User> all;
+        synchronized (this) {
+            position = store.checkpoint();
+            all = new ArrayList<>(users.values());
+        }
+        // users changed in place from now on are stored behind the position again
+        store.snapshot(position, all);
+    }
+
+    /**
+     * Returns a new id, no id is returned twice.
+     */
+    public long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    public User get(long id) {
+        return users.get(id);
+    }
+
+    public boolean containsKey(long id) {
+        return users.containsKey(id);
+    }
+
+    public Collection<User> values() {
+        return Collections.unmodifiableCollection(users.values());
+    }
+
+    /**
+     * Returns the users with an id greater than the given one in ascending order of their ids.
+     * The collection is a live view, iterating it neither copies nor locks the users.
+     */
+    public Collection<User> valuesAfter(long id) {
+        return Collections.unmodifiableCollection(byId.tailMap(id, false).values());
+    }
+
+    /**
+     * Returns the smallest id of all users, {@code null} if there are none.
+     */
+    public Long firstId() {
+        Map.Entry<Long, User> first = byId.firstEntry();
+        return first == null ? null : first.getKey();
+    }
+
+    /**
+     * Returns the version of the user, {@code null} if there is no user with the id.
+     */
+    public Version version(long id) {
+        return versions.get(id);
+    }
+
+    /**
+     * Returns the version of the users as a whole, it changes with every change of any user.
+     */
+    public Version version() {
+        return version;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public User findByEmail(String email) {
+        String key = normalize(email);
+        Long id = key == null ? null : byEmail.get(key);
+        return id == null ? null : users.get(id);
+    }
+
+    public List<User> findByRole(String role) {
+        Set<Long> ids = role == null ? null : byRole.get(role);
+        if (ids == null) {
+            return List.of();
+        }
+        return ids.stream().map(users::get).filter(user -> user != null).toList();
+    }
+
+    /**
+     * Stores the user under the id, replacing the user stored before.
+     *
+     * @throws DuplicateEmailException if another user has the same email address
+     */
+    public User put(long id, User user) {
+        return put(id, user, null);
+    }
+
+    /**
+     * Stores the user under the id if the user stored before still has the expected
+     * version, or unconditionally if expected is {@code null}.
+     *
+     * @throws DuplicateEmailException if another user has the same email address
+     * @throws VersionConflictException if the stored user has another version
+     */
+    public User put(long id, User user, Version expected) {
+        User previous;
+        long position;
+        synchronized (this) {
+            if (expected != null && !expected.equals(versions.get(id))) {
+                throw new VersionConflictException(id);
+            }
+            Keys keys = new Keys(normalize(user.getEmail()), user.getRole());
+            if (keys.email != null) {
+                Long owner = byEmail.get(keys.email);
+                if (owner != null && owner != id) {
+                    throw new DuplicateEmailException(user.getEmail());
+                }
+            }
+            // ids given by the caller must not be handed out again
+            nextId.accumulateAndGet(id + 1, Math::max);
+            Keys old = indexed.get(id);
+            previous = users.get(id);
+            index(id, user, keys);
+            if (old != null) {
+                unindex(id, old, keys);
+            }
+            versions.put(id, advance());
+            position = store.put(id, user);
+        }
+        store.awaitDurable(position);
+        return previous;
+    }
+
+    public User remove(long id) {
+        return remove(id, null);
+    }
+
+    /**
+     * Removes the user if it still has the expected version, or unconditionally if
+     * expected is {@code null}.
+     *
+     * @throws VersionConflictException if the stored user has another version
+     */
+    public User remove(long id, Version expected) {
+        User removed;
+        long position;
+        synchronized (this) {
+            if (expected != null && !expected.equals(versions.get(id))) {
+                throw new VersionConflictException(id);
+            }
+            Keys old = indexed.remove(id);
+            if (old != null) {
+                unindex(id, old, null);
+            }
+            byId.remove(id);
+            removed = users.remove(id);
+            if (removed == null) {
+                return null;
+            }
+            versions.remove(id);
+            advance();
+            position = store.remove(id);
+        }
+        store.awaitDurable(position);
+        return removed;
+    }
+
+    // called while holding the lock on this
+    private Version advance() {
+        version = new Version(++stamp, System.currentTimeMillis());
+        return version;
+    }
+
+    private void index(long id, User user, Keys keys) {
+        users.put(id, user);
+        byId.put(id, user);
+        indexed.put(id, keys);
+        if (keys.email != null) {
+            byEmail.put(keys.email, id);
+        }
+        if (keys.role != null) {
+            byRole.computeIfAbsent(keys.role, r -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    // removes the old keys of the user that are not among its current ones
+    private void unindex(long id, Keys old, Keys current) {
+        if (old.email != null && (current == null || !old.email.equals(current.email))) {
+            byEmail.remove(old.email, id);
+        }
+        if (old.role != null && (current == null || !old.role.equals(current.role))) {
+            Set<Long> ids = byRole.get(old.role);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    byRole.remove(old.role, ids);
+                }
+            }
+        }
+    }
+
+    // blank addresses are not indexed
+    private static String normalize(String email) {
+        return email == null || email.isBlank() ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Keys(String email, String role) {
+    }
+
+}
@@ -0,0 +1,45 @@
+package edu.fra.uas.repository;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import edu.fra.uas.model.User;
+
+/**
+ * Keeps the users of the {@link UserRepository} beyond a restart.
+ * <p>
+ * The repository calls {@link #put} and {@link #remove} while it holds its lock,
+ * so the store sees the changes in the order they were applied, and waits in
+ * {@link #awaitDurable} after releasing the lock. Both return a position that
+ * orders the changes; a snapshot covers all changes before its position.
+ */
+public interface UserStore {
+
+    /**
+     * Returns all stored users, called once before the first change.
+     */
+    List<User> recover() throws IOException;
+
+    /**
+     * Returns the highest id the store has seen, also of users removed since.
+     */
+    long highestId();
+
+    long put(long id, User user);
+
+    long remove(long id);
+
+    /**
+     * Returns once the change at the position is as durable as the store promises.
+     */
+    void awaitDurable(long position);
+
+    /**
+     * Marks the point a following {@link #snapshot} covers, called with the repository locked.
+     */
+    long checkpoint() throws IOException;
+
+    void snapshot(long position, Collection<User> users) throws IOException;
+
+}
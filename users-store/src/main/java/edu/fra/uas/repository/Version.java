@@ -0,0 +1,16 @@
+package edu.fra.uas.repository;
+
+/**
+ * Version of a user or of all users. The stamp changes with every change, modified is
+ * the time of that change in milliseconds.
+ */
+public record Version(long stamp, long modified) {
+
+    /**
+     * Returns the stamp as strong entity tag, including the quotes.
+     */
+    public String etag() {
+        return "\"" + Long.toHexString(stamp) + "\"";
+    }
+
+}
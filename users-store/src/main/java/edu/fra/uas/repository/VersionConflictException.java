@@ -0,0 +1,12 @@
+package edu.fra.uas.repository;
+
+/**
+ * Thrown if a user is changed on the condition that it still has a version it no longer has.
+ */
+public class VersionConflictException extends RuntimeException {
+
+    public VersionConflictException(long id) {
+        super("User " + id + " has been changed in the meantime");
+    }
+
+}
@@ -0,0 +1,100 @@
+package edu.fra.uas.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import edu.fra.uas.model.User;
+
+/**
+ * Write throughput of the user journal for each fsync policy, time for a snapshot
+ * of one million users and time to recover them from the snapshot plus a journal tail.
+ * Run with {@code java -cp ... edu.fra.uas.repository.UserJournalBenchmark [directory]}.
+ */
+public class UserJournalBenchmark {
+
+    private static final int USERS = 1_000_000;
+    private static final int TAIL = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        Path root = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("user-journal");
+        try {
+            writes(root.resolve("always"), UserJournal.FsyncPolicy.ALWAYS, 1, 2_000);
+            writes(root.resolve("batch"), UserJournal.FsyncPolicy.BATCH, 1, 2_000);
+            writes(root.resolve("batch-64"), UserJournal.FsyncPolicy.BATCH, 64, 500);
+            writes(root.resolve("never"), UserJournal.FsyncPolicy.NEVER, 1, USERS);
+            startup(root.resolve("startup"));
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void writes(Path directory, UserJournal.FsyncPolicy policy, int threads, int perThread) throws Exception {
+        UserJournal journal = new UserJournal(directory, policy);
+        UserRepository repository = new UserRepository(journal);
+        repository.recover();
+        List<Thread> writers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    User user = user(repository.nextId(), "user" + thread + "-" + i + "@example.com");
+                    repository.put(user.getId(), user);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        journal.close();
+        System.out.printf("%-6s %3d threads: %,10.0f writes/s%n", policy, threads, (double) threads * perThread / elapsed * 1e9);
+    }
+
+    private static void startup(Path directory) throws Exception {
+        UserJournal journal = new UserJournal(directory, UserJournal.FsyncPolicy.NEVER);
+        UserRepository repository = new UserRepository(journal);
+        repository.recover();
+        for (int i = 0; i < USERS; i++) {
+            User user = user(repository.nextId(), "user" + i + "@example.com");
+            repository.put(user.getId(), user);
+        }
+        long start = System.nanoTime();
+        repository.snapshot();
+        System.out.printf("snapshot of %,d users: %d ms%n", USERS, (System.nanoTime() - start) / 1_000_000);
+        for (int i = 0; i < TAIL; i++) {
+            User user = repository.get(i + 1);
+            user.setRole("ADMIN");
+            repository.put(user.getId(), user);
+        }
+        journal.close();
+
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            UserJournal reopened = new UserJournal(directory, UserJournal.FsyncPolicy.NEVER);
+            UserRepository recovered = new UserRepository(reopened);
+            recovered.recover();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("startup with %,d users and %,d journal records: %d ms (%d admins)%n",
+                    recovered.size(), TAIL, elapsed / 1_000_000, recovered.findByRole("ADMIN").size());
+            reopened.close();
+        }
+    }
+
+    private static User user(long id, String email) {
+        return new User(id, "USER", "First", "Last", email, "extremeSecurePassword1234");
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package edu.fra.uas.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.fra.uas.model.User;
+
+class UserJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<UserJournal> journals = new ArrayList<>();
+
+    @Test
+    void replaysPutsUpdatesAndRemoves() throws IOException {
+        UserRepository repository = open();
+        User alice = create(repository, "alice@example.com");
+        create(repository, "bob@example.com");
+        User carol = create(repository, "carol@example.com");
+        alice.setEmail("alice.adams@example.com");
+        repository.put(alice.getId(), alice);
+        repository.remove(carol.getId());
+        closeAll();
+
+        UserRepository recovered = open();
+        assertEquals(2, recovered.size());
+        assertEquals(alice.getId(), recovered.findByEmail("alice.adams@example.com").getId());
+        assertNull(recovered.findByEmail("carol@example.com"));
+        // ids are not handed out twice, not even the one of the removed user
+        assertEquals(4, create(recovered, "dave@example.com").getId());
+        closeAll();
+    }
+
+    @Test
+    void snapshotReplacesTheOlderSegments() throws IOException {
+        UserRepository repository = open();
+        for (int i = 0; i < 100; i++) {
+            create(repository, "user" + i + "@example.com");
+        }
+        repository.snapshot();
+        for (int i = 100; i < 110; i++) {
+            create(repository, "user" + i + "@example.com");
+        }
+        repository.remove(1);
+        assertEquals(1, countSegments());
+        closeAll();
+
+        UserRepository recovered = open();
+        assertEquals(109, recovered.size());
+        assertNull(recovered.get(1));
+        assertEquals("user109@example.com", recovered.get(110).getEmail());
+        closeAll();
+    }
+
+    @Test
+    void cutsOffATornRecord() throws IOException {
+        UserRepository repository = open();
+        create(repository, "alice@example.com");
+        create(repository, "bob@example.com");
+        closeAll();
+
+        // a record whose payload never made it to disk
+        Path segment;
+        try (var files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".journal")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 1 }, StandardOpenOption.APPEND);
+
+        UserRepository recovered = open();
+        assertEquals(2, recovered.size());
+        create(recovered, "carol@example.com");
+        closeAll();
+        assertEquals(3, open().size());
+        closeAll();
+    }
+
+    private UserRepository open() throws IOException {
+        UserJournal journal = new UserJournal(directory, UserJournal.FsyncPolicy.BATCH);
+        journals.add(journal);
+        UserRepository repository = new UserRepository(journal);
+        repository.recover();
+        return repository;
+    }
+
+    private void closeAll() throws IOException {
+        for (UserJournal journal : journals) {
+            journal.close();
+        }
+        journals.clear();
+    }
+
+    private static User create(UserRepository repository, String email) {
+        User user = new User(repository.nextId(), "USER", "First", "Last", email, "secret");
+        repository.put(user.getId(), user);
+        return user;
+    }
+
+    private long countSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".journal")).count();
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package edu.fra.uas.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import edu.fra.uas.model.User;
+
+class UserRepositoryTest {
+
+    private static final int THREADS = 8;
+    private static final int USERS_PER_THREAD = 1000;
+
+    private final UserRepository repository = new UserRepository();
+
+    @Test
+    void concurrentCreatesGetUniqueIdsAndAreIndexed() throws InterruptedException {
+        run(thread -> {
+            for (int i = 0; i < USERS_PER_THREAD; i++) {
+                User user = user(thread % 2 == 0 ? "USER" : "ADMIN", "user" + thread + "-" + i + "@example.com");
+                user.setId(repository.nextId());
+                repository.put(user.getId(), user);
+            }
+        });
+        assertEquals(THREADS * USERS_PER_THREAD, repository.size());
+        Set<Long> ids = new HashSet<>();
+        for (User user : repository.values()) {
+            ids.add(user.getId());
+            assertSame(user, repository.findByEmail(user.getEmail()));
+        }
+        assertEquals(THREADS * USERS_PER_THREAD, ids.size());
+        assertEquals(THREADS / 2 * USERS_PER_THREAD, repository.findByRole("ADMIN").size());
+        assertSame(repository.get(1), repository.findByEmail(repository.get(1).getEmail().toUpperCase()));
+    }
+
+    @Test
+    void onlyOneOfConcurrentUsersWithTheSameEmailIsStored() throws InterruptedException {
+        AtomicInteger rejected = new AtomicInteger();
+        run(thread -> {
+            for (int i = 0; i < USERS_PER_THREAD; i++) {
+                User user = user("USER", "same" + i + "@example.com");
+                user.setId(repository.nextId());
+                try {
+                    repository.put(user.getId(), user);
+                } catch (DuplicateEmailException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(USERS_PER_THREAD, repository.size());
+        assertEquals((THREADS - 1) * USERS_PER_THREAD, rejected.get());
+        assertEquals(USERS_PER_THREAD, repository.findByRole("USER").size());
+    }
+
+    @Test
+    void updatesAndRemovesKeepTheIndexesConsistent() {
+        User alice = user("USER", "alice@example.com");
+        alice.setId(repository.nextId());
+        repository.put(alice.getId(), alice);
+        User bob = user("USER", "bob@example.com");
+        bob.setId(repository.nextId());
+        repository.put(bob.getId(), bob);
+
+        // changed in place, as the controllers do, then stored again
+        alice.setEmail("alice.adams@example.com");
+        alice.setRole("ADMIN");
+        repository.put(alice.getId(), alice);
+        assertNull(repository.findByEmail("alice@example.com"));
+        assertSame(alice, repository.findByEmail("alice.adams@example.com"));
+        assertEquals(List.of(alice), repository.findByRole("ADMIN"));
+        assertEquals(List.of(bob), repository.findByRole("USER"));
+
+        User other = user("USER", "bob@example.com");
+        other.setId(repository.nextId());
+        assertThrows(DuplicateEmailException.class, () -> repository.put(other.getId(), other));
+        assertNull(repository.get(other.getId()));
+
+        repository.remove(bob.getId());
+        assertNull(repository.findByEmail("bob@example.com"));
+        assertEquals(List.of(), repository.findByRole("USER"));
+        // the address is free again
+        repository.put(other.getId(), other);
+        assertSame(other, repository.findByEmail("bob@example.com"));
+    }
+
+    @Test
+    void valuesAfterAreOrderedByIdAndFollowChanges() {
+        for (long id : new long[] {5, 1, 3, 2, 4}) {
+            User user = user("USER", "user" + id + "@example.com");
+            user.setId(id);
+            repository.put(id, user);
+        }
+        assertEquals(List.of(3L, 4L, 5L), ids(repository.valuesAfter(2)));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids(repository.valuesAfter(0)));
+        assertEquals(1L, repository.firstId());
+
+        repository.remove(4);
+        assertEquals(List.of(3L, 5L), ids(repository.valuesAfter(2)));
+        assertEquals(List.of(), ids(repository.valuesAfter(5)));
+
+        repository.remove(1);
+        assertEquals(2L, repository.firstId());
+    }
+
+    @Test
+    void versionsChangeWithEveryChangeAndGuardConditionalWrites() {
+        User alice = user("USER", "alice@example.com");
+        alice.setId(repository.nextId());
+        Version empty = repository.version();
+        repository.put(alice.getId(), alice);
+        Version created = repository.version(alice.getId());
+        assertEquals(created, repository.version());
+        assertNotEquals(empty.etag(), created.etag());
+
+        User changed = user("ADMIN", "alice@example.com");
+        changed.setId(alice.getId());
+        repository.put(alice.getId(), changed, created);
+        Version updated = repository.version(alice.getId());
+        assertNotEquals(created, updated);
+
+        // a writer that still has the first version loses
+        User stale = user("USER", "alice@example.com");
+        stale.setId(alice.getId());
+        assertThrows(VersionConflictException.class, () -> repository.put(alice.getId(), stale, created));
+        assertThrows(VersionConflictException.class, () -> repository.remove(alice.getId(), created));
+        assertSame(changed, repository.get(alice.getId()));
+
+        repository.remove(alice.getId(), updated);
+        assertNull(repository.version(alice.getId()));
+        assertNotEquals(updated, repository.version());
+    }
+
+    private static List<Long> ids(Iterable<User> users) {
+        List<Long> ids = new ArrayList<>();
+        users.forEach(user -> ids.add(user.getId()));
+        return ids;
+    }
+
+    private static User user(String role, String email) {
+        User user = new User();
+        user.setRole(role);
+        user.setFirstName("First");
+        user.setLastName("Last");
+        user.setEmail(email);
+        user.setPassword("secret");
+        return user;
+    }
+
+    private static void run(ThreadTask task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.run(thread);
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private interface ThreadTask {
+        void run(int thread);
+    }
+
+}